@@ -0,0 +1,239 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class CheckResultWriterTest {
+    private static final String DATABASE_NAME = "writer-test.db";
+
+    private Context context;
+    private UrlDatabase database;
+    private long id;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event", 5, true));
+        id = database.getAllUrls().get(0).getId();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void holdsWritesUntilFlushed() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        writer.updateLastChecked(id, 1000, true, 42);
+        writer.addTicketHistory(id, 1000, "found");
+
+        assertEquals(0, database.getUrlById(id).getLastCheckedTimestamp());
+        assertEquals(0, database.getTicketHistory(id).size());
+
+        writer.flush();
+        MonitoredUrl url = database.getUrlById(id);
+        assertEquals(1000, url.getLastCheckedTimestamp());
+        assertTrue(url.hasTicketsFound());
+        assertEquals(42, url.getContentFingerprint());
+        assertEquals(1, database.getTicketHistory(id).size());
+    }
+
+    @Test
+    public void coalescesUpdatesOfSameUrl() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        writer.updateLastChecked(id, 1000, true, 42);
+        writer.updateLastChecked(id, 2000, false);
+        writer.flush();
+
+        MonitoredUrl url = database.getUrlById(id);
+        assertEquals(2000, url.getLastCheckedTimestamp());
+        assertFalse(url.hasTicketsFound());
+        // An update without a fingerprint keeps the one queued before it
+        assertEquals(42, url.getContentFingerprint());
+    }
+
+    @Test
+    public void keepsEveryHistoryEntryInOrder() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        writer.addTicketHistory(id, 1000, "first");
+        writer.addTicketHistory(id, 2000, "second");
+        writer.flush();
+
+        List<TicketHistoryEntry> history = database.getTicketHistory(id);
+        assertEquals(2, history.size());
+        assertEquals("second", history.get(0).getNote());
+        assertEquals("first", history.get(1).getNote());
+    }
+
+    @Test
+    public void countsEveryCheckInStats() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        writer.recordCheck(id, 1000, false, false, 100);
+        writer.recordCheck(id, 2000, false, true, 300);
+        writer.recordCheck(id, 3000, true, false, 0);
+        writer.recordCheck(id, 4000, false, false, 300);
+        writer.recordCheck(id, 5000, false, true, 300);
+        assertEquals(0, database.getUrlStats(id).getTotalChecks());
+
+        writer.flush();
+        UrlStats stats = database.getUrlStats(id);
+        assertEquals(5, stats.getTotalChecks());
+        assertEquals(0.2, stats.getErrorRate(), 0.0001);
+        assertEquals(5000, stats.getLastAvailable());
+        assertEquals(2, stats.getWindowCount());
+        assertEquals(3000, stats.getMeanTimeBetweenWindowsMs());
+        assertEquals(384, stats.getMedianLatencyMs());
+
+        // The registry holds what is stored
+        UrlDatabase reopened = new UrlDatabase(context, DATABASE_NAME);
+        try {
+            assertEquals(5, reopened.getUrlStats(id).getTotalChecks());
+            assertEquals(2, reopened.getUrlStats(id).getWindowCount());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void pendingStatusIsVisibleToChecks() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        writer.updateLastChecked(id, 1000, true, 42);
+
+        MonitoredUrl url = database.getUrlById(id);
+        writer.applyPending(url);
+        assertTrue(url.hasTicketsFound());
+        assertEquals(42, url.getContentFingerprint());
+        writer.flush();
+    }
+
+    @Test
+    public void flushesWhenWindowEnds() throws InterruptedException {
+        CheckResultWriter writer = new CheckResultWriter(database, 50);
+        writer.updateLastChecked(id, 1000, false);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (database.getUrlById(id).getLastCheckedTimestamp() != 1000
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(1000, database.getUrlById(id).getLastCheckedTimestamp());
+    }
+
+    /**
+     * Second handle on the test database whose stats writes always fail
+     */
+    private UrlDatabase failingDatabase() {
+        return new UrlDatabase(context, DATABASE_NAME) {
+            @Override
+            void recordCheck(long urlId, long timestamp, boolean failed, boolean ticketsFound,
+                    long latencyMs, List<Runnable> registryUpdates) {
+                throw new IllegalStateException("disk full");
+            }
+        };
+    }
+
+    @Test
+    public void rolledBackBatchNeverReachesRegistry() {
+        UrlDatabase failing = failingDatabase();
+        try {
+            assertEquals(0, failing.getUrlById(id).getLastCheckedTimestamp());
+            CheckResultWriter writer = new CheckResultWriter(failing, 60 * 1000);
+            writer.updateLastChecked(id, 1000, true, 42);
+            writer.recordCheck(id, 1000, false, true, 100);
+
+            assertFalse(writer.flush());
+            MonitoredUrl url = failing.getUrlById(id);
+            assertEquals(0, url.getLastCheckedTimestamp());
+            assertFalse(url.hasTicketsFound());
+            assertEquals(0, url.getContentFingerprint());
+        } finally {
+            failing.close();
+        }
+    }
+
+    @Test
+    public void dropsBatchThatKeepsFailing() {
+        UrlDatabase failing = failingDatabase();
+        try {
+            CheckResultWriter writer = new CheckResultWriter(failing, 60 * 1000);
+            writer.updateLastChecked(id, 1000, false);
+            writer.recordCheck(id, 1000, false, false, 100);
+
+            for (int attempt = 1; attempt <= CheckResultWriter.MAX_FLUSH_ATTEMPTS; attempt++) {
+                assertFalse(writer.flush());
+                MonitoredUrl url = new MonitoredUrl(id, "https://tixel.com/au/event", 5, true);
+                writer.applyPending(url);
+                // Requeued until the last attempt, then dropped
+                assertEquals(attempt < CheckResultWriter.MAX_FLUSH_ATTEMPTS ? 1000 : 0,
+                        url.getLastCheckedTimestamp());
+            }
+
+            // Nothing is left to retry, so this flush does not reach the failing write
+            assertTrue(writer.flush());
+        } finally {
+            failing.close();
+        }
+    }
+
+    @Test
+    public void boundedFlushWritesOnWriterThread() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        writer.updateLastChecked(id, 1000, true);
+
+        assertTrue(writer.flush(5000));
+        assertEquals(1000, database.getUrlById(id).getLastCheckedTimestamp());
+    }
+
+    @Test
+    public void snapshotIsStoredWithHistoryEntry() {
+        CheckResultWriter writer = new CheckResultWriter(database, 60 * 1000);
+        ListingSnapshot snapshot = new ListingSnapshot.Builder().add(1, 9900).add(2, 12000).build();
+        writer.updateListingSnapshot(id, snapshot);
+        writer.addTicketHistory(id, 1000, "2 new listings");
+
+        // Queued listings are already the ones later checks compare against
+        assertEquals(snapshot, writer.getListingSnapshot(id));
+        assertNull(database.getListingSnapshot(id));
+        assertEquals(0, database.getTicketHistory(id).size());
+
+        assertTrue(writer.flush());
+        assertEquals(snapshot, database.getListingSnapshot(id));
+        assertEquals(1, database.getTicketHistory(id).size());
+    }
+
+    @Test
+    public void rolledBackSnapshotIsRequeuedWithBatch() {
+        UrlDatabase failing = failingDatabase();
+        try {
+            CheckResultWriter writer = new CheckResultWriter(failing, 60 * 1000);
+            ListingSnapshot snapshot = new ListingSnapshot.Builder().add(1, 9900).build();
+            writer.updateListingSnapshot(id, snapshot);
+            writer.recordCheck(id, 1000, false, true, 100);
+
+            assertFalse(writer.flush());
+            assertNull(failing.getListingSnapshot(id));
+            assertEquals(snapshot, writer.getListingSnapshot(id));
+        } finally {
+            failing.close();
+        }
+    }
+}
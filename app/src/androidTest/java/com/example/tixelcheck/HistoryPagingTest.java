@@ -0,0 +1,124 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class HistoryPagingTest {
+    private static final String DATABASE_NAME = "paging-test.db";
+
+    private Context context;
+    private UrlDatabase database;
+    private long first;
+    private long second;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/a", 5, true));
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/b", 5, true));
+        first = database.getAllUrls().get(0).getId();
+        second = database.getAllUrls().get(1).getId();
+
+        // Several entries share a timestamp, which pages must neither skip nor repeat
+        for (int i = 0; i < 60; i++) {
+            database.addTicketHistory(first, (i / 3) * 1000, "a" + i);
+            database.addTicketHistory(second, (i / 3) * 1000 + 500, "b" + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void urlPagesCoverHistoryOnceNewestFirst() {
+        List<TicketHistoryEntry> all = new ArrayList<>();
+        List<TicketHistoryEntry> page = database.getTicketHistoryPage(first, null, 7);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            page = database.getTicketHistoryPage(first, page.get(page.size() - 1), 7);
+        }
+
+        assertEquals(60, all.size());
+        assertEquals(database.getTicketHistory(first).size(), countDistinctIds(all));
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getTimestamp() >= all.get(i).getTimestamp());
+            assertEquals(first, all.get(i).getUrlId());
+        }
+    }
+
+    @Test
+    public void globalPagesMergeAllUrls() {
+        List<TicketHistoryEntry> all = new ArrayList<>();
+        List<TicketHistoryEntry> page = database.getAllTicketHistoryPage(null, 25);
+        while (!page.isEmpty()) {
+            all.addAll(page);
+            page = database.getAllTicketHistoryPage(page.get(page.size() - 1), 25);
+        }
+
+        assertEquals(120, all.size());
+        assertEquals(120, countDistinctIds(all));
+        assertEquals(second, all.get(0).getUrlId());
+        assertEquals(first, all.get(all.size() - 1).getUrlId());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(all.get(i - 1).getTimestamp() >= all.get(i).getTimestamp());
+        }
+    }
+
+    @Test
+    public void pagesUseIndexesWithoutSorting() {
+        SQLiteDatabase db = database.getReadableDatabase();
+        String plan = queryPlan(db, "SELECT * FROM ticket_history"
+                + " WHERE timestamp <= 5000 AND (timestamp < 5000 OR id > 10)"
+                + " ORDER BY timestamp DESC, id LIMIT 50");
+        assertTrue(plan, plan.contains("idx_ticket_history_time"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+
+        plan = queryPlan(db, "SELECT * FROM ticket_history WHERE url_id = 1"
+                + " AND timestamp <= 5000 AND (timestamp < 5000 OR id > 10)"
+                + " ORDER BY timestamp DESC, id LIMIT 50");
+        assertTrue(plan, plan.contains("idx_ticket_history_url_time"));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    private static int countDistinctIds(List<TicketHistoryEntry> entries) {
+        Set<Long> ids = new HashSet<>();
+        for (TicketHistoryEntry entry : entries) {
+            ids.add(entry.getId());
+        }
+        return ids.size();
+    }
+
+    private static String queryPlan(SQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(cursor.getColumnIndexOrThrow("detail"))).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+}
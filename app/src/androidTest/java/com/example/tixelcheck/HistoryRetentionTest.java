@@ -0,0 +1,145 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class HistoryRetentionTest {
+    private static final String DATABASE_NAME = "retention-test.db";
+    private static final String TIMEOUT = "Connection timed out. Will retry later.";
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+
+    private Context context;
+    private UrlDatabase database;
+    private long id;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event", 5, true));
+        id = database.getAllUrls().get(0).getId();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void rollsUpConsecutiveIdenticalErrors() {
+        for (int i = 1; i <= 5; i++) {
+            database.addTicketHistory(id, i * 1000, TIMEOUT, TicketHistoryEntry.KIND_ERROR);
+        }
+        database.addTicketHistory(id, 6000, "Tickets found!");
+        database.addTicketHistory(id, 7000, TIMEOUT, TicketHistoryEntry.KIND_ERROR);
+
+        // Batches smaller than the run make it continue across transactions
+        int removed = new HistoryRetention(database, 365 * DAY_MS, 500, 2).run(8000);
+
+        List<TicketHistoryEntry> history = database.getTicketHistory(id);
+        assertEquals(4, removed);
+        assertEquals(3, history.size());
+        assertEquals(1, history.get(0).getRepeatCount());
+        assertEquals("Tickets found!", history.get(1).getNote());
+        TicketHistoryEntry run = history.get(2);
+        assertEquals(5, run.getRepeatCount());
+        assertEquals(1000, run.getFirstTimestamp());
+        assertEquals(5000, run.getTimestamp());
+        assertTrue(run.getMessage().startsWith(TIMEOUT + " (5 times since "));
+    }
+
+    @Test
+    public void dropsOldErrorsAndKeepsOtherEntries() {
+        long now = 30 * DAY_MS;
+        database.addTicketHistory(id, DAY_MS, "Tickets found!");
+        database.addTicketHistory(id, 2 * DAY_MS, TIMEOUT, TicketHistoryEntry.KIND_ERROR);
+        database.addTicketHistory(id, now - DAY_MS, "Connection error. Will retry later.",
+                TicketHistoryEntry.KIND_ERROR);
+
+        new HistoryRetention(database, 7 * DAY_MS, 500, 200).run(now);
+
+        List<TicketHistoryEntry> history = database.getTicketHistory(id);
+        assertEquals(2, history.size());
+        assertTrue(history.get(0).isError());
+        assertFalse(history.get(1).isError());
+    }
+
+    @Test
+    public void capsEntriesPerUrl() {
+        for (int i = 0; i < 25; i++) {
+            database.addTicketHistory(id, i, "New listings " + i);
+        }
+
+        new HistoryRetention(database, 365 * DAY_MS, 10, 4).run(25);
+
+        List<TicketHistoryEntry> history = database.getTicketHistory(id);
+        assertEquals(10, history.size());
+        assertEquals(24, history.get(0).getTimestamp());
+        assertEquals(15, history.get(9).getTimestamp());
+    }
+
+    @Test
+    public void upgradeMarksErrorEntries() {
+        database.close();
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        db.execSQL("DROP TABLE ticket_history");
+        db.execSQL("CREATE TABLE ticket_history(id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "url_id INTEGER NOT NULL REFERENCES urls(id) ON DELETE CASCADE, timestamp INTEGER, note TEXT)");
+        db.execSQL("INSERT INTO ticket_history(url_id, timestamp, note) VALUES (" + id + ", 1000, '" + TIMEOUT + "')");
+        db.execSQL("INSERT INTO ticket_history(url_id, timestamp, note) VALUES (" + id + ", 2000, 'Tickets found!')");
+        db.setVersion(12);
+        db.close();
+
+        database = new UrlDatabase(context, DATABASE_NAME);
+        List<TicketHistoryEntry> history = database.getTicketHistory(id);
+        assertFalse(history.get(0).isError());
+        assertTrue(history.get(1).isError());
+        assertEquals(1000, history.get(1).getFirstTimestamp());
+    }
+
+    @Test
+    public void compactionLeavesNoFreePages() {
+        for (int i = 0; i < 2000; i++) {
+            database.addTicketHistory(id, i, TIMEOUT + " " + i, TicketHistoryEntry.KIND_ERROR);
+        }
+        HistoryRetention retention = new HistoryRetention(database, DAY_MS, 500, 200);
+        retention.run(10 * DAY_MS);
+        // The first pass may have to convert the file with a full VACUUM
+        retention.compact();
+        retention.compact();
+
+        SQLiteDatabase db = database.getWritableDatabase();
+        assertEquals(2, pragma(db, "auto_vacuum"));
+        assertEquals(0, pragma(db, "freelist_count"));
+    }
+
+    private static long pragma(SQLiteDatabase db, String name) {
+        Cursor cursor = db.rawQuery("PRAGMA " + name, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class PriceHistoryTest {
+    private static final String DATABASE_NAME = "price-history-test.db";
+    private static final long MINUTE = 60 * 1000;
+
+    private Context context;
+    private UrlDatabase database;
+    private PriceHistory history;
+    private long id;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        history = new PriceHistory(database);
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/festival", 5, true));
+        id = database.getAllUrls().get(0).getId();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    private boolean append(long timestamp, long price) {
+        return history.append(database.getUrlById(id), timestamp, price);
+    }
+
+    @Test
+    public void alertsOnceUntilPriceRisesAboveTarget() {
+        database.updateTargetPrice(id, 10000);
+
+        assertFalse(append(MINUTE, 12000));
+        assertTrue(append(2 * MINUTE, 9500));
+        assertFalse("Still below target", append(3 * MINUTE, 9000));
+        assertFalse(append(4 * MINUTE, 11000));
+        assertTrue("Dropped again", append(5 * MINUTE, 10000));
+    }
+
+    @Test
+    public void newTargetAtOrAboveCurrentPriceAlerts() {
+        assertFalse("No target", append(MINUTE, 9000));
+
+        database.updateTargetPrice(id, 10000);
+        assertTrue(append(2 * MINUTE, 9000));
+
+        database.updateTargetPrice(id, 9000);
+        assertTrue("Changed target", append(3 * MINUTE, 9000));
+        assertFalse(append(4 * MINUTE, 9000));
+    }
+
+    @Test
+    public void alertSurvivesReload() {
+        database.updateTargetPrice(id, 10000);
+        assertTrue(append(MINUTE, 9000));
+
+        // A new process starts without open blocks
+        history = new PriceHistory(database);
+        assertFalse(append(2 * MINUTE, 9000));
+        assertEquals(10000, database.getUrlById(id).getAlertedTargetPrice());
+    }
+
+    @Test
+    public void rangeReturnsPointsAcrossBlocks() {
+        int points = PriceSeries.MAX_POINTS_PER_BLOCK + 10;
+        for (int i = 0; i < points; i++) {
+            append(i * MINUTE, 10000 + i);
+        }
+
+        PriceSeries.Points all = history.getRange(id, 0, Long.MAX_VALUE);
+        assertEquals(points, all.size());
+        assertEquals(0, all.getTime(0));
+        assertEquals(10000 + points - 1, all.getPrice(points - 1));
+
+        PriceSeries.Points some = history.getRange(id, 100 * MINUTE, 300 * MINUTE);
+        assertEquals(201, some.size());
+        assertEquals(100 * MINUTE, some.getTime(0));
+        assertEquals(10100, some.getPrice(0));
+        assertEquals(10300, some.getPrice(200));
+    }
+
+    @Test
+    public void unchangedPriceIsRecordedOncePerInterval() {
+        long interval = PriceHistory.UNCHANGED_SAMPLE_INTERVAL_MS;
+        for (int i = 0; i < 10; i++) {
+            append(i * MINUTE, 10000);
+        }
+        append(interval, 10000);
+        append(interval + MINUTE, 9000);
+
+        PriceSeries.Points points = history.getRange(id, 0, Long.MAX_VALUE);
+        assertEquals(3, points.size());
+        assertEquals(0, points.getTime(0));
+        assertEquals(interval, points.getTime(1));
+        assertEquals(9000, points.getPrice(2));
+    }
+
+    @Test
+    public void summaryShowsLatestAndLowestPrice() {
+        append(MINUTE, 12000);
+        append(2 * MINUTE, 9950);
+        append(3 * MINUTE, 11005);
+
+        assertEquals("Cheapest now 110.05, lowest this week 99.50",
+                TicketHistoryDialog.formatPriceSummary(history.getRange(id, 0, Long.MAX_VALUE)));
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class TicketHistoryBenchmarkTest {
+    private static final String TAG = "TicketHistoryBenchmark";
+    private static final String DATABASE_NAME = "history-benchmark.db";
+    private static final int URLS = 100;
+    private static final int ROWS_PER_URL = 2000;
+    private static final int QUERIES = 50;
+
+    private Context context;
+    private UrlDatabase database;
+    private final List<Long> ids = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        for (int i = 0; i < URLS; i++) {
+            database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event-" + i, 5, true));
+        }
+        for (MonitoredUrl url : database.getAllUrls()) {
+            ids.add(url.getId());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void historyQueryUsesIndex() {
+        SQLiteDatabase db = database.getReadableDatabase();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN SELECT * FROM ticket_history"
+                + " WHERE url_id = ? ORDER BY timestamp DESC", new String[]{"1"});
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(cursor.getColumnCount() - 1)).append('\n');
+        }
+        cursor.close();
+
+        assertTrue(plan.toString(), plan.toString().contains("idx_ticket_history_url_time"));
+        assertFalse(plan.toString(), plan.toString().contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void deletingUrlCascadesToHistory() {
+        long id = ids.get(0);
+        database.addTicketHistory(id, 1000, "found");
+        database.addTicketHistory(id, 2000, "found again");
+        database.addTicketHistory(ids.get(1), 3000, "other event");
+
+        database.deleteUrl(id);
+
+        assertEquals(0, database.getTicketHistory(id).size());
+        assertEquals(1, database.getTicketHistory(ids.get(1)).size());
+    }
+
+    @Test
+    public void upgradeKeepsHistoryAndDropsOrphans() {
+        long id = ids.get(0);
+        database.addTicketHistory(id, 1000, "found");
+        database.close();
+
+        // Put the v10 schema back: history without foreign key, index or roll-up columns,
+        // no stats table and URLs without the columns added since
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        db.execSQL("DROP TABLE url_stats");
+        db.execSQL("DROP TABLE ticket_history");
+        db.execSQL("CREATE TABLE ticket_history(id INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "url_id INTEGER, timestamp INTEGER, note TEXT)");
+        db.execSQL("INSERT INTO ticket_history(url_id, timestamp, note) VALUES (" + id + ", 1000, 'found')");
+        db.execSQL("INSERT INTO ticket_history(url_id, timestamp, note) VALUES (-1, 2000, 'orphan')");
+        String v10Columns = "id, url, frequency, active, event_name, event_date, event_type, last_checked, "
+                + "tickets_found, etag, last_modified, positive_phrases, negative_phrases, content_fingerprint, "
+                + "canonical_url, next_due, listing_snapshot, target_price";
+        db.execSQL("CREATE TABLE urls_v10(id INTEGER PRIMARY KEY AUTOINCREMENT, url TEXT, frequency INTEGER, "
+                + "active INTEGER, event_name TEXT, event_date TEXT, event_type TEXT, last_checked INTEGER, "
+                + "tickets_found INTEGER, etag TEXT, last_modified TEXT, positive_phrases TEXT, "
+                + "negative_phrases TEXT, content_fingerprint INTEGER DEFAULT 0, canonical_url TEXT, "
+                + "next_due INTEGER DEFAULT 0, listing_snapshot BLOB, target_price INTEGER DEFAULT 0)");
+        db.execSQL("INSERT INTO urls_v10(" + v10Columns + ") SELECT " + v10Columns + " FROM urls");
+        db.execSQL("DROP TABLE urls");
+        db.execSQL("ALTER TABLE urls_v10 RENAME TO urls");
+        db.execSQL("CREATE INDEX idx_urls_canonical_url ON urls(canonical_url)");
+        db.setVersion(10);
+        db.close();
+
+        database = new UrlDatabase(context, DATABASE_NAME);
+        List<TicketHistoryEntry> history = database.getTicketHistory(id);
+        assertEquals(1, history.size());
+        assertEquals("found", history.get(0).getNote());
+        assertEquals(0, database.getTicketHistory(-1).size());
+        assertEquals(UrlDatabase.DATABASE_VERSION, database.getReadableDatabase().getVersion());
+
+        // Later steps ran on top of the rebuilt history
+        Cursor stats = database.getReadableDatabase().rawQuery("SELECT COUNT(*) FROM url_stats", null);
+        stats.moveToFirst();
+        assertEquals(URLS, stats.getInt(0));
+        stats.close();
+        Cursor alerted = database.getReadableDatabase().rawQuery(
+                "SELECT alerted_target_price FROM urls WHERE id = " + id, null);
+        assertTrue(alerted.moveToFirst());
+        assertEquals(0, alerted.getLong(0));
+        alerted.close();
+
+        database.deleteUrl(id);
+        assertEquals(0, database.getTicketHistory(id).size());
+    }
+
+    @Test
+    public void indexedHistoryOnLargeTable() {
+        seedHistory();
+        SQLiteDatabase db = database.getWritableDatabase();
+
+        long indexed = timeQueries();
+        db.execSQL("DROP INDEX idx_ticket_history_url_time");
+        long scanned = timeQueries();
+        db.execSQL("CREATE INDEX idx_ticket_history_url_time ON ticket_history(url_id, timestamp DESC)");
+
+        Log.i(TAG, QUERIES + " history queries over " + (URLS * ROWS_PER_URL) + " rows: "
+                + (indexed / 1000000) + " ms indexed, " + (scanned / 1000000) + " ms without index");
+        assertTrue("Index did not speed up history queries", indexed < scanned);
+
+        long start = System.nanoTime();
+        database.deleteUrl(ids.get(0));
+        Log.i(TAG, "Cascading delete of " + ROWS_PER_URL + " rows: "
+                + ((System.nanoTime() - start) / 1000000) + " ms");
+        assertEquals(0, database.getTicketHistory(ids.get(0)).size());
+    }
+
+    private void seedHistory() {
+        SQLiteDatabase db = database.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement(
+                "INSERT INTO ticket_history(url_id, timestamp, note) VALUES (?, ?, ?)");
+        db.beginTransaction();
+        try {
+            // Interleave URLs like real checks do, so one URL's rows are spread over the table
+            for (int i = 0; i < ROWS_PER_URL; i++) {
+                for (long id : ids) {
+                    insert.bindLong(1, id);
+                    insert.bindLong(2, i * 60000L);
+                    insert.bindString(3, "Tickets found");
+                    insert.executeInsert();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private long timeQueries() {
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            long id = ids.get(i % ids.size());
+            assertEquals(ROWS_PER_URL, database.getTicketHistory(id).size());
+        }
+        return System.nanoTime() - start;
+    }
+}
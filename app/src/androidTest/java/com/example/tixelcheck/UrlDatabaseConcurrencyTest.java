@@ -0,0 +1,153 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class UrlDatabaseConcurrencyTest {
+    private static final String TAG = "UrlDatabaseConcurrency";
+    private static final String DATABASE_NAME = "hammer-test.db";
+    private static final int URLS = 20;
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int OPERATIONS = 200;
+
+    private Context context;
+    private UrlDatabase database;
+    private final List<Long> ids = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        for (int i = 0; i < URLS; i++) {
+            database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event-" + i, 5, true));
+        }
+        for (MonitoredUrl url : database.getAllUrls()) {
+            ids.add(url.getId());
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void concurrentCheckersAndReadersNeverFail() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    long id = ids.get((writer + i) % ids.size());
+                    database.updateLastChecked(id, System.currentTimeMillis(), i % 2 == 0, i + 1);
+                    if (i % 10 == 0) {
+                        database.addTicketHistory(id, System.currentTimeMillis(), "hammer " + writer);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int r = 0; r < READERS; r++) {
+            final int reader = r;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    assertEquals(URLS, database.getAllUrls().size());
+                    database.getUrlById(ids.get((reader + i) % ids.size()));
+                    database.getTicketHistory(ids.get(i % ids.size()));
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(2, TimeUnit.MINUTES));
+        // Rethrows IllegalStateException ("attempt to re-open an already-closed object") or any other failure
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    @Test
+    public void compiledWritesSurviveReopening() {
+        long id = ids.get(0);
+        database.updateLastChecked(id, 1000, true, 42);
+        database.addTicketHistory(id, 1000, "first");
+        database.close();
+
+        // Statements compiled for the closed connection must be replaced, not reused
+        database.updateLastChecked(id, 2000, false);
+        database.addTicketHistory(id, 2000, null);
+
+        MonitoredUrl url = database.getUrlById(id);
+        assertEquals(2000, url.getLastCheckedTimestamp());
+        assertEquals(2, database.getTicketHistory(id).size());
+    }
+
+    @Test
+    public void persistentConnectionOutperformsReopeningPerCall() {
+        // Warm up both paths
+        runCheckerWorkload(false, 20);
+        runCheckerWorkload(true, 20);
+
+        long reopening = runCheckerWorkload(true, OPERATIONS);
+        long persistent = runCheckerWorkload(false, OPERATIONS);
+        Log.d(TAG, "Reopening per call: " + reopening + " ms, persistent connection: " + persistent + " ms");
+
+        assertTrue("Persistent " + persistent + " ms vs reopening " + reopening + " ms", persistent < reopening);
+    }
+
+    /**
+     * Runs the reads and writes of one check per URL, optionally closing the
+     * database after every call the way UrlDatabase used to
+     *
+     * @return Elapsed time in milliseconds
+     */
+    private long runCheckerWorkload(boolean closeAfterEachCall, int checks) {
+        long startTime = System.nanoTime();
+        for (int i = 0; i < checks; i++) {
+            long id = ids.get(i % ids.size());
+            database.getUrlById(id);
+            maybeClose(closeAfterEachCall);
+            database.updateLastChecked(id, System.currentTimeMillis(), false, i + 1);
+            maybeClose(closeAfterEachCall);
+            database.getActiveUrlsByCanonicalUrl(UrlCanonicalizer.canonicalize("https://tixel.com/au/event-" + i));
+            maybeClose(closeAfterEachCall);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    private void maybeClose(boolean close) {
+        if (close) {
+            database.close();
+        }
+    }
+}
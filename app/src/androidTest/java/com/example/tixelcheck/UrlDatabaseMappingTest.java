@@ -0,0 +1,97 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class UrlDatabaseMappingTest {
+    private static final String DATABASE_NAME = "mapping-test.db";
+
+    private Context context;
+    private UrlDatabase database;
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void mapsEveryColumn() {
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/festival", 5, true,
+                "Summer Festival", "2030-01-01", MonitoredUrl.EVENT_TYPE_CONCERT, 1000, true));
+        long id = database.getAllUrls().get(0).getId();
+        database.updateValidators(id, "\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT");
+        database.updateLastChecked(id, 2000, true, 42);
+        database.updateTargetPrice(id, 9900);
+
+        MonitoredUrl url = database.getUrlById(id);
+        assertEquals("https://tixel.com/au/festival", url.getUrl());
+        assertEquals(5, url.getFrequency());
+        assertTrue(url.isActive());
+        assertEquals("Summer Festival", url.getEventName());
+        assertEquals("2030-01-01", url.getEventDate());
+        assertEquals(MonitoredUrl.EVENT_TYPE_CONCERT, url.getEventType());
+        assertEquals(2000, url.getLastCheckedTimestamp());
+        assertTrue(url.hasTicketsFound());
+        assertEquals("\"v1\"", url.getEtag());
+        assertEquals(42, url.getContentFingerprint());
+        assertEquals(9900, url.getTargetPrice());
+        assertNull(database.getUrlById(id + 1));
+    }
+
+    @Test
+    public void activeQueriesSkipInactiveUrls() {
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/a", 5, true));
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/b", 10, false));
+
+        List<MonitoredUrl> active = database.getActiveUrls();
+        assertEquals(1, active.size());
+        assertEquals("https://tixel.com/au/a", active.get(0).getUrl());
+        assertEquals(2, database.getAllUrls().size());
+
+        List<UrlDatabase.ScheduledUrl> schedules = database.getActiveSchedules();
+        assertEquals(1, schedules.size());
+        assertEquals(5, schedules.get(0).frequency);
+        assertEquals(0, schedules.get(0).nextDue);
+    }
+
+    @Test
+    public void upgradeBackfillsMissingEventTypes() {
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/music/festival-tickets", 5, true));
+        long id = database.getAllUrls().get(0).getId();
+        database.close();
+
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+                context.getDatabasePath(DATABASE_NAME).getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        db.execSQL("UPDATE urls SET event_type = NULL");
+        db.setVersion(11);
+        db.close();
+
+        database = new UrlDatabase(context, DATABASE_NAME);
+        assertEquals(MonitoredUrl.EVENT_TYPE_CONCERT, database.getUrlById(id).getEventType());
+        assertFalse(database.getAllUrls().isEmpty());
+    }
+}
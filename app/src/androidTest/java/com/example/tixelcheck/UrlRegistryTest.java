@@ -0,0 +1,100 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class UrlRegistryTest {
+    private static final String DATABASE_NAME = "registry-test.db";
+
+    private Context context;
+    private UrlDatabase database;
+    private final List<Long> changedIds = new ArrayList<>();
+    private final List<MonitoredUrl> changedUrls = new ArrayList<>();
+    private final UrlRegistry.Listener listener = (urlId, url) -> {
+        changedIds.add(urlId);
+        changedUrls.add(url);
+    };
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        context.deleteDatabase(DATABASE_NAME);
+        database = new UrlDatabase(context, DATABASE_NAME);
+        database.getRegistry().addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        database.getRegistry().removeListener(listener);
+        database.close();
+        context.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void writesThroughAndNotifiesEveryChange() {
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event", 5, true));
+        assertEquals(1, changedIds.size());
+        long id = changedIds.get(0);
+        assertEquals("https://tixel.com/au/event", changedUrls.get(0).getUrl());
+
+        database.updateLastChecked(id, 1000, true, 42);
+        assertEquals(1000, changedUrls.get(1).getLastCheckedTimestamp());
+        assertTrue(database.getUrlById(id).hasTicketsFound());
+        assertEquals(42, database.getUrlById(id).getContentFingerprint());
+
+        database.updateEventDetails(id, "Grand Final", "2030-09-28");
+        assertEquals("Grand Final", database.getUrlById(id).getEventName());
+
+        database.deleteUrl(id);
+        assertEquals(id, (long) changedIds.get(changedIds.size() - 1));
+        assertNull(changedUrls.get(changedUrls.size() - 1));
+        assertNull(database.getUrlById(id));
+    }
+
+    @Test
+    public void readsMatchTheDatabaseAfterReopening() {
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event", 5, true));
+        long id = database.getAllUrls().get(0).getId();
+        database.updateValidators(id, "\"v1\"", null);
+        database.updateTargetPrice(id, 5000);
+
+        UrlDatabase reopened = new UrlDatabase(context, DATABASE_NAME);
+        try {
+            MonitoredUrl fromDisk = reopened.getUrlById(id);
+            MonitoredUrl fromMemory = database.getUrlById(id);
+            assertEquals(fromDisk.getEtag(), fromMemory.getEtag());
+            assertEquals(fromDisk.getTargetPrice(), fromMemory.getTargetPrice());
+            assertEquals(fromDisk.getLastCheckedTimestamp(), fromMemory.getLastCheckedTimestamp());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    public void handsOutCopies() {
+        database.addUrl(new MonitoredUrl(0, "https://tixel.com/au/event", 5, true));
+        MonitoredUrl url = database.getAllUrls().get(0);
+        url.setActive(false);
+
+        assertTrue(database.getUrlById(url.getId()).isActive());
+        assertFalse(database.getActiveUrls().isEmpty());
+        assertEquals(1, database.getActiveUrlsByCanonicalUrl(
+                UrlCanonicalizer.canonicalize("https://tixel.com/au/event")).size());
+    }
+}
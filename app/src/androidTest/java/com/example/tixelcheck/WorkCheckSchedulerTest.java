@@ -0,0 +1,163 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.work.Configuration;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.WorkManagerTestInitHelper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class WorkCheckSchedulerTest {
+    private Context context;
+    private UrlDatabase database;
+    private WorkManager workManager;
+    private final List<Long> addedIds = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        context = ApplicationProvider.getApplicationContext();
+        Configuration config = new Configuration.Builder()
+                .setMinimumLoggingLevel(Log.DEBUG)
+                .setExecutor(new SynchronousExecutor())
+                .build();
+        WorkManagerTestInitHelper.initializeTestWorkManager(context, config);
+        workManager = WorkManager.getInstance(context);
+        database = UrlDatabase.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        for (long id : addedIds) {
+            database.deleteUrl(id);
+        }
+    }
+
+    private MonitoredUrl addUrl(String url, int frequency) {
+        database.addUrl(new MonitoredUrl(0, url, frequency, true));
+        for (MonitoredUrl stored : database.getAllUrls()) {
+            if (stored.getUrl().equals(url)) {
+                addedIds.add(stored.getId());
+                return stored;
+            }
+        }
+        throw new AssertionError("URL was not stored: " + url);
+    }
+
+    private List<WorkInfo> uniqueWork(String prefix, MonitoredUrl url) throws Exception {
+        return workManager.getWorkInfosForUniqueWork(prefix + UrlCanonicalizer.canonicalize(url.getUrl())).get();
+    }
+
+    @Test
+    public void relaxedUrlGetsPeriodicWork() throws Exception {
+        MonitoredUrl url = addUrl("https://tixel.com/test/relaxed-" + System.nanoTime(), 60);
+
+        WorkCheckScheduler.schedule(context, url);
+
+        List<WorkInfo> periodic = uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, url);
+        assertEquals(1, periodic.size());
+        assertEquals(WorkInfo.State.ENQUEUED, periodic.get(0).getState());
+        assertTrue(periodic.get(0).getTags().contains(WorkCheckScheduler.WORK_TAG));
+        assertTrue(uniqueWork(WorkCheckScheduler.ONE_TIME_WORK_PREFIX, url).isEmpty());
+    }
+
+    @Test
+    public void hotUrlGetsOneTimeWorkThatWaitsForNetwork() throws Exception {
+        MonitoredUrl url = addUrl("https://tixel.com/test/hot-" + System.nanoTime(), 5);
+
+        WorkCheckScheduler.schedule(context, url);
+
+        List<WorkInfo> oneTime = uniqueWork(WorkCheckScheduler.ONE_TIME_WORK_PREFIX, url);
+        assertEquals(1, oneTime.size());
+        // Network constraints are not met in the test driver, so the check must not run
+        assertEquals(WorkInfo.State.ENQUEUED, oneTime.get(0).getState());
+        assertTrue(uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, url).isEmpty());
+    }
+
+    @Test
+    public void duplicateUrlsShareOneUniqueWork() throws Exception {
+        String base = "https://tixel.com/test/dup-" + System.nanoTime();
+        MonitoredUrl first = addUrl(base + "?utm_source=newsletter", 60);
+        MonitoredUrl second = addUrl(base + "/", 60);
+
+        WorkCheckScheduler.schedule(context, first);
+        WorkCheckScheduler.schedule(context, second);
+
+        List<WorkInfo> periodic = uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, first);
+        int pending = 0;
+        for (WorkInfo info : periodic) {
+            if (!info.getState().isFinished()) {
+                pending++;
+            }
+        }
+        assertEquals(1, pending);
+    }
+
+    @Test
+    public void cancelKeepsWorkForRemainingDuplicate() throws Exception {
+        String base = "https://tixel.com/test/cancel-" + System.nanoTime();
+        MonitoredUrl first = addUrl(base, 60);
+        MonitoredUrl second = addUrl(base + "#top", 60);
+        WorkCheckScheduler.schedule(context, first);
+
+        WorkCheckScheduler.cancel(context, first.getId());
+        assertEquals(WorkInfo.State.ENQUEUED, latest(uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, first)).getState());
+
+        second.setActive(false);
+        database.updateUrl(second);
+        first.setActive(false);
+        database.updateUrl(first);
+        WorkCheckScheduler.cancel(context, second.getId());
+        assertEquals(WorkInfo.State.CANCELLED, latest(uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, first)).getState());
+    }
+
+    @Test
+    public void switchingToAlarmsCancelsWorkOfDuplicates() throws Exception {
+        String base = "https://tixel.com/test/switch-" + System.nanoTime();
+        MonitoredUrl first = addUrl(base, 60);
+        addUrl(base + "?utm_source=app", 60);
+        String previous = CheckEngine.getSelected(context);
+        try {
+            CheckEngine.select(context, CheckEngine.WORK_MANAGER);
+            assertEquals(WorkInfo.State.ENQUEUED,
+                    latest(uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, first)).getState());
+
+            CheckEngine.select(context, CheckEngine.ALARM);
+            assertEquals(WorkInfo.State.CANCELLED,
+                    latest(uniqueWork(WorkCheckScheduler.PERIODIC_WORK_PREFIX, first)).getState());
+        } finally {
+            CheckEngine.select(context, previous);
+        }
+    }
+
+    @Test
+    public void checkNowEnqueuesExpeditedWork() throws Exception {
+        MonitoredUrl url = addUrl("https://tixel.com/test/now-" + System.nanoTime(), 60);
+
+        WorkCheckScheduler.checkNow(context, url);
+
+        WorkInfo info = latest(uniqueWork(WorkCheckScheduler.ONE_TIME_WORK_PREFIX, url));
+        assertNotNull(info);
+        assertEquals(WorkInfo.State.ENQUEUED, info.getState());
+    }
+
+    private static WorkInfo latest(List<WorkInfo> infos) {
+        return infos.isEmpty() ? null : infos.get(infos.size() - 1);
+    }
+}
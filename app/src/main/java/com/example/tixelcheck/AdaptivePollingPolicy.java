@@ -0,0 +1,178 @@
+package com.example.tixelcheck;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides how long to wait before checking a URL again.
+ *
+ * The user's frequency is the base interval. Checks get closer together as the
+ * event approaches and for an hour after tickets appear or disappear, and back
+ * off exponentially while the page keeps coming back unchanged. The result is
+ * kept within a quarter and eight times the user's frequency, so the setting
+ * still bounds both battery use and reaction time. Events that have passed are
+ * not checked at all.
+ */
+public final class AdaptivePollingPolicy {
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    private static final long DAY_MS = 24 * HOUR_MS;
+
+    static final double MIN_FACTOR = 0.25;
+    static final double MAX_FACTOR = 8;
+    static final long MIN_INTERVAL_MS = MINUTE_MS;
+    static final long MAX_INTERVAL_MS = DAY_MS;
+
+    // Polling stays fast for this long after the availability status flips
+    static final long HOT_PERIOD_MS = HOUR_MS;
+
+    // An event date is a whole day, so it counts as passed once that day is over
+    private static final long EVENT_GRACE_MS = DAY_MS;
+
+    // Event dates are typed freely, so accept the common ways of writing them. Numeric
+    // dates are read day first, as the date field's hint asks.
+    private static final String[] DATE_FORMATS = {
+            "dd/MM/yyyy", "d/M/yyyy", "dd/MM/yy", "yyyy-MM-dd", "d.M.yyyy",
+            "d MMMM yyyy", "d MMM yyyy", "MMMM d, yyyy", "MMM d, yyyy", "MMMM d yyyy", "MMM d yyyy",
+            "EEE d MMM yyyy", "EEEE d MMMM yyyy"
+    };
+
+    // A four-digit year; a yyyy pattern would otherwise read "25" as the year 25
+    private static final Pattern FULL_YEAR = Pattern.compile("(?<!\\d)\\d{4}(?!\\d)");
+
+    // Numeric day and month, which could be either way round if both are 12 or less
+    private static final Pattern NUMERIC_DATE = Pattern.compile("(\\d{1,2})[/.](\\d{1,2})[/.]\\d{2,4}");
+
+    private AdaptivePollingPolicy() {
+    }
+
+    /**
+     * Milliseconds until the next check
+     *
+     * @param frequencyMinutes The user's frequency for the URL
+     * @param eventTime Start of the event day, or -1 if unknown
+     * @param unchangedChecks Consecutive checks that found the page unchanged
+     * @param lastStatusChange When tickets last appeared or disappeared, or 0 if never
+     * @param now Current time
+     */
+    public static long intervalMs(int frequencyMinutes, long eventTime, int unchangedChecks,
+                                  long lastStatusChange, long now) {
+        double factor;
+        if (lastStatusChange > 0 && now - lastStatusChange < HOT_PERIOD_MS) {
+            factor = MIN_FACTOR;
+        } else {
+            factor = proximityFactor(eventTime, now) * backoffFactor(unchangedChecks);
+        }
+        factor = Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, factor));
+
+        long interval = (long) (Math.max(frequencyMinutes, 1) * MINUTE_MS * factor);
+        return Math.max(MIN_INTERVAL_MS, Math.min(MAX_INTERVAL_MS, interval));
+    }
+
+    /**
+     * Interval after consecutive failed checks: exponential backoff with full jitter,
+     * i.e. a random time up to the normal interval doubled once per failure, so
+     * URLs failing together during an outage spread out instead of retrying in step
+     *
+     * @param intervalMs The interval the URL would have if it were healthy
+     * @param failures Consecutive failed checks, at least 1
+     * @param random Source of jitter
+     */
+    public static long retryIntervalMs(long intervalMs, int failures, Random random) {
+        long ceiling = MAX_INTERVAL_MS;
+        if (failures < 20 && intervalMs < MAX_INTERVAL_MS >> failures) {
+            ceiling = intervalMs << failures;
+        }
+        long jittered = (long) (random.nextDouble() * ceiling);
+        return Math.max(MIN_INTERVAL_MS, jittered);
+    }
+
+    /**
+     * Whether the event has passed and the URL no longer needs checking
+     */
+    public static boolean isEventOver(long eventTime, long now) {
+        return eventTime > 0 && now > eventTime + EVENT_GRACE_MS;
+    }
+
+    /**
+     * Whether a user-entered event date has passed. A date that could be read
+     * month first as well never counts as passed, since reading it the wrong
+     * way round would stop monitoring months early.
+     */
+    public static boolean isEventOver(String eventDate, long now) {
+        return !isAmbiguousDate(eventDate) && isEventOver(parseEventDate(eventDate), now);
+    }
+
+    /**
+     * Whether a date is numeric with a different day and month that are both 12 or less
+     */
+    static boolean isAmbiguousDate(String eventDate) {
+        if (eventDate == null) {
+            return false;
+        }
+        Matcher matcher = NUMERIC_DATE.matcher(eventDate.trim());
+        if (!matcher.matches()) {
+            return false;
+        }
+        int first = Integer.parseInt(matcher.group(1));
+        int second = Integer.parseInt(matcher.group(2));
+        return first != second && first <= 12 && second <= 12;
+    }
+
+    /**
+     * Scales the interval by how far away the event is
+     */
+    private static double proximityFactor(long eventTime, long now) {
+        if (eventTime <= 0) {
+            return 1;
+        }
+        long until = eventTime - now;
+        if (until <= DAY_MS) {
+            return 0.25;
+        } else if (until <= 7 * DAY_MS) {
+            return 0.5;
+        } else if (until <= 30 * DAY_MS) {
+            return 1;
+        } else if (until <= 90 * DAY_MS) {
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * Doubles the interval for every two checks in a row that found the page unchanged
+     */
+    private static double backoffFactor(int unchangedChecks) {
+        return 1 << Math.min(unchangedChecks / 2, 3);
+    }
+
+    /**
+     * Parses a user-entered event date, returning the start of that day in the
+     * default time zone or -1 if the text is not a recognisable date
+     */
+    public static long parseEventDate(String eventDate) {
+        if (eventDate == null || eventDate.trim().isEmpty()) {
+            return -1;
+        }
+        String text = eventDate.trim();
+        boolean fullYear = FULL_YEAR.matcher(text).find();
+        for (String pattern : DATE_FORMATS) {
+            if (pattern.contains("yyyy") != fullYear) {
+                continue;
+            }
+            SimpleDateFormat format = new SimpleDateFormat(pattern, Locale.ENGLISH);
+            format.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(text, position);
+            if (date != null && position.getIndex() == text.length()) {
+                return date.getTime();
+            }
+        }
+        return -1;
+    }
+}
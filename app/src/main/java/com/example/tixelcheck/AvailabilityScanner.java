@@ -0,0 +1,521 @@
+package com.example.tixelcheck;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Streaming ticket availability detector.
+ *
+ * Scans an HTML response as it arrives and matches the availability phrases
+ * against the page's visible text, the same text Jsoup's Document.text() would
+ * produce, without building a DOM or copying the page into a String. Markup,
+ * comments and script/style bodies are skipped, entities are decoded, whitespace
+ * is collapsed and characters are lower-cased one at a time before being fed
+ * to a PhraseMatcher, so all phrases are found in a single pass.
+ *
+ * A positive phrase decides the result and scanning stops there, so the rest
+ * of the page is never read; closing the response then abandons the remaining
+ * download. A positive phrase that starts inside a negative one (e.g. "tickets
+ * available" within "no tickets available") does not count. Negative phrases are
+ * only reported once the page has ended without a positive match.
+ *
+ * The visible text consumed up to the decision is also fingerprinted with
+ * xxHash64. Markup and scripts are left out, so per-request noise such as
+ * nonces or build hashes does not change the fingerprint, and two pages with
+ * the same fingerprint always produce the same result.
+ */
+public class AvailabilityScanner {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_TAG_NAME = 16;
+    private static final int MAX_ENTITY = 10;
+
+    // Tags that Document.text() separates with whitespace
+    private static final char[][] BLOCK_TAGS = toCharArrays(
+            "address", "article", "aside", "blockquote", "br", "dd", "div", "dl", "dt",
+            "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3", "h4",
+            "h5", "h6", "header", "hr", "li", "main", "nav", "ol", "p", "pre", "section",
+            "table", "tbody", "td", "tfoot", "th", "thead", "tr", "ul", "option", "button");
+
+    // Entities decoded by name; any other named entity is not part of a phrase
+    private static final char[][] NAMED_ENTITIES = toCharArrays("nbsp", "amp", "lt", "gt", "quot", "apos");
+    private static final char[] NAMED_ENTITY_VALUES = {' ', '&', '<', '>', '"', '\''};
+
+    private static final char[] SCRIPT = "script".toCharArray();
+    private static final char[] STYLE = "style".toCharArray();
+    private static final char[] SCRIPT_END = "</script".toCharArray();
+    private static final char[] STYLE_END = "</style".toCharArray();
+
+    // Parser states
+    private static final int TEXT = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_NAME = 2;
+    private static final int IN_TAG = 3;
+    private static final int BANG = 4;
+    private static final int BANG_DASH = 5;
+    private static final int COMMENT = 6;
+    private static final int DECLARATION = 7;
+    private static final int RAW_TEXT = 8;
+    private static final int ENTITY = 9;
+
+    /**
+     * Outcome of a scan
+     */
+    public static class Result {
+        private final boolean available;
+        private final String phrase;
+        private final long offset;
+        private final long fingerprint;
+
+        Result(boolean available, String phrase, long offset, long fingerprint) {
+            this.available = available;
+            this.phrase = phrase;
+            this.offset = offset;
+            this.fingerprint = fingerprint;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        /**
+         * Whether the page ended without a positive phrase but with a negative one
+         */
+        public boolean isSoldOut() {
+            return !available && phrase != null;
+        }
+
+        /**
+         * The phrase that decided the result: the positive phrase if tickets are
+         * available, otherwise the first negative phrase, or null if none matched
+         */
+        public String getPhrase() {
+            return phrase;
+        }
+
+        /**
+         * Offset of the deciding phrase in the page's visible text, or -1
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * xxHash64 of the visible text scanned to reach this result
+         */
+        public long getFingerprint() {
+            return fingerprint;
+        }
+    }
+
+    private final PhraseMatcher matcher;
+
+    // Parser state for the current scan
+    private int state;
+    private boolean closingTag;
+    private boolean rawTextEnd;
+    private final char[] tagName = new char[MAX_TAG_NAME];
+    private int tagNameLength;
+    private char quote;
+    private char[] rawEnd;
+    private int rawProgress;
+    private int dashes;
+    private final char[] entity = new char[MAX_ENTITY];
+    private int entityLength;
+    private boolean lastWasSpace;
+    private long textOffset;
+    private final XxHash64 fingerprint = new XxHash64();
+
+    // Matcher state for the current scan
+    private int matchState;
+    private long lastNegativeEnd;
+    private int positiveMatch;
+    private long positiveOffset;
+    private int negativeMatch;
+    private long negativeOffset;
+
+    /**
+     * Creates a scanner for the default English phrases
+     */
+    public AvailabilityScanner() {
+        this(PhraseMatcher.forPhrases(PhraseSet.forLocale(Locale.ENGLISH)));
+    }
+
+    public AvailabilityScanner(PhraseMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Scans a response body, decoding it with the given charset
+     *
+     * @param in The response body; it is not closed
+     * @param charset The body's charset, or null for UTF-8
+     * @return The detection result
+     * @throws IOException If the body could not be read
+     */
+    public Result scan(InputStream in, Charset charset) throws IOException {
+        return scan(new InputStreamReader(in, charset != null ? charset : StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Scans decoded page content until a phrase matches or the input ends
+     *
+     * @param reader The page content; it is not closed
+     * @return The detection result
+     * @throws IOException If the content could not be read
+     */
+    public Result scan(Reader reader) throws IOException {
+        begin();
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            if (feed(buffer, 0, read)) {
+                break;
+            }
+        }
+        return finish();
+    }
+
+    /**
+     * Starts a scan fed piece by piece through feed(), for callers that read
+     * the page themselves
+     */
+    public void begin() {
+        reset();
+    }
+
+    /**
+     * Scans the next piece of decoded page content
+     *
+     * @return True once a positive phrase has decided the result; later input is ignored
+     */
+    public boolean feed(char[] buffer, int offset, int length) {
+        if (positiveMatch != -1) {
+            return true;
+        }
+        for (int i = offset; i < offset + length; i++) {
+            consume(buffer[i]);
+            if (positiveMatch != -1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Result of the content fed since begin()
+     */
+    public Result finish() {
+        if (positiveMatch != -1) {
+            return new Result(true, matcher.getPhrase(positiveMatch), positiveOffset, fingerprint.digest());
+        }
+        if (negativeMatch != -1) {
+            return new Result(false, matcher.getPhrase(negativeMatch), negativeOffset, fingerprint.digest());
+        }
+        return new Result(false, null, -1, fingerprint.digest());
+    }
+
+    private void reset() {
+        state = TEXT;
+        closingTag = false;
+        rawTextEnd = false;
+        tagNameLength = 0;
+        quote = 0;
+        rawEnd = null;
+        rawProgress = 0;
+        dashes = 0;
+        entityLength = 0;
+        lastWasSpace = true;
+        textOffset = 0;
+        fingerprint.reset();
+        matchState = matcher.initialState();
+        lastNegativeEnd = -1;
+        positiveMatch = -1;
+        positiveOffset = -1;
+        negativeMatch = -1;
+        negativeOffset = -1;
+    }
+
+    private void consume(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = TAG_OPEN;
+                } else if (c == '&') {
+                    entityLength = 0;
+                    state = ENTITY;
+                } else {
+                    emit(c);
+                }
+                break;
+
+            case TAG_OPEN:
+                closingTag = false;
+                tagNameLength = 0;
+                if (c == '!') {
+                    state = BANG;
+                } else if (c == '/') {
+                    closingTag = true;
+                    state = TAG_NAME;
+                } else if (c == '?') {
+                    state = DECLARATION;
+                } else if (isAsciiLetter(c)) {
+                    appendTagName(c);
+                    state = TAG_NAME;
+                } else {
+                    // Not markup, e.g. "a < b"
+                    state = TEXT;
+                    emit('<');
+                    consume(c);
+                }
+                break;
+
+            case TAG_NAME:
+                if (c == '>') {
+                    endTag();
+                } else if (Character.isWhitespace(c) || c == '/') {
+                    state = IN_TAG;
+                } else {
+                    appendTagName(c);
+                }
+                break;
+
+            case IN_TAG:
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    endTag();
+                }
+                break;
+
+            case BANG:
+                if (c == '-') {
+                    state = BANG_DASH;
+                } else {
+                    state = DECLARATION;
+                    consume(c);
+                }
+                break;
+
+            case BANG_DASH:
+                if (c == '-') {
+                    dashes = 0;
+                    state = COMMENT;
+                } else {
+                    state = DECLARATION;
+                    consume(c);
+                }
+                break;
+
+            case COMMENT:
+                if (c == '>' && dashes >= 2) {
+                    state = TEXT;
+                } else if (c == '-') {
+                    dashes++;
+                } else {
+                    dashes = 0;
+                }
+                break;
+
+            case DECLARATION:
+                if (c == '>') {
+                    state = TEXT;
+                }
+                break;
+
+            case RAW_TEXT:
+                if (Character.toLowerCase(c) == rawEnd[rawProgress]) {
+                    rawProgress++;
+                    if (rawProgress == rawEnd.length) {
+                        // Remaining characters of the closing tag are skipped like attributes
+                        closingTag = true;
+                        rawTextEnd = true;
+                        tagNameLength = 0;
+                        state = IN_TAG;
+                    }
+                } else {
+                    rawProgress = c == '<' ? 1 : 0;
+                }
+                break;
+
+            case ENTITY:
+                if (c == ';') {
+                    state = TEXT;
+                    decodeEntity();
+                } else if ((isAsciiLetter(c) || Character.isDigit(c) || c == '#') && entityLength < MAX_ENTITY) {
+                    entity[entityLength++] = c;
+                } else {
+                    // Not an entity reference, emit it verbatim
+                    state = TEXT;
+                    emit('&');
+                    for (int i = 0; i < entityLength; i++) {
+                        emit(entity[i]);
+                    }
+                    consume(c);
+                }
+                break;
+        }
+    }
+
+    private void endTag() {
+        state = TEXT;
+        if (rawTextEnd) {
+            rawTextEnd = false;
+            return;
+        }
+
+        for (char[] blockTag : BLOCK_TAGS) {
+            if (tagNameEquals(blockTag)) {
+                emit(' ');
+                break;
+            }
+        }
+        if (!closingTag) {
+            if (tagNameEquals(SCRIPT)) {
+                enterRawText(SCRIPT_END);
+            } else if (tagNameEquals(STYLE)) {
+                enterRawText(STYLE_END);
+            }
+        }
+    }
+
+    private boolean tagNameEquals(char[] name) {
+        if (name.length != tagNameLength) {
+            return false;
+        }
+        for (int i = 0; i < tagNameLength; i++) {
+            if (tagName[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void enterRawText(char[] end) {
+        rawEnd = end;
+        rawProgress = 0;
+        state = RAW_TEXT;
+    }
+
+    private void appendTagName(char c) {
+        if (tagNameLength < MAX_TAG_NAME) {
+            tagName[tagNameLength++] = Character.toLowerCase(c);
+        }
+    }
+
+    private void decodeEntity() {
+        int codePoint = -1;
+        if (entityLength > 1 && entity[0] == '#') {
+            boolean hex = entity[1] == 'x' || entity[1] == 'X';
+            codePoint = parseCodePoint(hex ? 2 : 1, hex ? 16 : 10);
+        } else {
+            for (int i = 0; i < NAMED_ENTITIES.length; i++) {
+                if (entityEquals(NAMED_ENTITIES[i])) {
+                    codePoint = NAMED_ENTITY_VALUES[i];
+                    break;
+                }
+            }
+        }
+
+        if (codePoint == -1) {
+            emit('&');
+            for (int i = 0; i < entityLength; i++) {
+                emit(entity[i]);
+            }
+            emit(';');
+        } else if (Character.isBmpCodePoint(codePoint)) {
+            emit((char) codePoint);
+        } else {
+            emit(Character.highSurrogate(codePoint));
+            emit(Character.lowSurrogate(codePoint));
+        }
+    }
+
+    private boolean entityEquals(char[] name) {
+        if (name.length != entityLength) {
+            return false;
+        }
+        for (int i = 0; i < entityLength; i++) {
+            if (entity[i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a numeric character reference from the entity buffer without allocating
+     */
+    private int parseCodePoint(int start, int radix) {
+        if (start >= entityLength) {
+            return -1;
+        }
+        int codePoint = 0;
+        for (int i = start; i < entityLength; i++) {
+            int digit = Character.digit(entity[i], radix);
+            if (digit == -1) {
+                return -1;
+            }
+            codePoint = codePoint * radix + digit;
+            if (codePoint > Character.MAX_CODE_POINT) {
+                return -1;
+            }
+        }
+        return codePoint;
+    }
+
+    /**
+     * Feeds one visible-text character to the phrase matchers,
+     * collapsing whitespace runs to a single space
+     */
+    private void emit(char c) {
+        if (Character.isWhitespace(c) || c == '\u00a0') {
+            if (lastWasSpace) {
+                return;
+            }
+            lastWasSpace = true;
+            c = ' ';
+        } else {
+            lastWasSpace = false;
+            c = Character.toLowerCase(c);
+        }
+
+        textOffset++;
+        fingerprint.update(c);
+        matchState = matcher.step(matchState, c);
+        for (int match = matcher.firstMatch(matchState); match != -1; match = matcher.nextMatch(match)) {
+            int phrase = matcher.phraseAt(match);
+            long start = textOffset - matcher.getPhraseLength(phrase);
+            if (matcher.isNegative(phrase)) {
+                lastNegativeEnd = textOffset;
+                if (negativeMatch == -1) {
+                    negativeMatch = phrase;
+                    negativeOffset = start;
+                }
+            } else if (start >= lastNegativeEnd && positiveMatch == -1) {
+                positiveMatch = phrase;
+                positiveOffset = start;
+            }
+        }
+    }
+
+    private static char[][] toCharArrays(String... values) {
+        char[][] arrays = new char[values.length][];
+        for (int i = 0; i < values.length; i++) {
+            arrays[i] = values[i].toCharArray();
+        }
+        return arrays;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
@@ -5,8 +5,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
-import java.util.List;
-
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "BootReceiver";
     
@@ -15,17 +13,21 @@ public class BootReceiver extends BroadcastReceiver {
         if (intent.getAction() != null && intent.getAction().equals(Intent.ACTION_BOOT_COMPLETED)) {
             Log.d(TAG, "Boot completed, restoring alarms");
             
-            // Get all active URLs from database
-            UrlDatabase database = UrlDatabase.getInstance(context);
-            List<MonitoredUrl> activeUrls = database.getActiveUrls();
-            
-            // Set alarms for all active URLs
-            for (MonitoredUrl url : activeUrls) {
-                TicketCheckerAlarm.setAlarm(context, url);
-                Log.d(TAG, "Restored alarm for URL ID: " + url.getId());
+            // WorkManager restores its own work after a reboot
+            if (CheckEngine.usesWorkManager(context)) {
+                return;
             }
             
-            Log.d(TAG, "Restored " + activeUrls.size() + " alarms");
+            // Due times are stored in the database, so only the single wakeup alarm needs restoring
+            PendingResult pendingResult = goAsync();
+            new Thread(() -> {
+                try {
+                    CheckScheduler.getInstance(context).restoreAlarm();
+                    Log.d(TAG, "Restored scheduler alarm");
+                } finally {
+                    pendingResult.finish();
+                }
+            }).start();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.example.tixelcheck;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Collapses fetches of the same target into one.
+ *
+ * A caller asking for a key that is already being fetched waits for that fetch
+ * instead of starting another, and a successful result is handed to later callers
+ * until it is older than the reuse window. Failures are passed to every waiting
+ * caller but never reused.
+ *
+ * @param <K> Key identifying the target
+ * @param <V> Result of a fetch
+ */
+public class CheckCoalescer<K, V> {
+
+    /**
+     * Work done by the caller that ends up fetching a key
+     */
+    public interface Fetch<V> {
+        V fetch() throws IOException;
+    }
+
+    private final long reuseWindowMs;
+    private final Map<K, Entry<V>> entries = new HashMap<>();
+
+    public CheckCoalescer(long reuseWindowMs) {
+        this.reuseWindowMs = reuseWindowMs;
+    }
+
+    /**
+     * Returns a recent result for the key, waits for one being fetched, or fetches it
+     *
+     * @param key Target to fetch
+     * @param fetch Performs the fetch if this caller has to
+     * @return The shared result
+     * @throws IOException If the fetch this caller used failed
+     */
+    public V get(K key, Fetch<V> fetch) throws IOException {
+        Entry<V> entry;
+        boolean leader = false;
+        synchronized (entries) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            entry = entries.get(key);
+            if (entry == null || entry.isExpired(now, reuseWindowMs)) {
+                entry = new Entry<>();
+                entries.put(key, entry);
+                leader = true;
+            }
+        }
+
+        if (leader) {
+            try {
+                entry.complete(fetch.fetch(), null);
+            } catch (IOException | RuntimeException e) {
+                synchronized (entries) {
+                    if (entries.get(key) == entry) {
+                        entries.remove(key);
+                    }
+                }
+                entry.complete(null, e);
+            }
+        }
+        return entry.await();
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now, reuseWindowMs)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * One fetch, pending or finished
+     */
+    private static class Entry<V> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile V value;
+        private volatile Exception error;
+        private volatile long completedAt;
+
+        void complete(V value, Exception error) {
+            this.value = value;
+            this.error = error;
+            this.completedAt = System.currentTimeMillis();
+            done.countDown();
+        }
+
+        boolean isExpired(long now, long reuseWindowMs) {
+            return done.getCount() == 0 && (error != null || now - completedAt > reuseWindowMs);
+        }
+
+        V await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a shared fetch");
+            }
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            }
+            if (error != null) {
+                throw (RuntimeException) error;
+            }
+            return value;
+        }
+    }
+}
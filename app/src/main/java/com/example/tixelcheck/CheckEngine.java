@@ -0,0 +1,78 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runtime choice between the two ways of scheduling checks: the single wakeup
+ * alarm with foreground sweeps (CheckScheduler and TicketMonitorService), or
+ * WorkManager (WorkCheckScheduler and TicketCheckWorker).
+ */
+public final class CheckEngine {
+    private static final String TAG = "CheckEngine";
+    private static final String PREFS_NAME = "check_engine";
+    private static final String KEY_ENGINE = "engine";
+
+    public static final String ALARM = "alarm";
+    public static final String WORK_MANAGER = "work_manager";
+
+    private CheckEngine() {
+    }
+
+    /**
+     * The selected engine, the alarm engine unless WorkManager was chosen
+     */
+    public static String getSelected(Context context) {
+        return prefs(context).getString(KEY_ENGINE, ALARM);
+    }
+
+    public static boolean usesWorkManager(Context context) {
+        return WORK_MANAGER.equals(getSelected(context));
+    }
+
+    /**
+     * Switches engines, moving every active URL's schedule from the old engine to the new one
+     *
+     * @param context Application context
+     * @param engine ALARM or WORK_MANAGER
+     */
+    public static void select(Context context, String engine) {
+        if (!ALARM.equals(engine) && !WORK_MANAGER.equals(engine)) {
+            throw new IllegalArgumentException("Unknown check engine: " + engine);
+        }
+        if (engine.equals(getSelected(context))) {
+            return;
+        }
+        
+        // Stop the old engine before saving, so its cancel paths still run
+        UrlDatabase database = UrlDatabase.getInstance(context);
+        if (usesWorkManager(context)) {
+            // Cancelling by URL ID would hand work shared by duplicates back and
+            // forth between them, so cancel every canonical URL's work outright
+            Set<String> canonicalUrls = new HashSet<>();
+            for (MonitoredUrl url : database.getAllUrls()) {
+                String canonicalUrl = UrlCanonicalizer.canonicalize(url.getUrl());
+                if (canonicalUrls.add(canonicalUrl)) {
+                    WorkCheckScheduler.cancelCanonical(context, canonicalUrl);
+                }
+            }
+        } else {
+            for (MonitoredUrl url : database.getActiveUrls()) {
+                TicketCheckerAlarm.cancelAlarm(context, url);
+            }
+        }
+        prefs(context).edit().putString(KEY_ENGINE, engine).apply();
+        for (MonitoredUrl url : database.getActiveUrls()) {
+            TicketCheckerAlarm.setAlarm(context, url);
+        }
+        Log.d(TAG, "Switched check engine to " + engine);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Write-behind queue for the results of checks.
+ *
+ * Every check ends with a status update, a count towards its URL's statistics
+ * and sometimes a listing snapshot or history entry. Written one by one, each
+ * of them would be a transaction and fsync of its own. Here they are held for
+ * a short window instead: repeated updates of the same URL collapse into one,
+ * and everything pending is written in a single transaction when the window
+ * ends, a sweep finishes, tickets are found or the monitoring service stops.
+ */
+public class CheckResultWriter {
+    private static final String TAG = "CheckResultWriter";
+
+    // Results are written at most this long after the first of a batch
+    static final long FLUSH_WINDOW_MS = 2000;
+    // Consecutive failed flushes after which the failing batch is dropped
+    static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private static CheckResultWriter instance;
+
+    private final UrlDatabase database;
+    private final long flushWindowMs;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Latest status update per URL ID, in the order URLs were first updated
+    private final Map<Long, PendingCheck> pendingChecks = new LinkedHashMap<>();
+    private final List<PendingHistory> pendingHistory = new ArrayList<>();
+    private final List<CheckSample> pendingSamples = new ArrayList<>();
+    // Latest listing snapshot per URL ID still to be written
+    private final Map<Long, ListingSnapshot> pendingSnapshots = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    // Latest listing snapshot per URL ID, queued or stored, so checks need not read it back
+    private final Map<Long, ListingSnapshot> knownSnapshots = new HashMap<>();
+
+    // Updates taken by the flush in progress, until they are committed
+    private Map<Long, PendingCheck> flushingChecks = new LinkedHashMap<>();
+
+    // Held while a batch is being written, so flushes never overlap
+    private final Object flushLock = new Object();
+    // Flushes that have failed in a row, guarded by flushLock
+    private int failedFlushes;
+
+    public static synchronized CheckResultWriter getInstance(Context context) {
+        if (instance == null) {
+            instance = new CheckResultWriter(UrlDatabase.getInstance(context), FLUSH_WINDOW_MS);
+        }
+        return instance;
+    }
+
+    CheckResultWriter(UrlDatabase database, long flushWindowMs) {
+        this.database = database;
+        this.flushWindowMs = flushWindowMs;
+    }
+
+    /**
+     * Queues the outcome of a check that did not evaluate a new page
+     */
+    public synchronized void updateLastChecked(long urlId, long timestamp, boolean ticketsFound) {
+        updateLastChecked(urlId, timestamp, ticketsFound, 0);
+    }
+
+    /**
+     * Queues the outcome of an evaluated check, replacing any pending one for the URL
+     *
+     * @param contentFingerprint Fingerprint of the evaluated page, or 0 to keep the stored one
+     */
+    public synchronized void updateLastChecked(long urlId, long timestamp, boolean ticketsFound,
+            long contentFingerprint) {
+        PendingCheck pending = pendingChecks.get(urlId);
+        if (pending == null) {
+            pendingChecks.put(urlId, new PendingCheck(timestamp, ticketsFound, contentFingerprint));
+        } else {
+            pending.timestamp = timestamp;
+            pending.ticketsFound = ticketsFound;
+            if (contentFingerprint != 0) {
+                pending.contentFingerprint = contentFingerprint;
+            }
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Queues a history entry; entries are never coalesced
+     */
+    public synchronized void addTicketHistory(long urlId, long timestamp, String note) {
+        pendingHistory.add(new PendingHistory(urlId, timestamp, note, TicketHistoryEntry.KIND_EVENT));
+        scheduleFlush();
+    }
+
+    /**
+     * Queues a history entry for a failed check
+     */
+    public synchronized void addErrorHistory(long urlId, long timestamp, String note) {
+        pendingHistory.add(new PendingHistory(urlId, timestamp, note, TicketHistoryEntry.KIND_ERROR));
+        scheduleFlush();
+    }
+
+    /**
+     * Queues a check to be counted in its URL's statistics; every check is counted
+     *
+     * @param latencyMs How long the check took, ignored if it failed
+     */
+    public synchronized void recordCheck(long urlId, long timestamp, boolean failed, boolean ticketsFound,
+            long latencyMs) {
+        pendingSamples.add(new CheckSample(urlId, timestamp, failed, ticketsFound, latencyMs));
+        scheduleFlush();
+    }
+
+    /**
+     * Queues the listings seen by an evaluated check, replacing any pending ones for the URL.
+     * They are written in the same transaction as the check's history entry.
+     */
+    public synchronized void updateListingSnapshot(long urlId, ListingSnapshot snapshot) {
+        pendingSnapshots.put(urlId, snapshot);
+        knownSnapshots.put(urlId, snapshot);
+        scheduleFlush();
+    }
+
+    /**
+     * Listings seen at the URL's last evaluated check, including one still queued,
+     * or null if none were recorded. Only the first call per URL reads the database.
+     */
+    public ListingSnapshot getListingSnapshot(long urlId) {
+        synchronized (this) {
+            if (knownSnapshots.containsKey(urlId)) {
+                return knownSnapshots.get(urlId);
+            }
+        }
+        ListingSnapshot stored = database.getListingSnapshot(urlId);
+        synchronized (this) {
+            // A check may have queued newer listings while the database was read
+            if (!knownSnapshots.containsKey(urlId)) {
+                knownSnapshots.put(urlId, stored);
+            }
+            return knownSnapshots.get(urlId);
+        }
+    }
+
+    /**
+     * Applies a URL's pending status to a copy read from the database, so a
+     * check never compares against a result that is still queued
+     */
+    public synchronized void applyPending(MonitoredUrl url) {
+        PendingCheck pending = pendingChecks.get(url.getId());
+        if (pending == null) {
+            pending = flushingChecks.get(url.getId());
+        }
+        if (pending != null) {
+            url.setLastCheckedTimestamp(pending.timestamp);
+            url.setHasTicketsFound(pending.ticketsFound);
+            if (pending.contentFingerprint != 0) {
+                url.setContentFingerprint(pending.contentFingerprint);
+            }
+        }
+    }
+
+    /**
+     * Writes everything pending in one transaction and returns once it is stored.
+     * A failed batch is logged and requeued, or dropped once it has failed
+     * MAX_FLUSH_ATTEMPTS times in a row.
+     *
+     * @return False if the batch could not be written
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            Map<Long, PendingCheck> checks;
+            List<PendingHistory> history;
+            List<CheckSample> samples;
+            Map<Long, ListingSnapshot> snapshots;
+            synchronized (this) {
+                if (scheduledFlush != null) {
+                    scheduledFlush.cancel(false);
+                    scheduledFlush = null;
+                }
+                if (pendingChecks.isEmpty() && pendingHistory.isEmpty() && pendingSamples.isEmpty()
+                        && pendingSnapshots.isEmpty()) {
+                    return true;
+                }
+                checks = new LinkedHashMap<>(pendingChecks);
+                history = new ArrayList<>(pendingHistory);
+                samples = new ArrayList<>(pendingSamples);
+                snapshots = new LinkedHashMap<>(pendingSnapshots);
+                pendingChecks.clear();
+                pendingHistory.clear();
+                pendingSamples.clear();
+                pendingSnapshots.clear();
+                flushingChecks = checks;
+            }
+
+            try {
+                write(checks, history, samples, snapshots);
+                failedFlushes = 0;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error flushing check results", e);
+                failedFlushes++;
+                if (failedFlushes < MAX_FLUSH_ATTEMPTS) {
+                    requeue(checks, history, samples, snapshots);
+                } else {
+                    // Retrying a batch that keeps failing would hold it, and all newer results, forever
+                    Log.e(TAG, "Dropping " + checks.size() + " check results, " + samples.size()
+                            + " stats samples, " + snapshots.size() + " listing snapshots and "
+                            + history.size() + " history entries after " + failedFlushes + " failed flushes");
+                    failedFlushes = 0;
+                }
+                return false;
+            } finally {
+                synchronized (this) {
+                    flushingChecks = new LinkedHashMap<>();
+                }
+            }
+            Log.d(TAG, "Flushed " + checks.size() + " check results, " + samples.size() + " stats samples, "
+                    + snapshots.size() + " listing snapshots and " + history.size()
+                    + " history entries in one transaction");
+            return true;
+        }
+    }
+
+    /**
+     * Flushes on the writer's own thread, waiting at most the given time for it.
+     * For callers on the main thread, which must not block on the database for long.
+     *
+     * @return False if the batch could not be written or is still being written
+     */
+    public boolean flush(long maxWaitMs) {
+        Future<Boolean> flushed = flusher.submit(() -> flush());
+        try {
+            return flushed.get(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.w(TAG, "Flush still running after " + maxWaitMs + " ms, not waiting for it");
+            return false;
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Error flushing check results", e.getCause());
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes a batch in one transaction. The registry only sees its changes once
+     * they are committed, so a rolled-back batch never shows up in memory.
+     */
+    private void write(Map<Long, PendingCheck> checks, List<PendingHistory> history, List<CheckSample> samples,
+            Map<Long, ListingSnapshot> snapshots) {
+        List<Runnable> registryUpdates = new ArrayList<>();
+        SQLiteDatabase db = database.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Map.Entry<Long, PendingCheck> entry : checks.entrySet()) {
+                PendingCheck check = entry.getValue();
+                if (check.contentFingerprint != 0) {
+                    database.updateLastChecked(entry.getKey(), check.timestamp, check.ticketsFound,
+                            check.contentFingerprint, registryUpdates);
+                } else {
+                    database.updateLastChecked(entry.getKey(), check.timestamp, check.ticketsFound,
+                            registryUpdates);
+                }
+            }
+            for (CheckSample sample : samples) {
+                database.recordCheck(sample.urlId, sample.timestamp, sample.failed, sample.ticketsFound,
+                        sample.latencyMs, registryUpdates);
+            }
+            for (Map.Entry<Long, ListingSnapshot> entry : snapshots.entrySet()) {
+                database.updateListingSnapshot(entry.getKey(), entry.getValue());
+            }
+            for (PendingHistory entry : history) {
+                database.addTicketHistory(entry.urlId, entry.timestamp, entry.note, entry.kind);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        for (Runnable update : registryUpdates) {
+            update.run();
+        }
+    }
+
+    /**
+     * Puts back a batch whose transaction was rolled back, behind any newer updates
+     */
+    private synchronized void requeue(Map<Long, PendingCheck> checks, List<PendingHistory> history,
+            List<CheckSample> samples, Map<Long, ListingSnapshot> snapshots) {
+        for (Map.Entry<Long, PendingCheck> entry : checks.entrySet()) {
+            PendingCheck newer = pendingChecks.get(entry.getKey());
+            if (newer == null) {
+                pendingChecks.put(entry.getKey(), entry.getValue());
+            } else if (newer.contentFingerprint == 0) {
+                newer.contentFingerprint = entry.getValue().contentFingerprint;
+            }
+        }
+        for (Map.Entry<Long, ListingSnapshot> entry : snapshots.entrySet()) {
+            if (!pendingSnapshots.containsKey(entry.getKey())) {
+                pendingSnapshots.put(entry.getKey(), entry.getValue());
+            }
+        }
+        pendingHistory.addAll(0, history);
+        pendingSamples.addAll(0, samples);
+        scheduleFlush();
+    }
+
+    /**
+     * Starts the batch window with the first pending write. Callers hold the instance lock.
+     */
+    private void scheduleFlush() {
+        if (scheduledFlush == null) {
+            scheduledFlush = flusher.schedule((Runnable) this::flush, flushWindowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class PendingCheck {
+        long timestamp;
+        boolean ticketsFound;
+        long contentFingerprint;
+
+        PendingCheck(long timestamp, boolean ticketsFound, long contentFingerprint) {
+            this.timestamp = timestamp;
+            this.ticketsFound = ticketsFound;
+            this.contentFingerprint = contentFingerprint;
+        }
+    }
+
+    private static final class PendingHistory {
+        final long urlId;
+        final long timestamp;
+        final String note;
+        final int kind;
+
+        PendingHistory(long urlId, long timestamp, String note, int kind) {
+            this.urlId = urlId;
+            this.timestamp = timestamp;
+            this.note = note;
+            this.kind = kind;
+        }
+    }
+
+    private static final class CheckSample {
+        final long urlId;
+        final long timestamp;
+        final boolean failed;
+        final boolean ticketsFound;
+        final long latencyMs;
+
+        CheckSample(long urlId, long timestamp, boolean failed, boolean ticketsFound, long latencyMs) {
+            this.urlId = urlId;
+            this.timestamp = timestamp;
+            this.failed = failed;
+            this.ticketsFound = ticketsFound;
+            this.latencyMs = latencyMs;
+        }
+    }
+}
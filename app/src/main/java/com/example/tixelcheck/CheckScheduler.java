@@ -0,0 +1,206 @@
+package com.example.tixelcheck;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the next due time of every active URL and wakes the device once for
+ * whichever is earliest.
+ *
+ * Due times live in a min-heap mirrored to the next_due column of UrlDatabase,
+ * so they survive process death and reboots. Only one exact alarm is ever
+ * registered; when it fires, every entry that is due is handed to a single
+ * sweep, so the number of wakeups no longer grows with the number of URLs.
+ */
+public class CheckScheduler {
+    private static final String TAG = "CheckScheduler";
+    static final String ACTION_WAKEUP = "com.example.tixelcheck.action.SCHEDULER_WAKEUP";
+
+    // URL IDs start at 1, so this never matches a per-URL alarm from older versions
+    private static final int WAKEUP_REQUEST_CODE = 0;
+
+    private static CheckScheduler instance;
+
+    private final Context context;
+
+    // The heap may hold stale entries after a URL is rescheduled; dueTimes is authoritative
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private final Map<Long, Long> dueTimes = new HashMap<>();
+    private long armedAt = -1;
+
+    public static synchronized CheckScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new CheckScheduler(context.getApplicationContext());
+            instance.load();
+        }
+        return instance;
+    }
+
+    private CheckScheduler(Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Rebuilds the heap from the database. URLs without a stored due time were
+     * scheduled by per-URL alarms in older versions, so those alarms are dropped.
+     */
+    private synchronized void load() {
+        UrlDatabase database = UrlDatabase.getInstance(context);
+        long now = System.currentTimeMillis();
+        for (UrlDatabase.ScheduledUrl url : database.getActiveSchedules()) {
+            long dueAt = url.nextDue;
+            if (dueAt <= 0) {
+                cancelLegacyAlarm(url.id);
+                dueAt = now + TicketCheckerAlarm.getCheckIntervalMillis(context, url.id, url.frequency, url.eventDate);
+                database.updateNextDue(url.id, dueAt);
+            }
+            dueTimes.put(url.id, dueAt);
+            queue.add(new Entry(url.id, dueAt));
+        }
+        Log.d(TAG, "Loaded " + dueTimes.size() + " scheduled URLs");
+    }
+
+    /**
+     * Schedules the next check of a URL one polling interval from now
+     */
+    public void schedule(MonitoredUrl url) {
+        scheduleAt(url.getId(), System.currentTimeMillis() + TicketCheckerAlarm.getCheckIntervalMillis(context, url));
+    }
+
+    /**
+     * Schedules the next check of a URL at the given time, replacing any earlier schedule
+     */
+    public synchronized void scheduleAt(long urlId, long dueAt) {
+        dueTimes.put(urlId, dueAt);
+        queue.add(new Entry(urlId, dueAt));
+        UrlDatabase.getInstance(context).updateNextDue(urlId, dueAt);
+        rearm();
+    }
+
+    /**
+     * Stops checking a URL until it is scheduled again
+     */
+    public synchronized void cancel(long urlId) {
+        if (dueTimes.remove(urlId) != null) {
+            UrlDatabase.getInstance(context).updateNextDue(urlId, 0);
+            rearm();
+        }
+    }
+
+    /**
+     * Removes and returns every URL due at or before the given time. The database
+     * keeps their due times until they are rescheduled, so a check lost to process
+     * death is picked up again on the next load.
+     */
+    public synchronized List<Long> pollDue(long horizon) {
+        List<Long> due = new ArrayList<>();
+        Entry entry;
+        while ((entry = peekValid()) != null && entry.dueAt <= horizon) {
+            queue.poll();
+            dueTimes.remove(entry.urlId);
+            due.add(entry.urlId);
+        }
+        return due;
+    }
+
+    /**
+     * Earliest due time of any scheduled URL, or -1 if none is scheduled
+     */
+    public synchronized long getNextDueTime() {
+        Entry entry = peekValid();
+        return entry != null ? entry.dueAt : -1;
+    }
+
+    /**
+     * Arms the single wakeup alarm for the earliest due time, or cancels it if nothing
+     * is scheduled. Only touches AlarmManager when that time has changed.
+     */
+    public synchronized void rearm() {
+        long nextDue = getNextDueTime();
+        if (nextDue == armedAt) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) return;
+
+        PendingIntent pendingIntent = wakeupIntent();
+        if (nextDue == -1) {
+            alarmManager.cancel(pendingIntent);
+            Log.d(TAG, "No URLs scheduled, wakeup alarm canceled");
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, nextDue, pendingIntent);
+        } else {
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, nextDue, pendingIntent);
+        }
+        armedAt = nextDue;
+        if (nextDue != -1) {
+            Log.d(TAG, "Wakeup alarm set for " + (nextDue - System.currentTimeMillis()) / 1000 + " seconds from now");
+        }
+    }
+
+    /**
+     * Arms the wakeup alarm again after a reboot cleared every alarm
+     */
+    public synchronized void restoreAlarm() {
+        armedAt = -1;
+        rearm();
+    }
+
+    private Entry peekValid() {
+        Entry entry;
+        while ((entry = queue.peek()) != null) {
+            Long dueAt = dueTimes.get(entry.urlId);
+            if (dueAt != null && dueAt == entry.dueAt) {
+                return entry;
+            }
+            queue.poll();
+        }
+        return null;
+    }
+
+    private PendingIntent wakeupIntent() {
+        Intent intent = new Intent(context, TicketCheckerAlarm.class);
+        intent.setAction(ACTION_WAKEUP);
+        return PendingIntent.getBroadcast(context, WAKEUP_REQUEST_CODE, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void cancelLegacyAlarm(long urlId) {
+        Intent intent = new Intent(context, TicketCheckerAlarm.class);
+        PendingIntent pendingIntent = PendingIntent.getBroadcast(context, (int) urlId, intent,
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (pendingIntent != null && alarmManager != null) {
+            alarmManager.cancel(pendingIntent);
+            pendingIntent.cancel();
+        }
+    }
+
+    /**
+     * One scheduled check in the heap
+     */
+    private static class Entry implements Comparable<Entry> {
+        final long urlId;
+        final long dueAt;
+
+        Entry(long urlId, long dueAt) {
+            this.urlId = urlId;
+            this.dueAt = dueAt;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(dueAt, other.dueAt);
+        }
+    }
+}
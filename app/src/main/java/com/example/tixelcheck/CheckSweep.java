@@ -0,0 +1,158 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * One batched check run. Checks every URL the CheckScheduler found due, in
+ * parallel on a bounded pool, and gives up on any check still running at the
+ * sweep deadline, so one foreground service run covers all URLs due at a wakeup.
+ */
+public class CheckSweep {
+    private static final String TAG = "CheckSweep";
+
+    // URLs due this soon are checked early rather than waking the device again
+    static final long DUE_WINDOW_MS = 30 * 1000;
+    static final long SWEEP_DEADLINE_MS = 60 * 1000;
+    private static final int MAX_PARALLEL_CHECKS = 4;
+
+    private static final ExecutorService checkPool = Executors.newFixedThreadPool(MAX_PARALLEL_CHECKS);
+
+    private final Context context;
+    private final TicketChecker checker;
+
+    public CheckSweep(Context context) {
+        this.context = context.getApplicationContext();
+        this.checker = new TicketChecker(context);
+    }
+
+    /**
+     * Runs a sweep and blocks until every check has finished or the deadline passes
+     *
+     * @param urlIds IDs of the URLs that are due
+     * @param checkAll Whether to check every active URL regardless of when it is due
+     * @return Statistics for this sweep
+     */
+    public SweepStats.Sweep run(long[] urlIds, boolean checkAll) {
+        long start = System.currentTimeMillis();
+        List<MonitoredUrl> due = collectDueUrls(urlIds, checkAll, start);
+        Log.d(TAG, "Sweep started with " + due.size() + " due URLs");
+        checker.prefetch(due);
+
+        List<Future<Outcome>> futures = new ArrayList<>();
+        for (MonitoredUrl url : due) {
+            futures.add(checkPool.submit(() -> {
+                long checkStart = System.currentTimeMillis();
+                boolean success = checker.check(url.getId());
+                long duration = System.currentTimeMillis() - checkStart;
+                EngineStats.recordCheck(CheckEngine.ALARM, success, duration);
+                return new Outcome(success, duration);
+            }));
+        }
+
+        long deadline = start + SWEEP_DEADLINE_MS;
+        long[] latencies = new long[futures.size()];
+        int completed = 0;
+        int timedOut = 0;
+        int failed = 0;
+        for (Future<Outcome> future : futures) {
+            long remaining = deadline - System.currentTimeMillis();
+            try {
+                Outcome outcome = future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                latencies[completed++] = outcome.durationMs;
+                if (!outcome.success) {
+                    failed++;
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timedOut++;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Check failed during sweep", e.getCause());
+                failed++;
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                timedOut++;
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Results of the whole sweep go to the database in one transaction
+        CheckResultWriter.getInstance(context).flush();
+
+        // Checked URLs start a fresh interval, which may have changed with the result
+        for (MonitoredUrl url : due) {
+            TicketCheckerAlarm.setAlarm(context, url);
+        }
+
+        long[] completedLatencies = new long[completed];
+        System.arraycopy(latencies, 0, completedLatencies, 0, completed);
+        SweepStats.Sweep sweep = SweepStats.record(due.size(), timedOut, failed,
+                System.currentTimeMillis() - start, completedLatencies);
+        Log.d(TAG, "Sweep finished: " + sweep);
+        Log.d(TAG, EngineStats.getSummary(CheckEngine.ALARM));
+        Set<String> hosts = new HashSet<>();
+        for (MonitoredUrl url : due) {
+            String host = Uri.parse(url.getUrl()).getHost();
+            if (host != null && hosts.add(host)) {
+                Log.d(TAG, "Requests to " + host + ": " + TixelHttpClient.getInstance().getHostStats(host));
+            }
+        }
+        return sweep;
+    }
+
+    private List<MonitoredUrl> collectDueUrls(long[] urlIds, boolean checkAll, long now) {
+        Set<Long> requested = new HashSet<>();
+        if (urlIds != null) {
+            for (long urlId : urlIds) {
+                requested.add(urlId);
+            }
+        }
+        
+        List<MonitoredUrl> due = new ArrayList<>();
+        for (MonitoredUrl url : UrlDatabase.getInstance(context).getActiveUrls()) {
+            if (AdaptivePollingPolicy.isEventOver(url.getEventDate(), now)) {
+                pause(url);
+                continue;
+            }
+            if (checkAll || requested.contains(url.getId())) {
+                due.add(url);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Stops monitoring a URL whose event has already taken place
+     */
+    private void pause(MonitoredUrl url) {
+        url.setActive(false);
+        UrlDatabase.getInstance(context).updateUrl(url);
+        TicketCheckerAlarm.cancelAlarm(context, url);
+        Log.d(TAG, "Paused URL ID " + url.getId() + " because its event date " + url.getEventDate() + " has passed");
+    }
+
+    /**
+     * Result of one check within a sweep
+     */
+    private static class Outcome {
+        final boolean success;
+        final long durationMs;
+
+        Outcome(boolean success, long durationMs) {
+            this.success = success;
+            this.durationMs = durationMs;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.tixelcheck;
+
+/**
+ * Closed/open/half-open circuit breaker for one host.
+ *
+ * After a run of consecutive failures the breaker opens and requests fail
+ * immediately. Once the open period has passed, a single probe request is let
+ * through: success closes the breaker, failure opens it again for twice as long.
+ * Time is passed in so the state machine can be persisted and tested.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    static final int FAILURE_THRESHOLD = 5;
+    static final long BASE_OPEN_MS = 30 * 1000;
+    static final long MAX_OPEN_MS = 10 * 60 * 1000;
+
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long openMs = BASE_OPEN_MS;
+
+    // Not persisted: a probe lost to process death must not block the host forever
+    private boolean probeInFlight;
+
+    /**
+     * Whether a request may go out now. In the half-open state only the first
+     * caller gets through, as the probe.
+     */
+    public synchronized boolean allowRequest(long now) {
+        switch (state) {
+            case OPEN:
+                if (now - openedAt < openMs) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Records a request that reached a healthy host
+     *
+     * @return Whether the persisted state changed
+     */
+    public synchronized boolean onSuccess() {
+        boolean changed = state != State.CLOSED || failures != 0;
+        state = State.CLOSED;
+        failures = 0;
+        openMs = BASE_OPEN_MS;
+        probeInFlight = false;
+        return changed;
+    }
+
+    /**
+     * Records a failed request
+     *
+     * @return Whether the persisted state changed
+     */
+    public synchronized boolean onFailure(long now) {
+        if (state == State.HALF_OPEN) {
+            // The probe failed, so stay away for longer
+            open(now, Math.min(openMs * 2, MAX_OPEN_MS));
+            return true;
+        } else if (state == State.CLOSED) {
+            failures++;
+            if (failures >= FAILURE_THRESHOLD) {
+                open(now, BASE_OPEN_MS);
+            }
+            return true;
+        }
+        // Failures of requests let through before the breaker opened change nothing
+        return false;
+    }
+
+    /**
+     * Records a request that ended without saying anything about the host, such as
+     * one that failed while building it. A probe that ends this way may be retried.
+     */
+    public synchronized void onAbandoned() {
+        probeInFlight = false;
+    }
+
+    private void open(long now, long duration) {
+        state = State.OPEN;
+        openedAt = now;
+        openMs = duration;
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Milliseconds until a probe may be sent, 0 if requests are allowed now
+     */
+    public synchronized long getRetryDelay(long now) {
+        return state == State.OPEN ? Math.max(0, openedAt + openMs - now) : 0;
+    }
+
+    /**
+     * Serialises the persistent part of the state
+     */
+    public synchronized String serialize() {
+        return state.name() + ":" + failures + ":" + openedAt + ":" + openMs;
+    }
+
+    /**
+     * Restores a breaker saved with serialize(), or returns a closed one if the value is invalid
+     */
+    public static CircuitBreaker deserialize(String value) {
+        CircuitBreaker breaker = new CircuitBreaker();
+        if (value == null) {
+            return breaker;
+        }
+        String[] parts = value.split(":");
+        if (parts.length != 4) {
+            return breaker;
+        }
+        try {
+            breaker.state = State.valueOf(parts[0]);
+            breaker.failures = Integer.parseInt(parts[1]);
+            breaker.openedAt = Long.parseLong(parts[2]);
+            breaker.openMs = Long.parseLong(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return new CircuitBreaker();
+        }
+        return breaker;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.tixelcheck;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of making a request while the host's circuit breaker is open
+ */
+public class CircuitOpenException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final long retryDelayMs;
+
+    public CircuitOpenException(String host, long retryDelayMs) {
+        super("Circuit open for " + host + ", next probe in " + retryDelayMs / 1000 + " seconds");
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public long getRetryDelayMs() {
+        return retryDelayMs;
+    }
+}
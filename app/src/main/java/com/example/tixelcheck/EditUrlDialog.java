@@ -14,6 +14,8 @@ import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import java.util.Locale;
+
 /**
  * Dialog for editing an existing monitored URL
  */
@@ -23,7 +25,12 @@ public class EditUrlDialog {
     private final EditUrlDialogListener listener;
     
     public interface EditUrlDialogListener {
-        void onUrlEdited(MonitoredUrl url, String newUrl, int newFrequency, boolean isActive, String eventType);
+        /**
+         * @param positivePhrases Newline-separated phrases, or null for the defaults
+         * @param negativePhrases Newline-separated phrases, or null for the defaults
+         */
+        void onUrlEdited(MonitoredUrl url, String newUrl, int newFrequency, boolean isActive, String eventType,
+                         long targetPrice, String positivePhrases, String negativePhrases);
     }
     
     public EditUrlDialog(Context context, MonitoredUrl url, EditUrlDialogListener listener) {
@@ -48,6 +55,9 @@ public class EditUrlDialog {
         final RadioButton radioConcert = view.findViewById(R.id.radio_concert);
         final RadioButton radioSports = view.findViewById(R.id.radio_sports);
         final RadioButton radioTheater = view.findViewById(R.id.radio_theater);
+        final EditText editTargetPrice = view.findViewById(R.id.edit_target_price);
+        final EditText editPositivePhrases = view.findViewById(R.id.edit_positive_phrases);
+        final EditText editNegativePhrases = view.findViewById(R.id.edit_negative_phrases);
         Button buttonSave = view.findViewById(R.id.button_save);
         Button buttonCancel = view.findViewById(R.id.button_cancel);
         
@@ -56,6 +66,16 @@ public class EditUrlDialog {
         seekFrequency.setProgress(getSeekbarProgressFromFrequency(url.getFrequency()));
         textFrequency.setText("Check every " + url.getFrequency() + " minutes");
         switchActive.setChecked(url.isActive());
+        if (url.getTargetPrice() > 0) {
+            editTargetPrice.setText(String.format(Locale.US, "%d.%02d",
+                    url.getTargetPrice() / 100, url.getTargetPrice() % 100));
+        }
+        if (url.getPositivePhrases() != null) {
+            editPositivePhrases.setText(url.getPositivePhrases());
+        }
+        if (url.getNegativePhrases() != null) {
+            editNegativePhrases.setText(url.getNegativePhrases());
+        }
         
         // Set initial event type selection
         switch (url.getEventType()) {
@@ -102,6 +122,28 @@ public class EditUrlDialog {
             // Get active status
             boolean isActive = switchActive.isChecked();
             
+            // Get target price in cents, 0 if none
+            long targetPrice = 0;
+            String targetText = editTargetPrice.getText().toString().trim();
+            if (!targetText.isEmpty()) {
+                try {
+                    targetPrice = Math.round(Double.parseDouble(targetText) * 100);
+                } catch (NumberFormatException e) {
+                    Toast.makeText(context, "Invalid target price", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+            }
+            
+            // Get detection phrases, null where left empty
+            String positivePhrases = phrasesFrom(editPositivePhrases);
+            String negativePhrases = phrasesFrom(editNegativePhrases);
+            String conflict = PhraseSet.findConflict(positivePhrases, negativePhrases);
+            if (conflict != null) {
+                Toast.makeText(context, "\"" + conflict + "\" cannot be both an available and a sold out phrase",
+                        Toast.LENGTH_LONG).show();
+                return;
+            }
+            
             // Get selected event type
             String eventType = MonitoredUrl.EVENT_TYPE_OTHER;
             int selectedId = radioEventType.getCheckedRadioButtonId();
@@ -115,7 +157,8 @@ public class EditUrlDialog {
             
             // Notify listener and close dialog
             if (listener != null) {
-                listener.onUrlEdited(url, newUrl, frequency, isActive, eventType);
+                listener.onUrlEdited(url, newUrl, frequency, isActive, eventType, Math.max(targetPrice, 0),
+                        positivePhrases, negativePhrases);
             }
             dialog.dismiss();
         });
@@ -126,6 +169,14 @@ public class EditUrlDialog {
         dialog.show();
     }
     
+    /**
+     * Phrases entered in a field, one per line, or null if it holds none
+     */
+    private static String phrasesFrom(EditText field) {
+        String text = field.getText().toString().trim();
+        return text.isEmpty() ? null : text;
+    }
+    
     /**
      * Converts a frequency value to a seekbar progress value
      * Maps frequencies 1, 2, 5, 10, 15, 30, 60, 120, 180, 360 to progress 0-9
@@ -0,0 +1,93 @@
+package com.example.tixelcheck;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Wakeup, latency and success counters per check engine, kept in memory for the
+ * life of the process so the alarm and WorkManager engines can be compared.
+ */
+public class EngineStats {
+    private static final Map<String, Counters> engines = new HashMap<>();
+
+    /**
+     * Counts a wakeup of the given engine
+     *
+     * @param engine One of the CheckEngine names
+     * @param latenessMs How long after the scheduled time the wakeup came, or -1 if unknown
+     */
+    public static synchronized void recordWakeup(String engine, long latenessMs) {
+        Counters counters = get(engine);
+        counters.wakeups++;
+        if (latenessMs >= 0) {
+            counters.latenessSamples++;
+            counters.totalLatenessMs += latenessMs;
+            counters.maxLatenessMs = Math.max(counters.maxLatenessMs, latenessMs);
+        }
+    }
+
+    /**
+     * Counts one check run by the given engine
+     */
+    public static synchronized void recordCheck(String engine, boolean success, long durationMs) {
+        Counters counters = get(engine);
+        counters.checks++;
+        if (success) {
+            counters.successes++;
+        }
+        counters.totalDurationMs += durationMs;
+    }
+
+    public static synchronized long getWakeups(String engine) {
+        return get(engine).wakeups;
+    }
+
+    public static synchronized long getChecks(String engine) {
+        return get(engine).checks;
+    }
+
+    /**
+     * Fraction of checks whose page could be fetched, or 1 if none ran
+     */
+    public static synchronized double getSuccessRate(String engine) {
+        Counters counters = get(engine);
+        return counters.checks == 0 ? 1 : (double) counters.successes / counters.checks;
+    }
+
+    public static synchronized long getAverageLatenessMs(String engine) {
+        Counters counters = get(engine);
+        return counters.latenessSamples == 0 ? 0 : counters.totalLatenessMs / counters.latenessSamples;
+    }
+
+    public static synchronized String getSummary(String engine) {
+        Counters counters = get(engine);
+        return String.format(Locale.US,
+                "%s: %d wakeups (avg %d ms late, max %d ms), %d checks, %.1f%% succeeded, avg check %d ms",
+                engine, counters.wakeups, getAverageLatenessMs(engine), counters.maxLatenessMs, counters.checks,
+                getSuccessRate(engine) * 100, counters.checks == 0 ? 0 : counters.totalDurationMs / counters.checks);
+    }
+
+    static synchronized void reset() {
+        engines.clear();
+    }
+
+    private static Counters get(String engine) {
+        Counters counters = engines.get(engine);
+        if (counters == null) {
+            counters = new Counters();
+            engines.put(engine, counters);
+        }
+        return counters;
+    }
+
+    private static class Counters {
+        long wakeups;
+        long latenessSamples;
+        long totalLatenessMs;
+        long maxLatenessMs;
+        long checks;
+        long successes;
+        long totalDurationMs;
+    }
+}
@@ -1,41 +1,141 @@
 package com.example.tixelcheck;
 
-import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
- * Adapter for displaying ticket history entries in a ListView
+ * Adapter for displaying ticket history entries in a RecyclerView.
+ *
+ * Entries are loaded a page at a time off the UI thread, and the next page is
+ * requested as the list is scrolled close to the end of the loaded ones, so
+ * opening a history never waits for the whole table.
  */
-public class HistoryAdapter extends ArrayAdapter<TicketHistoryEntry> {
-    private final Context context;
-    private final List<TicketHistoryEntry> entries;
-    
-    public HistoryAdapter(Context context, List<TicketHistoryEntry> entries) {
-        super(context, R.layout.item_history, entries);
-        this.context = context;
-        this.entries = entries;
-    }
-    
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-        if (convertView == null) {
-            convertView = LayoutInflater.from(context).inflate(R.layout.item_history, parent, false);
+public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
+    private static final String TAG = "HistoryAdapter";
+    static final int PAGE_SIZE = 50;
+    // The next page is requested once a row this close to the end is shown
+    private static final int PREFETCH_DISTANCE = 10;
+
+    private static final ExecutorService pageLoader = Executors.newSingleThreadExecutor();
+
+    /**
+     * Reads the entries following the given one, newest first
+     */
+    public interface PageSource {
+        /**
+         * @param after Last entry of the previous page, or null for the first page
+         */
+        List<TicketHistoryEntry> load(TicketHistoryEntry after, int limit);
+    }
+
+    private final int itemLayout;
+    private final PageSource source;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<TicketHistoryEntry> entries = new ArrayList<>();
+    private boolean loading;
+    private boolean exhausted;
+    private Runnable onEmpty;
+
+    /**
+     * @param itemLayout Row layout with text_time and text_message views
+     */
+    public HistoryAdapter(int itemLayout, PageSource source) {
+        this.itemLayout = itemLayout;
+        this.source = source;
+    }
+
+    /**
+     * Run on the UI thread if the first page turns out to be empty
+     */
+    public void setOnEmpty(Runnable onEmpty) {
+        this.onEmpty = onEmpty;
+    }
+
+    /**
+     * Requests the next page unless one is being loaded or all have been.
+     * Called on the UI thread.
+     */
+    public void loadMore() {
+        if (loading || exhausted) {
+            return;
+        }
+        loading = true;
+        TicketHistoryEntry after = entries.isEmpty() ? null : entries.get(entries.size() - 1);
+        pageLoader.execute(() -> {
+            List<TicketHistoryEntry> page;
+            try {
+                page = source.load(after, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error loading history page", e);
+                page = null;
+            }
+            List<TicketHistoryEntry> loaded = page;
+            mainHandler.post(() -> onPageLoaded(loaded));
+        });
+    }
+
+    private void onPageLoaded(List<TicketHistoryEntry> page) {
+        loading = false;
+        if (page == null) {
+            // Stop rather than retry a failing query on every scroll
+            exhausted = true;
+            page = Collections.emptyList();
+        } else {
+            exhausted = page.size() < PAGE_SIZE;
         }
-        
+        int start = entries.size();
+        entries.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+        if (entries.isEmpty() && onEmpty != null) {
+            onEmpty.run();
+        }
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(itemLayout, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         TicketHistoryEntry entry = entries.get(position);
-        
-        TextView timeText = convertView.findViewById(R.id.text_time);
-        TextView messageText = convertView.findViewById(R.id.text_message);
-        
-        timeText.setText(entry.getFormattedDateTime());
-        messageText.setText(entry.getMessage());
-        
-        return convertView;
-    }
-}
\ No newline at end of file
+        holder.timeText.setText(entry.getFormattedDateTime());
+        holder.messageText.setText(entry.getMessage());
+
+        if (position >= entries.size() - PREFETCH_DISTANCE) {
+            loadMore();
+        }
+    }
+
+    @Override
+    public int getItemCount() {
+        return entries.size();
+    }
+
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        final TextView timeText;
+        final TextView messageText;
+
+        ViewHolder(View view) {
+            super(view);
+            timeText = view.findViewById(R.id.text_time);
+            messageText = view.findViewById(R.id.text_message);
+        }
+    }
+}
@@ -6,11 +6,11 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.Window;
 import android.widget.Button;
-import android.widget.ListView;
 import android.widget.TextView;
 
-import java.util.ArrayList;
-import java.util.List;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 /**
  * Dialog for displaying ticket history for a URL
@@ -51,7 +51,7 @@ public class HistoryDialog {
         // Initialize UI elements
         TextView titleText = view.findViewById(R.id.text_dialog_title);
         TextView eventNameText = view.findViewById(R.id.text_event_name);
-        ListView historyList = view.findViewById(R.id.list_history);
+        RecyclerView historyList = view.findViewById(R.id.recycler_view_history);
         TextView emptyText = view.findViewById(R.id.text_empty_history);
         Button closeButton = view.findViewById(R.id.button_close);
         
@@ -70,35 +70,24 @@ public class HistoryDialog {
             }
         }
         
-        // Load history entries
-        List<TicketHistoryEntry> historyEntries;
+        // Load history entries a page at a time, from one query over all URLs or over this one
+        HistoryAdapter adapter;
         if (showAllUrls) {
-            // Get history for all URLs
-            historyEntries = new ArrayList<>();
-            List<MonitoredUrl> allUrls = urlDatabase.getAllUrls();
-            for (MonitoredUrl monitoredUrl : allUrls) {
-                historyEntries.addAll(urlDatabase.getTicketHistory(monitoredUrl.getId()));
-            }
-            
-            // Sort by timestamp (most recent first)
-            historyEntries.sort((entry1, entry2) -> 
-                    Long.compare(entry2.getTimestamp(), entry1.getTimestamp()));
+            adapter = new HistoryAdapter(R.layout.item_history, urlDatabase::getAllTicketHistoryPage);
         } else {
-            // Get history for specific URL
-            historyEntries = urlDatabase.getTicketHistory(url.getId());
+            long urlId = url.getId();
+            adapter = new HistoryAdapter(R.layout.item_history,
+                    (after, limit) -> urlDatabase.getTicketHistoryPage(urlId, after, limit));
         }
-        
-        if (historyEntries.isEmpty()) {
+        adapter.setOnEmpty(() -> {
             historyList.setVisibility(View.GONE);
             emptyText.setVisibility(View.VISIBLE);
-        } else {
-            historyList.setVisibility(View.VISIBLE);
-            emptyText.setVisibility(View.GONE);
-            
-            // Setup adapter
-            HistoryAdapter adapter = new HistoryAdapter(context, historyEntries);
-            historyList.setAdapter(adapter);
-        }
+        });
+        
+        historyList.setLayoutManager(new LinearLayoutManager(context));
+        historyList.addItemDecoration(new DividerItemDecoration(context, DividerItemDecoration.VERTICAL));
+        historyList.setAdapter(adapter);
+        adapter.loadMore();
         
         // Set up close button
         closeButton.setOnClickListener(v -> dialog.dismiss());
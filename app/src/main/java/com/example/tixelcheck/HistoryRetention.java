@@ -0,0 +1,99 @@
+package com.example.tixelcheck;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * Keeps ticket_history from growing without bound.
+ *
+ * A flaky network adds an error entry for every failed streak, so on its own
+ * the table grows by thousands of near-identical rows a week. A pass here rolls
+ * runs of identical errors up into one row with a count and first/last time,
+ * drops errors older than the retention period, caps the entries kept per URL
+ * and hands the freed pages back to the file system. Every step works through
+ * small batches, each its own short transaction, so a check waiting to write
+ * never waits for more than one batch.
+ */
+public class HistoryRetention {
+    private static final String TAG = "HistoryRetention";
+
+    static final long ERROR_RETENTION_MS = 14L * 24 * 60 * 60 * 1000;
+    static final int MAX_ENTRIES_PER_URL = 500;
+    // Rows read or deleted per transaction
+    static final int BATCH_SIZE = 200;
+    // Free pages handed back per incremental_vacuum call
+    static final int VACUUM_PAGES = 256;
+
+    private final UrlDatabase database;
+    private final long errorRetentionMs;
+    private final int maxEntriesPerUrl;
+    private final int batchSize;
+
+    public HistoryRetention(UrlDatabase database) {
+        this(database, ERROR_RETENTION_MS, MAX_ENTRIES_PER_URL, BATCH_SIZE);
+    }
+
+    HistoryRetention(UrlDatabase database, long errorRetentionMs, int maxEntriesPerUrl, int batchSize) {
+        this.database = database;
+        this.errorRetentionMs = errorRetentionMs;
+        this.maxEntriesPerUrl = maxEntriesPerUrl;
+        // A batch holds a run's first row and at least one more, or a roll-up would not advance
+        this.batchSize = Math.max(2, batchSize);
+    }
+
+    /**
+     * Rolls up, expires and caps the history of every URL
+     *
+     * @return Number of rows removed
+     */
+    public int run(long now) {
+        int removed = 0;
+        List<Long> urlIds = database.getHistoryUrlIds();
+        for (long urlId : urlIds) {
+            removed += rollUp(urlId);
+        }
+
+        long cutoff = now - errorRetentionMs;
+        int deleted;
+        do {
+            deleted = database.deleteErrorHistoryBefore(cutoff, batchSize);
+            removed += deleted;
+        } while (deleted == batchSize);
+
+        for (long urlId : urlIds) {
+            do {
+                deleted = database.trimHistory(urlId, maxEntriesPerUrl, batchSize);
+                removed += deleted;
+            } while (deleted == batchSize);
+        }
+        Log.d(TAG, "Removed " + removed + " history entries of " + urlIds.size() + " URLs");
+        return removed;
+    }
+
+    private int rollUp(long urlId) {
+        long before = database.countTicketHistory(urlId);
+        long next = 0;
+        do {
+            next = database.rollUpErrorHistory(urlId, next, batchSize);
+        } while (next >= 0);
+        return (int) (before - database.countTicketHistory(urlId));
+    }
+
+    /**
+     * Returns the pages freed by earlier passes to the file system. Databases
+     * created before incremental auto_vacuum get one full VACUUM first.
+     */
+    public void compact() {
+        if (database.enableIncrementalVacuum()) {
+            return;
+        }
+        long free = Long.MAX_VALUE;
+        long left;
+        // Stops once nothing is left, or if a call frees nothing
+        while ((left = database.incrementalVacuum(VACUUM_PAGES)) > 0 && left < free
+                && !Thread.currentThread().isInterrupted()) {
+            free = left;
+        }
+    }
+}
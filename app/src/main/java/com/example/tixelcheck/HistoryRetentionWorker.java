@@ -0,0 +1,57 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs HistoryRetention once a day while the device is idle
+ */
+public class HistoryRetentionWorker extends Worker {
+    private static final String TAG = "HistoryRetentionWorker";
+    static final String WORK_NAME = "history-retention";
+
+    public HistoryRetentionWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedules the daily pass, keeping the schedule if it already exists
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresDeviceIdle(true)
+                .setRequiresBatteryNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(HistoryRetentionWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniquePeriodicWork(WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        HistoryRetention retention = new HistoryRetention(UrlDatabase.getInstance(getApplicationContext()));
+        try {
+            retention.run(System.currentTimeMillis());
+            if (!isStopped()) {
+                retention.compact();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Error applying history retention", e);
+            return Result.retry();
+        }
+        return Result.success();
+    }
+}
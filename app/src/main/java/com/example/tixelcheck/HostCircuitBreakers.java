@@ -0,0 +1,98 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One CircuitBreaker per host, persisted in SharedPreferences so an open breaker
+ * stays open across process death instead of every new process rediscovering
+ * the outage with a full round of timeouts.
+ */
+public class HostCircuitBreakers {
+    private static final String TAG = "HostCircuitBreakers";
+    private static final String PREFS_NAME = "circuit_breakers";
+
+    private static HostCircuitBreakers instance;
+
+    private final SharedPreferences prefs;
+    private final Map<String, CircuitBreaker> breakers = new HashMap<>();
+
+    public static synchronized HostCircuitBreakers getInstance(Context context) {
+        if (instance == null) {
+            instance = new HostCircuitBreakers(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private HostCircuitBreakers(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Throws if requests to the host must fail fast, otherwise lets the request through
+     *
+     * @throws CircuitOpenException If the breaker is open or a probe is already in flight
+     */
+    public void checkAllowed(String host) throws CircuitOpenException {
+        CircuitBreaker breaker = get(host);
+        long now = System.currentTimeMillis();
+        CircuitBreaker.State before = breaker.getState();
+        if (!breaker.allowRequest(now)) {
+            throw new CircuitOpenException(host, breaker.getRetryDelay(now));
+        }
+        if (before == CircuitBreaker.State.OPEN) {
+            Log.d(TAG, "Sending probe request to " + host);
+            save(host, breaker);
+        }
+    }
+
+    public void recordSuccess(String host) {
+        CircuitBreaker breaker = get(host);
+        CircuitBreaker.State before = breaker.getState();
+        if (breaker.onSuccess()) {
+            save(host, breaker);
+            if (before != CircuitBreaker.State.CLOSED) {
+                Log.d(TAG, "Circuit closed for " + host);
+            }
+        }
+    }
+
+    public void recordFailure(String host) {
+        CircuitBreaker breaker = get(host);
+        CircuitBreaker.State before = breaker.getState();
+        if (breaker.onFailure(System.currentTimeMillis())) {
+            save(host, breaker);
+            if (before != CircuitBreaker.State.OPEN && breaker.getState() == CircuitBreaker.State.OPEN) {
+                Log.w(TAG, "Circuit opened for " + host);
+            }
+        }
+    }
+
+    /**
+     * Records a request that neither reached the host nor failed because of it
+     */
+    public void recordAbandoned(String host) {
+        get(host).onAbandoned();
+    }
+
+    public CircuitBreaker.State getState(String host) {
+        return get(host).getState();
+    }
+
+    private synchronized CircuitBreaker get(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            breaker = CircuitBreaker.deserialize(prefs.getString(host, null));
+            breakers.put(host, breaker);
+        }
+        return breaker;
+    }
+
+    private void save(String host, CircuitBreaker breaker) {
+        prefs.edit().putString(host, breaker.serialize()).apply();
+    }
+}
@@ -0,0 +1,327 @@
+package com.example.tixelcheck;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Interceptor that keeps each host within a concurrency limit and a request rate.
+ *
+ * Every request first takes one of a fixed number of in-flight slots for its host,
+ * then a token from the host's token bucket. The slot is held until the response
+ * body is closed. A 429 or 503 response with a Retry-After header holds back every
+ * request to that host until the server says it may try again. Time spent waiting
+ * is recorded per host so the limits can be tuned.
+ */
+public class HostLimiter implements Interceptor {
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_UNAVAILABLE = 503;
+
+    // Servers asking for longer pauses than this are treated as asking for this long
+    private static final long MAX_RETRY_AFTER_MS = 10 * 60 * 1000;
+
+    private final int maxInFlight;
+    private final double permitsPerSecond;
+    private final int burst;
+    private final long maxQueueWaitMs;
+    private final Map<String, HostState> hosts = new HashMap<>();
+
+    /**
+     * @param maxInFlight Maximum concurrent requests per host
+     * @param permitsPerSecond Sustained request rate per host
+     * @param burst Requests allowed back to back before the rate applies
+     * @param maxQueueWaitMs Longest a request may wait before it fails instead
+     */
+    public HostLimiter(int maxInFlight, double permitsPerSecond, int burst, long maxQueueWaitMs) {
+        this.maxInFlight = maxInFlight;
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.maxQueueWaitMs = maxQueueWaitMs;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        String host = chain.request().url().host();
+        HostState state = getState(host);
+
+        long queuedAt = System.currentTimeMillis();
+        try {
+            if (!state.inFlight.tryAcquire(maxQueueWaitMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a request slot for " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a request slot for " + host);
+        }
+
+        Permit permit = new Permit(state);
+        try {
+            long waited = System.currentTimeMillis() - queuedAt;
+            long delay = state.reserve(System.currentTimeMillis(), maxQueueWaitMs - waited);
+            if (delay < 0) {
+                throw new IOException("Rate limit for " + host + " would delay request by more than "
+                        + maxQueueWaitMs + " ms");
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+            state.recordQueueDelay(System.currentTimeMillis() - queuedAt);
+
+            Response response = chain.proceed(chain.request());
+            if (response.code() == HTTP_TOO_MANY_REQUESTS || response.code() == HTTP_UNAVAILABLE) {
+                long retryAfter = parseRetryAfter(response.header("Retry-After"), System.currentTimeMillis());
+                if (retryAfter > 0) {
+                    state.blockFor(retryAfter);
+                }
+                state.recordThrottled();
+            }
+
+            ResponseBody body = response.body();
+            if (body == null) {
+                permit.release();
+                return response;
+            }
+            return response.newBuilder().body(new PermitReleasingBody(body, permit)).build();
+        } catch (InterruptedException e) {
+            permit.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for rate limit for " + host);
+        } catch (IOException | RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Queueing and throttling statistics for a host, or null if it was never requested
+     */
+    public Stats getStats(String host) {
+        HostState state;
+        synchronized (hosts) {
+            state = hosts.get(host);
+        }
+        return state != null ? state.snapshot() : null;
+    }
+
+    private HostState getState(String host) {
+        synchronized (hosts) {
+            HostState state = hosts.get(host);
+            if (state == null) {
+                state = new HostState(maxInFlight, permitsPerSecond, burst);
+                hosts.put(host, state);
+            }
+            return state;
+        }
+    }
+
+    /**
+     * Milliseconds to wait according to a Retry-After header, which holds either
+     * a number of seconds or an HTTP date. Returns 0 if the header is missing or invalid.
+     */
+    static long parseRetryAfter(String value, long now) {
+        if (value == null || value.trim().isEmpty()) {
+            return 0;
+        }
+        value = value.trim();
+        long delay;
+        try {
+            delay = Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                Date date = format.parse(value);
+                delay = date.getTime() - now;
+            } catch (ParseException ignored) {
+                return 0;
+            }
+        }
+        return Math.max(0, Math.min(delay, MAX_RETRY_AFTER_MS));
+    }
+
+    /**
+     * Limiter state for one host
+     */
+    private static class HostState {
+        final Semaphore inFlight;
+        private final double permitsPerSecond;
+        private final int burst;
+
+        // Tokens go negative while requests are waiting on the bucket
+        private double tokens;
+        private long lastRefill;
+        private long blockedUntil;
+
+        private long requests;
+        private long queuedRequests;
+        private long totalQueueDelayMs;
+        private long maxQueueDelayMs;
+        private long throttledResponses;
+
+        HostState(int maxInFlight, double permitsPerSecond, int burst) {
+            this.inFlight = new Semaphore(maxInFlight, true);
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.tokens = burst;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        /**
+         * Takes a token and returns how long the caller must wait before using it.
+         * If that wait would be longer than maxDelayMs no token is taken and -1 is
+         * returned, so rejected requests do not push back the ones after them.
+         */
+        synchronized long reserve(long now, long maxDelayMs) {
+            tokens = Math.min(burst, tokens + (now - lastRefill) * permitsPerSecond / 1000);
+            lastRefill = now;
+            double remaining = tokens - 1;
+            long delay = remaining >= 0 ? 0 : (long) Math.ceil(-remaining * 1000 / permitsPerSecond);
+            delay = Math.max(delay, blockedUntil - now);
+            if (delay > maxDelayMs) {
+                return -1;
+            }
+            tokens = remaining;
+            return delay;
+        }
+
+        synchronized void blockFor(long delayMs) {
+            blockedUntil = Math.max(blockedUntil, System.currentTimeMillis() + delayMs);
+        }
+
+        synchronized void recordQueueDelay(long delayMs) {
+            requests++;
+            if (delayMs > 0) {
+                queuedRequests++;
+                totalQueueDelayMs += delayMs;
+                maxQueueDelayMs = Math.max(maxQueueDelayMs, delayMs);
+            }
+        }
+
+        synchronized void recordThrottled() {
+            throttledResponses++;
+        }
+
+        synchronized Stats snapshot() {
+            return new Stats(requests, queuedRequests, totalQueueDelayMs, maxQueueDelayMs, throttledResponses);
+        }
+    }
+
+    /**
+     * Point-in-time statistics for one host
+     */
+    public static class Stats {
+        private final long requests;
+        private final long queuedRequests;
+        private final long totalQueueDelayMs;
+        private final long maxQueueDelayMs;
+        private final long throttledResponses;
+
+        Stats(long requests, long queuedRequests, long totalQueueDelayMs, long maxQueueDelayMs,
+              long throttledResponses) {
+            this.requests = requests;
+            this.queuedRequests = queuedRequests;
+            this.totalQueueDelayMs = totalQueueDelayMs;
+            this.maxQueueDelayMs = maxQueueDelayMs;
+            this.throttledResponses = throttledResponses;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getQueuedRequests() {
+            return queuedRequests;
+        }
+
+        public long getMaxQueueDelayMs() {
+            return maxQueueDelayMs;
+        }
+
+        public long getAverageQueueDelayMs() {
+            return requests == 0 ? 0 : totalQueueDelayMs / requests;
+        }
+
+        public long getThrottledResponses() {
+            return throttledResponses;
+        }
+
+        @Override
+        public String toString() {
+            return requests + " requests, " + queuedRequests + " queued, avg delay "
+                    + getAverageQueueDelayMs() + " ms, max delay " + maxQueueDelayMs + " ms, "
+                    + throttledResponses + " throttled";
+        }
+    }
+
+    /**
+     * An in-flight slot that is given back exactly once
+     */
+    private static class Permit {
+        private final HostState state;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(HostState state) {
+            this.state = state;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                state.inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Response body that frees its request slot when closed
+     */
+    private static class PermitReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        PermitReleasingBody(ResponseBody delegate, Permit permit) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        permit.release();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.example.tixelcheck;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The listings of one event at one check: listing IDs sorted ascending with
+ * the price of each listing in a parallel array.
+ *
+ * Everything is kept in primitive arrays, so popular events with hundreds of
+ * listings cost two arrays rather than hundreds of objects, and two snapshots
+ * are compared with a single merge pass over both ID arrays.
+ */
+public final class ListingSnapshot {
+    public static final long UNKNOWN_PRICE = -1;
+
+    private static final int BYTES_PER_LISTING = 16;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final long[] ids;
+    private final long[] prices;
+
+    private ListingSnapshot(long[] ids, long[] prices) {
+        this.ids = ids;
+        this.prices = prices;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * Price of a listing in cents, or UNKNOWN_PRICE
+     */
+    public long getPrice(int index) {
+        return prices[index];
+    }
+
+    /**
+     * Finds the listings of this snapshot that are not in an earlier one, in O(n + m)
+     *
+     * @param previous The earlier snapshot
+     * @param newIndices Receives the index of each new listing in this snapshot;
+     *                   must hold size() entries, or be null to only count them
+     * @return Number of new listings
+     */
+    public int diff(ListingSnapshot previous, int[] newIndices) {
+        long[] old = previous.ids;
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < ids.length; i++) {
+            long id = ids[i];
+            while (j < old.length && old[j] < id) {
+                j++;
+            }
+            if (j < old.length && old[j] == id) {
+                j++;
+            } else {
+                if (newIndices != null) {
+                    newIndices[count] = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Lowest known price of all listings, or UNKNOWN_PRICE
+     */
+    public long lowestPrice() {
+        long lowest = UNKNOWN_PRICE;
+        for (long price : prices) {
+            if (price != UNKNOWN_PRICE && (lowest == UNKNOWN_PRICE || price < lowest)) {
+                lowest = price;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Lowest known price among the given listings, or UNKNOWN_PRICE
+     */
+    public long lowestPrice(int[] indices, int count) {
+        long lowest = UNKNOWN_PRICE;
+        for (int i = 0; i < count; i++) {
+            long price = prices[indices[i]];
+            if (price != UNKNOWN_PRICE && (lowest == UNKNOWN_PRICE || price < lowest)) {
+                lowest = price;
+            }
+        }
+        return lowest;
+    }
+
+    /**
+     * Adds the snapshot to a running hash, so a change of any listing or price
+     * changes the page fingerprint
+     */
+    public void hashInto(XxHash64 hash) {
+        for (int i = 0; i < ids.length; i++) {
+            update(hash, ids[i]);
+            update(hash, prices[i]);
+        }
+    }
+
+    private static void update(XxHash64 hash, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            hash.update((byte) (value >>> shift));
+        }
+    }
+
+    /**
+     * Serialises the snapshot as 16 bytes per listing, for the database
+     */
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(ids.length * BYTES_PER_LISTING);
+        for (int i = 0; i < ids.length; i++) {
+            buffer.putLong(ids[i]);
+            buffer.putLong(prices[i]);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Restores a snapshot written by toBytes(), or returns null for missing or corrupt data
+     */
+    public static ListingSnapshot fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length % BYTES_PER_LISTING != 0) {
+            return null;
+        }
+        int size = bytes.length / BYTES_PER_LISTING;
+        long[] ids = new long[size];
+        long[] prices = new long[size];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < size; i++) {
+            ids[i] = buffer.getLong();
+            prices[i] = buffer.getLong();
+            if (i > 0 && ids[i] <= ids[i - 1]) {
+                return null;
+            }
+        }
+        return new ListingSnapshot(ids, prices);
+    }
+
+    /**
+     * Reads one listing object from page state or an API response
+     *
+     * @return False if the listing has no ID, so no complete snapshot can be built
+     */
+    static boolean readListing(JsonReader json, Builder builder) throws IOException {
+        long id = 0;
+        boolean hasId = false;
+        long price = UNKNOWN_PRICE;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            JsonToken token = json.peek();
+            if ((name.equals("id") || name.equals("listing_id") || name.equals("listingId"))
+                    && (token == JsonToken.NUMBER || token == JsonToken.STRING)) {
+                id = parseId(json.nextString());
+                hasId = true;
+            } else if ((name.equals("price_cents") || name.equals("priceCents")) && token == JsonToken.NUMBER) {
+                price = Math.round(Double.parseDouble(json.nextString()));
+            } else if (name.equals("price") && token == JsonToken.NUMBER) {
+                price = Math.round(Double.parseDouble(json.nextString()) * 100);
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+
+        if (hasId) {
+            builder.add(id, price);
+        }
+        return hasId;
+    }
+
+    /**
+     * Numeric IDs are used as they are; any other ID is hashed
+     */
+    private static long parseId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            XxHash64 hash = new XxHash64();
+            for (int i = 0; i < value.length(); i++) {
+                hash.update(value.charAt(i));
+            }
+            return hash.digest();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ListingSnapshot)) {
+            return false;
+        }
+        ListingSnapshot other = (ListingSnapshot) o;
+        return Arrays.equals(ids, other.ids) && Arrays.equals(prices, other.prices);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(ids) + Arrays.hashCode(prices);
+    }
+
+    @Override
+    public String toString() {
+        return "ListingSnapshot{" + ids.length + " listings}";
+    }
+
+    /**
+     * Collects listings in any order; build() sorts them by ID and drops duplicates
+     */
+    public static final class Builder {
+        private long[] ids = new long[16];
+        private long[] prices = new long[16];
+        private int size;
+
+        public Builder add(long id, long price) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            ids[size] = id;
+            prices[size] = price;
+            size++;
+            return this;
+        }
+
+        /**
+         * Adds every listing collected by another builder
+         */
+        public Builder addAll(Builder other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.ids[i], other.prices[i]);
+            }
+            return this;
+        }
+
+        public ListingSnapshot build() {
+            long[] sortedIds = Arrays.copyOf(ids, size);
+            long[] sortedPrices = Arrays.copyOf(prices, size);
+            if (!isSorted(sortedIds)) {
+                sort(sortedIds, sortedPrices, 0, size - 1);
+            }
+
+            // A listing shown twice keeps its lowest price
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique > 0 && sortedIds[unique - 1] == sortedIds[i]) {
+                    long price = sortedPrices[i];
+                    long kept = sortedPrices[unique - 1];
+                    if (price != UNKNOWN_PRICE && (kept == UNKNOWN_PRICE || price < kept)) {
+                        sortedPrices[unique - 1] = price;
+                    }
+                } else {
+                    sortedIds[unique] = sortedIds[i];
+                    sortedPrices[unique] = sortedPrices[i];
+                    unique++;
+                }
+            }
+            if (unique < size) {
+                sortedIds = Arrays.copyOf(sortedIds, unique);
+                sortedPrices = Arrays.copyOf(sortedPrices, unique);
+            }
+            return new ListingSnapshot(sortedIds, sortedPrices);
+        }
+
+        private static boolean isSorted(long[] values) {
+            for (int i = 1; i < values.length; i++) {
+                if (values[i] < values[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Quicksort of the IDs that moves each price along with its ID
+         */
+        private static void sort(long[] keys, long[] values, int low, int high) {
+            while (high - low >= INSERTION_SORT_THRESHOLD) {
+                long pivot = keys[(low + high) >>> 1];
+                int i = low;
+                int j = high;
+                while (i <= j) {
+                    while (keys[i] < pivot) {
+                        i++;
+                    }
+                    while (keys[j] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        swap(keys, values, i++, j--);
+                    }
+                }
+                // Recurse into the smaller half to bound the stack depth
+                if (j - low < high - i) {
+                    sort(keys, values, low, j);
+                    low = i;
+                } else {
+                    sort(keys, values, i, high);
+                    high = j;
+                }
+            }
+            for (int i = low + 1; i <= high; i++) {
+                for (int j = i; j > low && keys[j] < keys[j - 1]; j--) {
+                    swap(keys, values, j, j - 1);
+                }
+            }
+        }
+
+        private static void swap(long[] keys, long[] values, int a, int b) {
+            long key = keys[a];
+            keys[a] = keys[b];
+            keys[b] = key;
+            long value = values[a];
+            values[a] = values[b];
+            values[b] = value;
+        }
+    }
+}
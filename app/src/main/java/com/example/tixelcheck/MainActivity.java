@@ -1,9 +1,6 @@
 package com.example.tixelcheck;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -12,7 +9,6 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -27,18 +23,13 @@ public class MainActivity extends AppCompatActivity implements AddUrlDialog.UrlD
     private UrlDatabase urlDatabase;
     private TextView emptyStateTextView;
     private FloatingActionButton fabAddUrl;
-    
-    // Action for database updates - matching the string used in UrlAdapter
-    public static final String ACTION_DATABASE_UPDATED = "com.example.tixelcheck.URL_UPDATED";
-    public static final String ACTION_EVENT_DETAILS_UPDATED = "com.example.tixelcheck.EVENT_DETAILS_UPDATED";
-
-    // BroadcastReceiver to handle database updates
-    private BroadcastReceiver urlUpdateReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            refreshUrlList();
-        }
-    };
+
+    // Rows change one at a time, from checks as well as from this screen. Posted so
+    // that changes made by the adapter itself have been applied to its list first.
+    private final UrlRegistry.Listener urlListener = (urlId, url) -> rvUrlList.post(() -> {
+        urlAdapter.onUrlChanged(urlId, url);
+        updateEmptyState();
+    });
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -57,17 +48,8 @@ public class MainActivity extends AppCompatActivity implements AddUrlDialog.UrlD
         // Initial refresh
         refreshUrlList();
         
-        // Register for database updates
-        LocalBroadcastManager.getInstance(this).registerReceiver(
-                urlUpdateReceiver,
-                new IntentFilter(ACTION_DATABASE_UPDATED)
-        );
-        
-        // Also register for event details updates
-        LocalBroadcastManager.getInstance(this).registerReceiver(
-                urlUpdateReceiver,
-                new IntentFilter(ACTION_EVENT_DETAILS_UPDATED)
-        );
+        // Follow changes of single URLs from here on
+        urlDatabase.getRegistry().addListener(urlListener);
     }
 
     private void initializeUI() {
@@ -87,9 +69,11 @@ public class MainActivity extends AppCompatActivity implements AddUrlDialog.UrlD
     private void refreshUrlList() {
         ArrayList<MonitoredUrl> urls = (ArrayList<MonitoredUrl>) urlDatabase.getAllUrls();
         urlAdapter.updateUrls(urls);
-        
-        // Show/hide empty state
-        if (urls.isEmpty()) {
+        updateEmptyState();
+    }
+
+    private void updateEmptyState() {
+        if (urlAdapter.getItemCount() == 0) {
             emptyStateTextView.setVisibility(View.VISIBLE);
             rvUrlList.setVisibility(View.GONE);
         } else {
@@ -105,22 +89,16 @@ public class MainActivity extends AppCompatActivity implements AddUrlDialog.UrlD
     
     @Override
     public void onUrlAdded(MonitoredUrl url) {
-        // Add to database
+        // Add to database; the registry listener adds its row
         urlDatabase.addUrl(url);
         
-        // Refresh the list
-        refreshUrlList();
-        
         Toast.makeText(this, "URL added successfully", Toast.LENGTH_SHORT).show();
-        
-        // Broadcast URL update
-        Intent updateIntent = new Intent(ACTION_DATABASE_UPDATED);
-        LocalBroadcastManager.getInstance(this).sendBroadcast(updateIntent);
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.main_menu, menu);
+        menu.findItem(R.id.menu_use_work_manager).setChecked(CheckEngine.usesWorkManager(this));
         return true;
     }
 
@@ -133,15 +111,27 @@ public class MainActivity extends AppCompatActivity implements AddUrlDialog.UrlD
             if (activeUrls.isEmpty()) {
                 Toast.makeText(this, "No active URLs to check", Toast.LENGTH_SHORT).show();
             } else {
-                for (MonitoredUrl url : activeUrls) {
-                    // Start manual check for each URL
+                if (CheckEngine.usesWorkManager(this)) {
+                    // Expedited work per URL; duplicates share one request
+                    for (MonitoredUrl url : activeUrls) {
+                        WorkCheckScheduler.checkNow(this, url);
+                    }
+                } else {
+                    // One sweep checks every active URL
                     Intent checkIntent = new Intent(this, TicketMonitorService.class);
-                    checkIntent.putExtra("url_id", url.getId());
+                    checkIntent.setAction(TicketMonitorService.ACTION_CHECK_ALL);
                     startService(checkIntent);
                 }
                 Toast.makeText(this, "Checking all active URLs...", Toast.LENGTH_SHORT).show();
             }
             return true;
+        } else if (id == R.id.menu_use_work_manager) {
+            boolean useWorkManager = !item.isChecked();
+            CheckEngine.select(this, useWorkManager ? CheckEngine.WORK_MANAGER : CheckEngine.ALARM);
+            item.setChecked(useWorkManager);
+            Toast.makeText(this, useWorkManager ? "Checking with WorkManager" : "Checking with alarms",
+                    Toast.LENGTH_SHORT).show();
+            return true;
         } else if (id == R.id.menu_history) {
             HistoryDialog dialog = new HistoryDialog(this, urlDatabase);
             dialog.show();
@@ -153,8 +143,7 @@ public class MainActivity extends AppCompatActivity implements AddUrlDialog.UrlD
 
     @Override
     protected void onDestroy() {
-        // Unregister broadcast receiver
-        LocalBroadcastManager.getInstance(this).unregisterReceiver(urlUpdateReceiver);
+        urlDatabase.getRegistry().removeListener(urlListener);
         super.onDestroy();
     }
 }
\ No newline at end of file
@@ -20,6 +20,14 @@ public class MonitoredUrl {
     private String eventType; // concert, sports, theater, other
     private long lastCheckedTimestamp; // Unix timestamp of last check
     private boolean hasTicketsFound; // Whether tickets were found on last check
+    private String etag; // ETag validator from the last full response
+    private String lastModified; // Last-Modified validator from the last full response
+    private String positivePhrases; // Newline-separated phrases meaning tickets are listed, null for defaults
+    private String negativePhrases; // Newline-separated phrases meaning they are not, null for defaults
+    private long contentFingerprint; // xxHash64 of the page text last evaluated, 0 if none
+    private long targetPrice; // Alert when the cheapest listing drops to this many cents, 0 if none
+    private long alertedTargetPrice; // Target the price is known to be at or below since an alert, 0 if none
+    private UrlStats stats = UrlStats.EMPTY; // Running check statistics from url_stats
 
     public MonitoredUrl(long id, String url, int frequency, boolean isActive) {
         this.id = id;
@@ -58,6 +66,22 @@ public class MonitoredUrl {
         this.lastCheckedTimestamp = lastCheckedTimestamp;
         this.hasTicketsFound = hasTicketsFound;
     }
+    
+    /**
+     * Copy of another URL, so shared instances are never changed by their readers
+     */
+    public MonitoredUrl(MonitoredUrl other) {
+        this(other.id, other.url, other.frequency, other.isActive, other.eventName, other.eventDate,
+                other.eventType, other.lastCheckedTimestamp, other.hasTicketsFound);
+        this.etag = other.etag;
+        this.lastModified = other.lastModified;
+        this.positivePhrases = other.positivePhrases;
+        this.negativePhrases = other.negativePhrases;
+        this.contentFingerprint = other.contentFingerprint;
+        this.targetPrice = other.targetPrice;
+        this.alertedTargetPrice = other.alertedTargetPrice;
+        this.stats = other.stats;
+    }
 
     public long getId() {
         return id;
@@ -123,6 +147,77 @@ public class MonitoredUrl {
         this.hasTicketsFound = hasTicketsFound;
     }
     
+    public String getEtag() {
+        return etag;
+    }
+    
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+    
+    public String getLastModified() {
+        return lastModified;
+    }
+    
+    public void setLastModified(String lastModified) {
+        this.lastModified = lastModified;
+    }
+    
+    /**
+     * Whether a conditional request can be made for this URL
+     */
+    public boolean hasValidators() {
+        return (etag != null && !etag.isEmpty()) || (lastModified != null && !lastModified.isEmpty());
+    }
+    
+    public String getPositivePhrases() {
+        return positivePhrases;
+    }
+    
+    public void setPositivePhrases(String positivePhrases) {
+        this.positivePhrases = positivePhrases;
+    }
+    
+    public String getNegativePhrases() {
+        return negativePhrases;
+    }
+    
+    public void setNegativePhrases(String negativePhrases) {
+        this.negativePhrases = negativePhrases;
+    }
+    
+    public long getContentFingerprint() {
+        return contentFingerprint;
+    }
+    
+    public void setContentFingerprint(long contentFingerprint) {
+        this.contentFingerprint = contentFingerprint;
+    }
+    
+    public long getTargetPrice() {
+        return targetPrice;
+    }
+    
+    public void setTargetPrice(long targetPrice) {
+        this.targetPrice = targetPrice;
+    }
+
+    public long getAlertedTargetPrice() {
+        return alertedTargetPrice;
+    }
+
+    public void setAlertedTargetPrice(long alertedTargetPrice) {
+        this.alertedTargetPrice = alertedTargetPrice;
+    }
+    
+    public UrlStats getStats() {
+        return stats;
+    }
+    
+    public void setStats(UrlStats stats) {
+        this.stats = stats;
+    }
+    
     public void updateLastChecked() {
         this.lastCheckedTimestamp = System.currentTimeMillis();
     }
@@ -0,0 +1,231 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Size-bounded LRU disk cache holding the last fetched body of each monitored URL.
+ *
+ * Validators (ETag/Last-Modified) are only sent for URLs that still have a cached
+ * body, so a 304 response always has a page behind it. Entries are keyed by URL ID
+ * and evicted least-recently-used first once the cache grows past its size limit.
+ */
+public class PageCache {
+    private static final String CACHE_DIR = "pages";
+    private static final long MAX_CACHE_BYTES = 8 * 1024 * 1024; // 8 MB
+    private static final int BUFFER_SIZE = 8192;
+
+    private static PageCache instance;
+
+    private final File directory;
+    private final long maxBytes;
+
+    public static synchronized PageCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new PageCache(new File(context.getCacheDir(), CACHE_DIR), MAX_CACHE_BYTES);
+        }
+        return instance;
+    }
+
+    PageCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Whether a body is cached for the given URL
+     */
+    public synchronized boolean contains(long urlId) {
+        return entryFile(urlId).isFile();
+    }
+
+    /**
+     * Marks a cached body as recently used without reading it
+     */
+    public synchronized void touch(long urlId) {
+        File file = entryFile(urlId);
+        if (file.isFile()) {
+            file.setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Wraps a response body so everything read through it is also written to the
+     * cache. The new entry replaces the old one when the stream is closed, but only
+     * if the body was read to the end, so an abandoned or failed download never
+     * leaves a truncated entry behind.
+     *
+     * @param urlId ID of the monitored URL
+     * @param body The response body; it is closed along with the returned stream
+     * @return Stream to read the body through
+     * @throws IOException If the cache entry could not be created
+     */
+    public CachingInputStream storing(long urlId, InputStream body) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create page cache directory " + directory);
+        }
+        // Temp file prefixes need three characters, which a single-digit ID lacks
+        File temp = File.createTempFile("url" + urlId + "-", ".tmp", directory);
+        return new CachingInputStream(urlId, body, temp);
+    }
+
+    /**
+     * Drops the cached body for a URL, e.g. when it is deleted or its address changes
+     */
+    public synchronized void remove(long urlId) {
+        entryFile(urlId).delete();
+    }
+
+    private synchronized void commit(long urlId, File temp) {
+        File file = entryFile(urlId);
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                // Losing the entry only means the next check is a full GET
+                temp.delete();
+                return;
+            }
+        }
+        trimToSize();
+    }
+
+    private File entryFile(long urlId) {
+        return new File(directory, urlId + ".html");
+    }
+
+    /**
+     * Evicts least-recently-used entries until the cache fits in its size limit
+     */
+    private void trimToSize() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".html"));
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+        if (size <= maxBytes) {
+            return;
+        }
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (size <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+    }
+
+    /**
+     * Body stream that tees everything it reads into a pending cache entry
+     */
+    public class CachingInputStream extends FilterInputStream {
+        private final long urlId;
+        private final File temp;
+        private final OutputStream out;
+        private boolean complete;
+        private boolean failed;
+
+        CachingInputStream(long urlId, InputStream body, File temp) throws IOException {
+            super(body);
+            this.urlId = urlId;
+            this.temp = temp;
+            this.out = new FileOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                complete = true;
+            } else {
+                write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read == -1) {
+                complete = true;
+            } else {
+                write(buffer, offset, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must still reach the cache
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Reads and caches the remainder of the body
+         */
+        public void readToEnd() throws IOException {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // Keep reading
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                out.close();
+                if (complete && !failed) {
+                    commit(urlId, temp);
+                } else {
+                    temp.delete();
+                }
+            }
+        }
+
+        private void write(int b) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                // A full disk only costs us the cache entry, not the check
+                failed = true;
+            }
+        }
+
+        private void write(byte[] buffer, int offset, int length) {
+            if (failed) {
+                return;
+            }
+            try {
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                failed = true;
+            }
+        }
+    }
+}
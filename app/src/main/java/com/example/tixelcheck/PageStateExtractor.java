@@ -0,0 +1,552 @@
+package com.example.tixelcheck;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads the listing state a Tixel event page embeds for client-side hydration.
+ *
+ * The HTML is streamed once: outside of scripts it is only searched for the
+ * opening tag of the state script, whose body is then handed to a streaming
+ * JSON reader as a Reader that ends at the closing tag. Only listing counts are
+ * kept from the blob and reading stops as soon as its JSON value is complete,
+ * so neither a DOM nor the rest of the page is ever built or read.
+ *
+ * Hydration state often carries other events as well, such as related events
+ * or cached queries. Given the page's event key, only the object whose slug or
+ * id matches it is counted. Without a match, objects that name a different
+ * slug are left out, and if there were any the state is not used at all,
+ * since it cannot be told which counts belong to the page.
+ *
+ * Everything read is also fed to an optional AvailabilityScanner, so a page
+ * without usable state still gets a phrase-based result from the same pass.
+ * Unlike a plain scan, a positive phrase does not end the read while the state
+ * may still be ahead: the phrase could belong to another event on the page,
+ * and the state of the page's own event overrides it. Once a state script has
+ * been read without a usable result and a phrase has decided, reading stops.
+ */
+public class PageStateExtractor {
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_TAG_LENGTH = 512;
+
+    // Script ids under which pages embed their state
+    private static final Set<String> STATE_SCRIPT_IDS = new HashSet<>(Arrays.asList(
+            "__next_data__", "__nuxt_data__", "__initial_state__"));
+
+    // Number fields holding how many listings an event (or ticket type) has
+    private static final Set<String> COUNT_KEYS = new HashSet<>(Arrays.asList(
+            "listingCount", "listing_count", "listingsCount", "listings_count",
+            "availableListings", "available_listings"));
+
+    // Arrays of individual listings, counted when no count field is present
+    // and collected into a ListingSnapshot
+    private static final Set<String> LISTING_ARRAY_KEYS = new HashSet<>(Arrays.asList(
+            "listings", "availableListings", "available_listings"));
+
+    // Fields naming the event an object describes
+    private static final String SLUG_KEY = "slug";
+    private static final String ID_KEY = "id";
+
+    private static final char[] SCRIPT = "script".toCharArray();
+    private static final char[] SCRIPT_END = "/script".toCharArray();
+
+    /**
+     * Listing counts read from a page's embedded state
+     */
+    public static class State {
+        private final long listingCount;
+        private final boolean counted;
+        private final ListingSnapshot listings;
+
+        State(long listingCount, boolean counted, ListingSnapshot listings) {
+            this.listingCount = listingCount;
+            this.counted = counted;
+            this.listings = listings;
+        }
+
+        public boolean isAvailable() {
+            return listingCount > 0;
+        }
+
+        public long getListingCount() {
+            return listingCount;
+        }
+
+        /**
+         * Whether the count came from explicit count fields rather than listing arrays
+         */
+        public boolean isCounted() {
+            return counted;
+        }
+
+        /**
+         * The individual listings, or null if the state does not list them with IDs
+         */
+        public ListingSnapshot getListings() {
+            return listings;
+        }
+
+        /**
+         * Fingerprint of the evaluated state, so an unchanged page is recognised
+         * the same way as with text scanning
+         */
+        public long getFingerprint() {
+            XxHash64 hash = new XxHash64(1);
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash.update((byte) (listingCount >>> shift));
+            }
+            if (listings != null) {
+                listings.hashInto(hash);
+            }
+            long fingerprint = hash.digest();
+            // 0 means "no fingerprint" in the database
+            return fingerprint != 0 ? fingerprint : 1;
+        }
+
+        @Override
+        public String toString() {
+            return "State{listings=" + listingCount + (counted ? "" : " (from arrays)") + "}";
+        }
+    }
+
+    private final AvailabilityScanner textScanner;
+
+    // Input buffer shared by the HTML scan and the script body reader
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private Reader in;
+
+    // Characters read ahead while matching a closing tag
+    private final char[] pushback = new char[SCRIPT_END.length + 1];
+    private int pushbackLength;
+
+    private AvailabilityScanner.Result textResult;
+    // Whether a positive phrase has decided the text result
+    private boolean textDecided;
+
+    // State of the blob being read
+    private String eventKey;
+    private Totals matched;
+    private boolean foundOtherEvents;
+
+    /**
+     * @param textScanner Scanner fed with everything read, or null for state only
+     */
+    public PageStateExtractor(AvailabilityScanner textScanner) {
+        this.textScanner = textScanner;
+    }
+
+    /**
+     * Streams a page until its embedded state has been read or the page ends,
+     * counting every listing in the state
+     *
+     * @param reader The decoded page; it is not closed
+     * @return Listing state, or null if the page has no state with listing information
+     * @throws IOException If the page could not be read
+     */
+    public State extract(Reader reader) throws IOException {
+        return extract(reader, null);
+    }
+
+    /**
+     * Streams a page until its embedded state has been read or the page ends,
+     * counting only the listings of the given event
+     *
+     * @param reader The decoded page; it is not closed
+     * @param eventKey Slug or id of the page's event, e.g. the last segment of its URL,
+     *                 or null to count every listing in the state
+     * @return Listing state, or null if the page has no state with listing information
+     *         that can be attributed to the event
+     * @throws IOException If the page could not be read
+     */
+    public State extract(Reader reader, String eventKey) throws IOException {
+        this.eventKey = eventKey;
+        in = reader;
+        position = 0;
+        limit = 0;
+        pushbackLength = 0;
+        textResult = null;
+        textDecided = false;
+        if (textScanner != null) {
+            textScanner.begin();
+        }
+
+        StringBuilder tag = new StringBuilder();
+        boolean stateRead = false;
+        int c;
+        while ((c = next()) != -1) {
+            if (stateRead && textDecided) {
+                // Pages embed their state once, so the phrase result stands
+                break;
+            }
+            if (c != '<' || !readTagName(SCRIPT)) {
+                continue;
+            }
+            tag.setLength(0);
+            if (!readTag(tag)) {
+                break;
+            }
+            ScriptBodyReader body = new ScriptBodyReader();
+            if (isStateScript(tag)) {
+                State state = readState(body);
+                if (state != null) {
+                    return state;
+                }
+                stateRead = true;
+            }
+            skip(body);
+        }
+
+        if (textScanner != null) {
+            textResult = textScanner.finish();
+        }
+        return null;
+    }
+
+    /**
+     * Phrase-based result of the page, available when extract() returned null
+     */
+    public AvailabilityScanner.Result getTextResult() {
+        return textResult;
+    }
+
+    /**
+     * Parses the state script's body, leaving the input just past its JSON value
+     */
+    private State readState(ScriptBodyReader body) throws IOException {
+        matched = null;
+        foundOtherEvents = false;
+        Totals root = new Totals();
+
+        JsonReader json = new JsonReader(body);
+        try {
+            walk(json, null, root);
+        } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+            // Not the JSON we expected; the page text may still tell
+            return null;
+        }
+        Totals totals = matched;
+        if (totals == null) {
+            if (eventKey != null && foundOtherEvents) {
+                // Counts of several events and none known to be this one
+                return null;
+            }
+            totals = root;
+        }
+        return totals.toState();
+    }
+
+    /**
+     * Visits one JSON value, adding its listing counts to the enclosing object's
+     * totals and skipping everything else
+     */
+    private void walk(JsonReader json, String name, Totals totals) throws IOException {
+        switch (json.peek()) {
+            case BEGIN_OBJECT:
+                Totals object = new Totals();
+                String slug = null;
+                String id = null;
+                json.beginObject();
+                while (json.hasNext()) {
+                    String field = json.nextName();
+                    JsonToken token = json.peek();
+                    if (field.equals(SLUG_KEY) && token == JsonToken.STRING) {
+                        slug = json.nextString();
+                    } else if (field.equals(ID_KEY) && (token == JsonToken.STRING || token == JsonToken.NUMBER)) {
+                        id = json.nextString();
+                    } else {
+                        walk(json, field, object);
+                    }
+                }
+                json.endObject();
+                endObject(object, slug, id, totals);
+                break;
+
+            case BEGIN_ARRAY:
+                boolean listings = name != null && LISTING_ARRAY_KEYS.contains(name);
+                int elements = 0;
+                json.beginArray();
+                while (json.hasNext()) {
+                    if (listings && json.peek() == JsonToken.BEGIN_OBJECT) {
+                        elements++;
+                        if (!ListingSnapshot.readListing(json, totals.snapshot())) {
+                            totals.listingWithoutId = true;
+                        }
+                    } else {
+                        walk(json, null, totals);
+                    }
+                }
+                json.endArray();
+                if (listings) {
+                    totals.arrayListings += elements;
+                    totals.foundArray = true;
+                }
+                break;
+
+            case NUMBER:
+                if (name != null && COUNT_KEYS.contains(name)) {
+                    totals.countSum += Math.max(json.nextLong(), 0);
+                    totals.foundCount = true;
+                } else {
+                    json.skipValue();
+                }
+                break;
+
+            default:
+                json.skipValue();
+                break;
+        }
+    }
+
+    /**
+     * Decides where a finished object's totals go: they are the result if the
+     * object is the page's event, dropped if it names another event, and
+     * otherwise part of the enclosing object
+     */
+    private void endObject(Totals object, String slug, String id, Totals enclosing) {
+        if (eventKey != null) {
+            if (eventKey.equalsIgnoreCase(slug) || eventKey.equals(id)) {
+                if (matched == null) {
+                    matched = object;
+                }
+                return;
+            }
+            if (slug != null) {
+                foundOtherEvents = true;
+                return;
+            }
+        }
+        enclosing.add(object);
+    }
+
+    /**
+     * Listing counts found within one JSON object
+     */
+    private static class Totals {
+        long countSum;
+        boolean foundCount;
+        long arrayListings;
+        boolean foundArray;
+        boolean listingWithoutId;
+        private ListingSnapshot.Builder snapshot;
+
+        ListingSnapshot.Builder snapshot() {
+            if (snapshot == null) {
+                snapshot = new ListingSnapshot.Builder();
+            }
+            return snapshot;
+        }
+
+        void add(Totals other) {
+            countSum += other.countSum;
+            foundCount |= other.foundCount;
+            arrayListings += other.arrayListings;
+            foundArray |= other.foundArray;
+            listingWithoutId |= other.listingWithoutId;
+            if (other.snapshot != null) {
+                snapshot().addAll(other.snapshot);
+            }
+        }
+
+        State toState() {
+            ListingSnapshot listings = foundArray && !listingWithoutId ? snapshot().build() : null;
+            if (foundCount) {
+                return new State(countSum, true, listings);
+            }
+            if (foundArray) {
+                return new State(arrayListings, false, listings);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Reads a tag name after '<', returning true if it is the expected one
+     */
+    private boolean readTagName(char[] name) throws IOException {
+        for (char expected : name) {
+            int c = next();
+            if (c == -1) {
+                return false;
+            }
+            if (Character.toLowerCase((char) c) != expected) {
+                unread(c);
+                return false;
+            }
+        }
+        int c = next();
+        if (c == -1) {
+            return false;
+        }
+        if (c == '>' || c == '/' || Character.isWhitespace(c)) {
+            unread(c);
+            return true;
+        }
+        unread(c);
+        return false;
+    }
+
+    /**
+     * Reads the rest of an opening tag, i.e. its attributes, up to '>'
+     *
+     * @return False if the page ended inside the tag
+     */
+    private boolean readTag(StringBuilder tag) throws IOException {
+        char quote = 0;
+        int c;
+        while ((c = next()) != -1) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = (char) c;
+            } else if (c == '>') {
+                return true;
+            }
+            if (tag.length() < MAX_TAG_LENGTH) {
+                tag.append((char) c);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a script tag's attributes mark it as the page state
+     */
+    private static boolean isStateScript(StringBuilder tag) {
+        String attributes = tag.toString().toLowerCase(Locale.ROOT);
+        int index = attributes.indexOf("id=");
+        while (index != -1) {
+            if (index == 0 || Character.isWhitespace(attributes.charAt(index - 1))) {
+                int start = index + 3;
+                int end;
+                if (start < attributes.length()
+                        && (attributes.charAt(start) == '"' || attributes.charAt(start) == '\'')) {
+                    char quote = attributes.charAt(start++);
+                    end = attributes.indexOf(quote, start);
+                } else {
+                    end = start;
+                    while (end < attributes.length() && !Character.isWhitespace(attributes.charAt(end))
+                            && attributes.charAt(end) != '/') {
+                        end++;
+                    }
+                }
+                if (end == -1) {
+                    end = attributes.length();
+                }
+                return STATE_SCRIPT_IDS.contains(attributes.substring(start, end));
+            }
+            index = attributes.indexOf("id=", index + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Skips the rest of a script body, up to just past its closing tag
+     */
+    private static void skip(ScriptBodyReader body) throws IOException {
+        while (body.read() != -1) {
+            // Keep skipping
+        }
+    }
+
+    private int next() throws IOException {
+        if (pushbackLength > 0) {
+            return pushback[--pushbackLength];
+        }
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+            if (textScanner != null) {
+                textDecided = textScanner.feed(buffer, 0, limit);
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        pushback[pushbackLength++] = (char) c;
+    }
+
+    /**
+     * Script body as a Reader of its own, ending at the script's closing tag
+     */
+    private class ScriptBodyReader extends Reader {
+        private boolean ended;
+
+        @Override
+        public int read(char[] chars, int offset, int length) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            int count = 0;
+            while (count < length) {
+                int c = next();
+                if (c == -1) {
+                    ended = true;
+                    break;
+                }
+                if (c == '<' && isClosingTag()) {
+                    ended = true;
+                    break;
+                }
+                chars[offset + count++] = (char) c;
+            }
+            return count == 0 && ended ? -1 : count;
+        }
+
+        /**
+         * Whether the input after a '<' closes the script, consuming the closing tag if so
+         */
+        private boolean isClosingTag() throws IOException {
+            char[] seen = new char[SCRIPT_END.length];
+            int matched = 0;
+            while (matched < SCRIPT_END.length) {
+                int c = next();
+                if (c == -1) {
+                    break;
+                }
+                seen[matched] = (char) c;
+                if (Character.toLowerCase((char) c) != SCRIPT_END[matched]) {
+                    matched++;
+                    for (int i = matched - 1; i >= 0; i--) {
+                        unread(seen[i]);
+                    }
+                    return false;
+                }
+                matched++;
+            }
+            if (matched < SCRIPT_END.length) {
+                for (int i = matched - 1; i >= 0; i--) {
+                    unread(seen[i]);
+                }
+                return false;
+            }
+            int c;
+            while ((c = next()) != -1 && c != '>') {
+                // Skip the rest of the closing tag
+            }
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // The page reader belongs to the caller
+        }
+    }
+}
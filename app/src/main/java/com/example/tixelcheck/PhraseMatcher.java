@@ -0,0 +1,203 @@
+package com.example.tixelcheck;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeSet;
+
+/**
+ * Compiled Aho-Corasick automaton over all phrases of a PhraseSet.
+ *
+ * The automaton is a full DFA: every state has a transition for every
+ * character class, so matching costs one table lookup per character of page
+ * text no matter how many phrases are configured. Matchers are immutable and
+ * cached by phrase set, so a set is only compiled again when it changes.
+ */
+public class PhraseMatcher {
+    private static final int MAX_CACHED_MATCHERS = 32;
+    private static final int ROOT = 0;
+
+    private static final Map<PhraseSet, PhraseMatcher> CACHE =
+            new LinkedHashMap<PhraseSet, PhraseMatcher>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<PhraseSet, PhraseMatcher> eldest) {
+                    return size() > MAX_CACHED_MATCHERS;
+                }
+            };
+
+    private final String[] phrases;
+    private final boolean[] negative;
+
+    // Character classes: 0 is "not in any phrase", which always leads back to the root
+    private final int[] asciiClasses = new int[128];
+    private final char[] otherChars;
+    private final int classCount;
+
+    private final int[][] transitions;
+    private final int[] output;
+    private final int[] outputLink;
+
+    /**
+     * Returns the compiled matcher for a phrase set, compiling it on first use
+     */
+    public static PhraseMatcher forPhrases(PhraseSet phraseSet) {
+        synchronized (CACHE) {
+            PhraseMatcher matcher = CACHE.get(phraseSet);
+            if (matcher == null) {
+                matcher = new PhraseMatcher(phraseSet);
+                CACHE.put(phraseSet, matcher);
+            }
+            return matcher;
+        }
+    }
+
+    PhraseMatcher(PhraseSet phraseSet) {
+        List<String> all = new ArrayList<>(phraseSet.getPositive());
+        all.addAll(phraseSet.getNegative());
+        phrases = all.toArray(new String[0]);
+        negative = new boolean[phrases.length];
+        for (int i = phraseSet.getPositive().size(); i < phrases.length; i++) {
+            negative[i] = true;
+        }
+
+        // Assign a class to every distinct character used by a phrase
+        TreeSet<Character> others = new TreeSet<>();
+        int nextClass = 1;
+        for (String phrase : phrases) {
+            for (int i = 0; i < phrase.length(); i++) {
+                char c = phrase.charAt(i);
+                if (c < 128) {
+                    if (asciiClasses[c] == 0) {
+                        asciiClasses[c] = nextClass++;
+                    }
+                } else {
+                    others.add(c);
+                }
+            }
+        }
+        otherChars = new char[others.size()];
+        int index = 0;
+        for (char c : others) {
+            otherChars[index++] = c;
+        }
+        int asciiClassCount = nextClass;
+        classCount = asciiClassCount + otherChars.length;
+
+        // Build the trie
+        int maxStates = 1;
+        for (String phrase : phrases) {
+            maxStates += phrase.length();
+        }
+        int[][] trie = new int[maxStates][classCount];
+        int[] trieOutput = new int[maxStates];
+        Arrays.fill(trieOutput, -1);
+        int stateCount = 1;
+        for (int p = 0; p < phrases.length; p++) {
+            int state = ROOT;
+            for (int i = 0; i < phrases[p].length(); i++) {
+                int cls = classOf(phrases[p].charAt(i));
+                if (trie[state][cls] == 0) {
+                    trie[state][cls] = stateCount++;
+                }
+                state = trie[state][cls];
+            }
+            if (trieOutput[state] == -1) {
+                trieOutput[state] = p;
+            }
+        }
+
+        // Breadth-first pass computes failure links and turns the trie into a DFA
+        transitions = new int[stateCount][];
+        output = Arrays.copyOf(trieOutput, stateCount);
+        outputLink = new int[stateCount];
+        int[] failure = new int[stateCount];
+        Arrays.fill(outputLink, -1);
+
+        transitions[ROOT] = new int[classCount];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int cls = 1; cls < classCount; cls++) {
+            int child = trie[ROOT][cls];
+            transitions[ROOT][cls] = child;
+            if (child != 0) {
+                failure[child] = ROOT;
+                queue.add(child);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int fail = failure[state];
+            outputLink[state] = output[fail] != -1 ? fail : outputLink[fail];
+            transitions[state] = new int[classCount];
+            for (int cls = 1; cls < classCount; cls++) {
+                int child = trie[state][cls];
+                if (child != 0) {
+                    failure[child] = transitions[fail][cls];
+                    transitions[state][cls] = child;
+                    queue.add(child);
+                } else {
+                    transitions[state][cls] = transitions[fail][cls];
+                }
+            }
+        }
+    }
+
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? classCount - otherChars.length + index : 0;
+    }
+
+    /**
+     * The state every scan starts from
+     */
+    public int initialState() {
+        return ROOT;
+    }
+
+    /**
+     * Advances the automaton by one lower-cased character of page text
+     */
+    public int step(int state, char c) {
+        return transitions[state][classOf(c)];
+    }
+
+    /**
+     * First state in the chain of phrases ending at the given state, or -1 if none.
+     * Follow the chain with nextMatch() and read each phrase with phraseAt().
+     */
+    public int firstMatch(int state) {
+        return output[state] != -1 ? state : outputLink[state];
+    }
+
+    /**
+     * Next, shorter phrase ending at the same position, or -1 if none
+     */
+    public int nextMatch(int matchState) {
+        return outputLink[matchState];
+    }
+
+    /**
+     * Index of the phrase recognised at a match state
+     */
+    public int phraseAt(int matchState) {
+        return output[matchState];
+    }
+
+    public String getPhrase(int phraseIndex) {
+        return phrases[phraseIndex];
+    }
+
+    public int getPhraseLength(int phraseIndex) {
+        return phrases[phraseIndex].length();
+    }
+
+    public boolean isNegative(int phraseIndex) {
+        return negative[phraseIndex];
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.tixelcheck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of detection phrases for one URL.
+ *
+ * Positive phrases mean tickets are listed, negative phrases mean they are not.
+ * Phrases are normalised the same way AvailabilityScanner normalises page text
+ * (lower case, single spaces), so two sets that match the same text are equal
+ * and share one compiled PhraseMatcher. A phrase given in both lists is kept
+ * only as a negative phrase, since it cannot tell the two states apart and a
+ * false "tickets available" alert is the worse mistake.
+ */
+public final class PhraseSet {
+    private static final PhraseSet ENGLISH = new PhraseSet(
+            Arrays.asList("ticket available", "tickets available", "listings from"),
+            Arrays.asList("sold out", "no tickets", "no listings"));
+
+    // Defaults by language; pages in other languages fall back to English
+    private static final Map<String, PhraseSet> LOCALE_DEFAULTS = new HashMap<>();
+
+    static {
+        LOCALE_DEFAULTS.put("en", ENGLISH);
+    }
+
+    private final List<String> positive;
+    private final List<String> negative;
+
+    private PhraseSet(List<String> positive, List<String> negative) {
+        List<String> normalizedNegative = normalize(negative);
+        List<String> normalizedPositive = normalize(positive);
+        normalizedPositive.removeAll(normalizedNegative);
+        this.positive = Collections.unmodifiableList(normalizedPositive);
+        this.negative = Collections.unmodifiableList(normalizedNegative);
+    }
+
+    public static PhraseSet of(List<String> positive, List<String> negative) {
+        return new PhraseSet(positive, negative);
+    }
+
+    /**
+     * Default phrases for the given locale, falling back to English
+     */
+    public static PhraseSet forLocale(Locale locale) {
+        PhraseSet defaults = LOCALE_DEFAULTS.get(locale.getLanguage());
+        return defaults != null ? defaults : ENGLISH;
+    }
+
+    /**
+     * Phrases for a monitored URL: its own phrases where set, otherwise
+     * the defaults for the device locale
+     */
+    public static PhraseSet forUrl(MonitoredUrl url) {
+        PhraseSet defaults = forLocale(Locale.getDefault());
+        String positiveLines = url.getPositivePhrases();
+        String negativeLines = url.getNegativePhrases();
+        if (positiveLines == null && negativeLines == null) {
+            return defaults;
+        }
+        return new PhraseSet(
+                positiveLines != null ? splitLines(positiveLines) : defaults.positive,
+                negativeLines != null ? splitLines(negativeLines) : defaults.negative);
+    }
+
+    public List<String> getPositive() {
+        return positive;
+    }
+
+    public List<String> getNegative() {
+        return negative;
+    }
+
+    /**
+     * Joins phrases into the newline-separated form stored in UrlDatabase
+     */
+    public static String joinLines(List<String> phrases) {
+        StringBuilder builder = new StringBuilder();
+        for (String phrase : phrases) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(phrase);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * First phrase that appears, once normalised, in both newline-separated lists,
+     * or null if they have none in common. Used to reject such input before it is
+     * stored rather than silently treating the phrase as negative.
+     */
+    public static String findConflict(String positiveLines, String negativeLines) {
+        if (positiveLines == null || negativeLines == null) {
+            return null;
+        }
+        List<String> negative = normalize(splitLines(negativeLines));
+        for (String phrase : normalize(splitLines(positiveLines))) {
+            if (negative.contains(phrase)) {
+                return phrase;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> splitLines(String lines) {
+        return Arrays.asList(lines.split("\n"));
+    }
+
+    /**
+     * Lower-cases phrases, collapses whitespace and drops blanks and duplicates
+     */
+    private static List<String> normalize(List<String> phrases) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String phrase : phrases) {
+            String value = phrase.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            if (!value.isEmpty()) {
+                normalized.add(value);
+            }
+        }
+        return new ArrayList<>(normalized);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PhraseSet)) {
+            return false;
+        }
+        PhraseSet other = (PhraseSet) o;
+        return positive.equals(other.positive) && negative.equals(other.negative);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * positive.hashCode() + negative.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "PhraseSet{positive=" + positive + ", negative=" + negative + "}";
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Cheapest-listing price of each URL over time, stored as PriceSeries blocks
+ * in UrlDatabase. Each URL's newest block stays open in memory and is
+ * rewritten on every append until it is full, when a new block is started.
+ */
+public class PriceHistory {
+    private static final String TAG = "PriceHistory";
+
+    // An unchanged price is recorded at most this often, so a steady price costs no write per check
+    static final long UNCHANGED_SAMPLE_INTERVAL_MS = 15 * 60 * 1000;
+
+    private static PriceHistory instance;
+
+    private final UrlDatabase database;
+
+    // Open block per URL ID, loaded from the database on first append
+    private final Map<Long, UrlDatabase.StoredPriceBlock> openBlocks = new HashMap<>();
+
+    public static synchronized PriceHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new PriceHistory(UrlDatabase.getInstance(context));
+        }
+        return instance;
+    }
+
+    PriceHistory(UrlDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Records the cheapest price seen by a check and evaluates the URL's target price rule.
+     * The rule is re-armed once the price rises above the alerted target again.
+     * A price equal to the last recorded one is only stored once
+     * UNCHANGED_SAMPLE_INTERVAL_MS has passed since it.
+     *
+     * @param url The checked URL
+     * @param timestamp Time of the check in milliseconds
+     * @param price Cheapest listing price in cents
+     * @return True if the price just reached the URL's target price
+     */
+    public synchronized boolean append(MonitoredUrl url, long timestamp, long price) {
+        UrlDatabase.StoredPriceBlock open = openBlocks.get(url.getId());
+        if (open == null) {
+            open = database.getLatestPriceBlock(url.getId());
+        }
+        boolean unchanged = open != null && !open.block.isEmpty() && open.block.getLastPrice() == price
+                && timestamp - open.block.getEndTime() < UNCHANGED_SAMPLE_INTERVAL_MS;
+        if (!unchanged) {
+            if (open == null || open.block.isFull()) {
+                PriceSeries.Block block = new PriceSeries.Block();
+                block.append(timestamp, price);
+                open = new UrlDatabase.StoredPriceBlock(database.insertPriceBlock(url.getId(), block), block);
+            } else {
+                open.block.append(timestamp, price);
+                database.updatePriceBlock(open.rowId, open.block);
+            }
+        }
+        openBlocks.put(url.getId(), open);
+
+        long targetPrice = url.getTargetPrice();
+        boolean reached = PriceSeries.reachesTarget(price, targetPrice, url.getAlertedTargetPrice());
+        if (reached) {
+            Log.d(TAG, "Price for URL ID " + url.getId() + " reached target: " + price + " <= " + targetPrice);
+            database.updateAlertedTargetPrice(url.getId(), targetPrice);
+            url.setAlertedTargetPrice(targetPrice);
+        } else if (url.getAlertedTargetPrice() != 0 && price > url.getAlertedTargetPrice()) {
+            database.updateAlertedTargetPrice(url.getId(), 0);
+            url.setAlertedTargetPrice(0);
+        }
+        return reached;
+    }
+
+    /**
+     * Recorded prices of a URL between two times, for charting
+     *
+     * @param from Start of the range in milliseconds, inclusive
+     * @param to End of the range in milliseconds, inclusive
+     */
+    public PriceSeries.Points getRange(long urlId, long from, long to) {
+        PriceSeries.Points points = new PriceSeries.Points();
+        for (byte[] block : database.getPriceBlocks(urlId, from, to)) {
+            try {
+                points.addBlock(block, from, to);
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Skipping corrupt price block for URL ID " + urlId, e);
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Forgets the open block of a deleted URL
+     */
+    public synchronized void remove(long urlId) {
+        openBlocks.remove(urlId);
+    }
+}
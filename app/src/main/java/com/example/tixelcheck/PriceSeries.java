@@ -0,0 +1,253 @@
+package com.example.tixelcheck;
+
+import java.util.Arrays;
+
+/**
+ * Compact encoding of a URL's cheapest-listing price over time.
+ *
+ * Points are grouped into append-only blocks. Within a block, timestamps (in
+ * seconds) are stored as the delta of their delta and prices (in cents) as the
+ * delta from the previous price, each zigzag varint encoded. Checks run at a
+ * steady interval and prices rarely move, so a typical point costs two bytes
+ * instead of a database row.
+ */
+public final class PriceSeries {
+    // Roughly four hours of one-minute polling per block
+    static final int MAX_POINTS_PER_BLOCK = 256;
+
+    private PriceSeries() {
+    }
+
+    /**
+     * Threshold rule evaluated on every append: true when the price is at or
+     * below the target and no alert has been sent for that target since the
+     * price was last above it
+     *
+     * @param price New price in cents
+     * @param targetPrice Target in cents, or 0 for no target
+     * @param alertedTargetPrice Target of the last alert, or 0 if the price has
+     *                           been above it since or no alert was sent
+     */
+    public static boolean reachesTarget(long price, long targetPrice, long alertedTargetPrice) {
+        if (targetPrice <= 0 || price > targetPrice) {
+            return false;
+        }
+        return alertedTargetPrice != targetPrice;
+    }
+
+    /**
+     * One block of points, appended to in time order
+     */
+    public static final class Block {
+        private byte[] data = new byte[64];
+        private int length;
+        private int count;
+        private long firstTime;
+        private long lastTime;
+        private long lastDelta;
+        private long lastPrice;
+
+        public Block() {
+        }
+
+        /**
+         * Restores a block written by toBytes() so more points can be appended to it
+         *
+         * @throws IllegalArgumentException If the data is corrupt
+         */
+        public static Block fromBytes(byte[] bytes) {
+            Block block = new Block();
+            Decoder decoder = new Decoder(bytes);
+            while (decoder.next()) {
+                block.append(decoder.time * 1000, decoder.price);
+            }
+            return block;
+        }
+
+        public boolean isFull() {
+            return count >= MAX_POINTS_PER_BLOCK;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        /**
+         * Time of the first point in milliseconds, at second precision
+         */
+        public long getStartTime() {
+            return firstTime * 1000;
+        }
+
+        /**
+         * Time of the last point in milliseconds, at second precision
+         */
+        public long getEndTime() {
+            return lastTime * 1000;
+        }
+
+        /**
+         * Price of the last point in cents; only meaningful if the block is not empty
+         */
+        public long getLastPrice() {
+            return lastPrice;
+        }
+
+        /**
+         * Adds a point. Points must not go back in time; earlier ones are stored
+         * at the time of the previous point.
+         *
+         * @param timestamp Time in milliseconds
+         * @param price Price in cents
+         */
+        public void append(long timestamp, long price) {
+            long time = timestamp / 1000;
+            if (count == 0) {
+                writeVarint(zigzag(time));
+                writeVarint(zigzag(price));
+                firstTime = time;
+                lastDelta = 0;
+            } else {
+                long delta = Math.max(time - lastTime, 0);
+                writeVarint(zigzag(count == 1 ? delta : delta - lastDelta));
+                writeVarint(zigzag(price - lastPrice));
+                lastDelta = delta;
+                time = lastTime + delta;
+            }
+            lastTime = time;
+            lastPrice = price;
+            count++;
+        }
+
+        public byte[] toBytes() {
+            return Arrays.copyOf(data, length);
+        }
+
+        private void writeVarint(long value) {
+            if (length + 10 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+
+    /**
+     * Points of a time range, decoded from one or more blocks into parallel arrays
+     */
+    public static final class Points {
+        private long[] times = new long[16];
+        private long[] prices = new long[16];
+        private int size;
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Time of a point in milliseconds
+         */
+        public long getTime(int index) {
+            return times[index];
+        }
+
+        /**
+         * Price of a point in cents
+         */
+        public long getPrice(int index) {
+            return prices[index];
+        }
+
+        /**
+         * Decodes the points of an encoded block that fall within [from, to]
+         *
+         * @throws IllegalArgumentException If the data is corrupt
+         */
+        public void addBlock(byte[] bytes, long from, long to) {
+            Decoder decoder = new Decoder(bytes);
+            while (decoder.next()) {
+                long time = decoder.time * 1000;
+                if (time > to) {
+                    break;
+                }
+                if (time >= from) {
+                    add(time, decoder.price);
+                }
+            }
+        }
+
+        private void add(long time, long price) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+            times[size] = time;
+            prices[size] = price;
+            size++;
+        }
+    }
+
+    /**
+     * Walks the points of an encoded block
+     */
+    private static final class Decoder {
+        private final byte[] data;
+        private int position;
+        private int index;
+        private long delta;
+        long time;
+        long price;
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        boolean next() {
+            if (position >= data.length) {
+                return false;
+            }
+            long timeValue = unzigzag(readVarint());
+            long priceValue = unzigzag(readVarint());
+            if (index == 0) {
+                time = timeValue;
+                price = priceValue;
+            } else {
+                delta = index == 1 ? timeValue : delta + timeValue;
+                time += delta;
+                price += priceValue;
+            }
+            index++;
+            return true;
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length) {
+                    throw new IllegalArgumentException("Truncated price block");
+                }
+                byte b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in price block");
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Consecutive failed checks per URL, persisted in SharedPreferences. The count
+ * stretches the URL's polling interval with exponential backoff and full jitter
+ * (see AdaptivePollingPolicy.retryIntervalMs) until a check succeeds again.
+ */
+public class RetryBackoff {
+    private static final String PREFS_NAME = "retry_backoff";
+    private static final String KEY_PREFIX = "failures_";
+
+    /**
+     * Counts a failed check
+     *
+     * @return Consecutive failures for the URL, including this one
+     */
+    public static synchronized int recordFailure(Context context, long urlId) {
+        SharedPreferences prefs = prefs(context);
+        int failures = prefs.getInt(KEY_PREFIX + urlId, 0) + 1;
+        prefs.edit().putInt(KEY_PREFIX + urlId, failures).apply();
+        return failures;
+    }
+
+    /**
+     * Resets the URL's failure count after a successful check
+     */
+    public static synchronized void recordSuccess(Context context, long urlId) {
+        SharedPreferences prefs = prefs(context);
+        if (prefs.contains(KEY_PREFIX + urlId)) {
+            prefs.edit().remove(KEY_PREFIX + urlId).apply();
+        }
+    }
+
+    public static synchronized int getFailureCount(Context context, long urlId) {
+        return prefs(context).getInt(KEY_PREFIX + urlId, 0);
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
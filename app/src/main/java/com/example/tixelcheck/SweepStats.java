@@ -0,0 +1,124 @@
+package com.example.tixelcheck;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Throughput and latency of check sweeps, kept in memory for the life of the process.
+ * The most recent sweep and running totals are available for logging and tuning.
+ */
+public class SweepStats {
+    private static Sweep lastSweep;
+    private static int totalSweeps;
+    private static long totalChecks;
+    private static long totalTimedOut;
+    private static long totalFailed;
+    private static long totalDurationMs;
+
+    /**
+     * Statistics for a single sweep
+     */
+    public static class Sweep {
+        private final int urlCount;
+        private final int timedOut;
+        private final int failed;
+        private final long durationMs;
+        private final long medianLatencyMs;
+        private final long p95LatencyMs;
+        private final long maxLatencyMs;
+
+        /**
+         * @param failed Checks that finished without a result, by throwing or failing to fetch the page
+         * @param latencies Durations of the checks that returned, failed or not
+         */
+        Sweep(int urlCount, int timedOut, int failed, long durationMs, long[] latencies) {
+            this.urlCount = urlCount;
+            this.timedOut = timedOut;
+            this.failed = failed;
+            this.durationMs = durationMs;
+            long[] sorted = latencies.clone();
+            Arrays.sort(sorted);
+            this.medianLatencyMs = percentile(sorted, 0.5);
+            this.p95LatencyMs = percentile(sorted, 0.95);
+            this.maxLatencyMs = sorted.length == 0 ? 0 : sorted[sorted.length - 1];
+        }
+
+        public int getUrlCount() {
+            return urlCount;
+        }
+
+        public int getTimedOut() {
+            return timedOut;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        /**
+         * Checks completed per second of wall-clock sweep time
+         */
+        public double getThroughput() {
+            return durationMs == 0 ? 0 : (urlCount - timedOut) * 1000.0 / durationMs;
+        }
+
+        public long getMedianLatencyMs() {
+            return medianLatencyMs;
+        }
+
+        public long getP95LatencyMs() {
+            return p95LatencyMs;
+        }
+
+        public long getMaxLatencyMs() {
+            return maxLatencyMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%d URLs in %d ms (%.2f checks/s), latency p50=%d ms p95=%d ms max=%d ms, %d timed out, %d failed",
+                    urlCount, durationMs, getThroughput(), medianLatencyMs, p95LatencyMs, maxLatencyMs, timedOut,
+                    failed);
+        }
+
+        private static long percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+    }
+
+    static synchronized Sweep record(int urlCount, int timedOut, int failed, long durationMs, long[] latencies) {
+        Sweep sweep = new Sweep(urlCount, timedOut, failed, durationMs, latencies);
+        lastSweep = sweep;
+        totalSweeps++;
+        totalChecks += urlCount;
+        totalTimedOut += timedOut;
+        totalFailed += failed;
+        totalDurationMs += durationMs;
+        return sweep;
+    }
+
+    /**
+     * The most recent sweep, or null if none has run in this process
+     */
+    public static synchronized Sweep getLastSweep() {
+        return lastSweep;
+    }
+
+    /**
+     * Running totals across all sweeps in this process
+     */
+    public static synchronized String getSummary() {
+        double throughput = totalDurationMs == 0 ? 0 : (totalChecks - totalTimedOut) * 1000.0 / totalDurationMs;
+        return String.format(Locale.US, "%d sweeps, %d checks, %d timed out, %d failed, %.2f checks/s overall",
+                totalSweeps, totalChecks, totalTimedOut, totalFailed, throughput);
+    }
+}
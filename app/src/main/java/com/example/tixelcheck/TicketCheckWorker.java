@@ -0,0 +1,109 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Data;
+import androidx.work.ForegroundInfo;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.List;
+
+/**
+ * WorkManager counterpart of a sweep: checks one URL (and, through TicketChecker,
+ * its duplicates) and schedules the next check with the latest adaptive interval.
+ */
+public class TicketCheckWorker extends Worker {
+    private static final String TAG = "TicketCheckWorker";
+    static final String KEY_URL_ID = "url_id";
+    static final String KEY_CANONICAL_URL = "canonical_url";
+    static final String KEY_DUE_AT = "due_at";
+
+    public TicketCheckWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    static Data inputData(long urlId, String canonicalUrl, long dueAt) {
+        return new Data.Builder()
+                .putLong(KEY_URL_ID, urlId)
+                .putString(KEY_CANONICAL_URL, canonicalUrl)
+                .putLong(KEY_DUE_AT, dueAt)
+                .build();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        long start = System.currentTimeMillis();
+        long dueAt = getInputData().getLong(KEY_DUE_AT, 0);
+        EngineStats.recordWakeup(CheckEngine.WORK_MANAGER, dueAt > 0 ? Math.max(0, start - dueAt) : -1);
+
+        // Work left behind by a switch to the alarm engine must not check alongside it
+        String canonicalUrl = getInputData().getString(KEY_CANONICAL_URL);
+        if (!CheckEngine.usesWorkManager(context)) {
+            Log.d(TAG, "WorkManager is no longer the check engine, stopping work for " + canonicalUrl);
+            if (canonicalUrl != null) {
+                WorkCheckScheduler.cancelCanonical(context, canonicalUrl);
+            }
+            return Result.success();
+        }
+
+        // The row that scheduled the work may be gone; any active duplicate can take over
+        UrlDatabase database = UrlDatabase.getInstance(context);
+        MonitoredUrl url = database.getUrlById(getInputData().getLong(KEY_URL_ID, -1));
+        if ((url == null || !url.isActive()) && canonicalUrl != null) {
+            List<MonitoredUrl> duplicates = database.getActiveUrlsByCanonicalUrl(canonicalUrl);
+            url = duplicates.isEmpty() ? null : duplicates.get(0);
+        }
+        if (url == null) {
+            Log.d(TAG, "No active URL left for " + canonicalUrl + ", stopping its work");
+            if (canonicalUrl != null) {
+                WorkCheckScheduler.cancelCanonical(context, canonicalUrl);
+            }
+            return Result.success();
+        }
+
+        if (AdaptivePollingPolicy.isEventOver(url.getEventDate(), start)) {
+            pause(context, url);
+            return Result.success();
+        }
+
+        boolean success = new TicketChecker(context).check(url.getId());
+        EngineStats.recordCheck(CheckEngine.WORK_MANAGER, success, System.currentTimeMillis() - start);
+        Log.d(TAG, EngineStats.getSummary(CheckEngine.WORK_MANAGER));
+
+        // Reload so the next interval reflects this check's result
+        CheckResultWriter.getInstance(context).flush();
+        MonitoredUrl checked = database.getUrlById(url.getId());
+        if (checked != null && checked.isActive() && CheckEngine.usesWorkManager(context)) {
+            WorkCheckScheduler.scheduleFromWorker(context, checked);
+        }
+        return Result.success();
+    }
+
+    /**
+     * Stops monitoring a URL whose event has already taken place, like a sweep
+     * does. Its work is handed to an active duplicate or cancelled.
+     */
+    private static void pause(Context context, MonitoredUrl url) {
+        url.setActive(false);
+        UrlDatabase.getInstance(context).updateUrl(url);
+        WorkCheckScheduler.cancel(context, url.getId());
+        Log.d(TAG, "Paused URL ID " + url.getId() + " because its event date " + url.getEventDate() + " has passed");
+    }
+
+    /**
+     * Expedited work runs as a foreground service before Android 12, which needs a notification
+     */
+    @NonNull
+    @Override
+    public ForegroundInfo getForegroundInfo() {
+        Context context = getApplicationContext();
+        TicketMonitorService.createNotificationChannel(context);
+        return new ForegroundInfo(TicketMonitorService.SERVICE_NOTIFICATION_ID,
+                TicketMonitorService.createServiceNotification(context));
+    }
+}
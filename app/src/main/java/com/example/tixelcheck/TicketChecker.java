@@ -0,0 +1,615 @@
+package com.example.tixelcheck;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Performs a single ticket check for one monitored URL: asks the Tixel API or
+ * fetches the page, detects availability, records the result and notifies the user.
+ * Safe to call from several worker threads at once; checks of URLs that
+ * canonicalise to the same page share a single fetch.
+ */
+public class TicketChecker {
+    private static final String TAG = "TicketChecker";
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    // Consecutive checks per URL ID that found an identical page; kept in memory only
+    private static final Map<Long, Integer> unchangedChecks = new HashMap<>();
+
+    // When each URL's availability status last flipped in this process
+    private static final Map<Long, Long> statusChanges = new HashMap<>();
+
+    // Results are shared between duplicate URLs for this long after a fetch
+    private static final long RESULT_REUSE_MS = 30 * 1000;
+    private static final CheckCoalescer<Target, PageResult> coalescer = new CheckCoalescer<>(RESULT_REUSE_MS);
+
+    private final Context context;
+
+    public TicketChecker(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Checks if tickets are available for the specified URL. Other active URLs
+     * pointing at the same page with the same phrases get the result too.
+     * 
+     * @param urlId ID of the URL to check
+     * @return False if the page could not be fetched, true otherwise
+     */
+    public boolean check(long urlId) {
+        // Get URL from database
+        UrlDatabase database = UrlDatabase.getInstance(context);
+        CheckResultWriter writer = CheckResultWriter.getInstance(context);
+        MonitoredUrl url = database.getUrlById(urlId);
+        
+        if (url == null || !url.isActive()) {
+            Log.d(TAG, "URL is null or inactive: " + urlId);
+            return true;
+        }
+        writer.applyPending(url);
+        
+        PhraseSet phrases = PhraseSet.forUrl(url);
+        String canonicalUrl = UrlCanonicalizer.canonicalize(url.getUrl());
+        PageResult result;
+        long started = System.currentTimeMillis();
+        try {
+            // Joins a fetch of the same page already in flight, or reuses a very recent one
+            result = coalescer.get(new Target(canonicalUrl, phrases), () -> fetchPage(url, phrases));
+        } catch (CircuitOpenException e) {
+            // The host is known to be down, so no request was made
+            Log.d(TAG, "Skipped URL ID " + urlId + ": " + e.getMessage());
+            RetryBackoff.recordFailure(context, url.getId());
+            return false;
+        } catch (SocketTimeoutException e) {
+            // Handle timeout specifically
+            Log.e(TAG, "Connection timed out for URL: " + url.getUrl(), e);
+            recordError(url, "Connection timed out. Will retry later.");
+            return false;
+        } catch (IOException e) {
+            // Handle other connection errors
+            Log.e(TAG, "Error checking URL: " + url.getUrl(), e);
+            recordError(url, "Connection error. Will retry later.");
+            return false;
+        }
+        
+        long latencyMs = System.currentTimeMillis() - started;
+        
+        RetryBackoff.recordSuccess(context, url.getId());
+        if (result.markApplied(url.getId())) {
+            writer.recordCheck(url.getId(), System.currentTimeMillis(), false, result.available, latencyMs);
+            applyResult(url, result);
+        } else {
+            Log.d(TAG, "Result for URL ID " + urlId + " already recorded by a shared fetch");
+        }
+        
+        // Fan the result out to duplicates of this URL
+        for (MonitoredUrl duplicate : database.getActiveUrlsByCanonicalUrl(canonicalUrl)) {
+            if (duplicate.getId() != url.getId() && phrases.equals(PhraseSet.forUrl(duplicate))
+                    && result.markApplied(duplicate.getId())) {
+                writer.applyPending(duplicate);
+                Log.d(TAG, "Sharing result of URL ID " + urlId + " with duplicate URL ID " + duplicate.getId());
+                RetryBackoff.recordSuccess(context, duplicate.getId());
+                writer.recordCheck(duplicate.getId(), System.currentTimeMillis(), false, result.available,
+                        latencyMs);
+                applyResult(duplicate, result);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Fetches availability of every API-eligible URL about to be checked in as
+     * few API requests as possible, so their checks need no request of their own
+     */
+    public void prefetch(List<MonitoredUrl> urls) {
+        List<String> slugs = new ArrayList<>();
+        for (MonitoredUrl url : urls) {
+            String slug = apiSlug(url);
+            if (slug != null) {
+                slugs.add(slug);
+            }
+        }
+        TixelApiClient api = TixelApiClient.getInstance();
+        if (slugs.size() < 2 || !api.isBatchSupported()) {
+            return;
+        }
+        
+        HostCircuitBreakers breakers = HostCircuitBreakers.getInstance(context);
+        try {
+            breakers.checkAllowed(api.getHost());
+        } catch (CircuitOpenException e) {
+            Log.d(TAG, "Skipped API prefetch: " + e.getMessage());
+            return;
+        }
+        boolean hostHealthy = false;
+        boolean hostFailed = false;
+        try {
+            int fetched = api.prefetch(slugs);
+            hostHealthy = true;
+            Log.d(TAG, "Prefetched availability of " + fetched + " of " + slugs.size() + " events from the API");
+        } catch (IOException e) {
+            hostFailed = true;
+            Log.w(TAG, "API prefetch failed, checks will fetch individually", e);
+        } finally {
+            recordHostOutcome(breakers, api.getHost(), hostHealthy, hostFailed);
+        }
+    }
+    
+    /**
+     * Event slug to ask the API about, or null if the URL has to be scraped
+     */
+    private static String apiSlug(MonitoredUrl url) {
+        if (!usesDefaultPhrases(url)) {
+            return null;
+        }
+        String slug = TixelApiClient.eventSlug(url.getUrl());
+        if (slug == null || TixelApiClient.getInstance().isKnownUnknown(slug)) {
+            return null;
+        }
+        return slug;
+    }
+    
+    /**
+     * Asks the API for an event's availability
+     * 
+     * @return The result, or null if the page has to be scraped instead
+     */
+    private PageResult fetchFromApi(MonitoredUrl url, String slug) {
+        TixelApiClient api = TixelApiClient.getInstance();
+        HostCircuitBreakers breakers = HostCircuitBreakers.getInstance(context);
+        try {
+            breakers.checkAllowed(api.getHost());
+        } catch (CircuitOpenException e) {
+            Log.d(TAG, "API unavailable for URL ID " + url.getId() + ": " + e.getMessage());
+            return null;
+        }
+        boolean hostHealthy = false;
+        boolean hostFailed = false;
+        try {
+            TixelApiClient.Availability availability = api.getAvailability(slug);
+            hostHealthy = true;
+            if (availability == null) {
+                Log.d(TAG, "Event " + slug + " not known to the API, scraping the page");
+                return null;
+            }
+            Log.d(TAG, "API reports " + availability + " for URL ID " + url.getId());
+            long lowestPrice = availability.getLowestPrice();
+            if (lowestPrice < 0 && availability.getListings() != null) {
+                lowestPrice = availability.getListings().lowestPrice();
+            }
+            return new PageResult(availability.isAvailable(), availability.getFingerprint(),
+                    availability.getListings(), lowestPrice);
+        } catch (IOException e) {
+            hostFailed = true;
+            Log.w(TAG, "API check failed for URL ID " + url.getId() + ", scraping the page", e);
+            return null;
+        } finally {
+            recordHostOutcome(breakers, api.getHost(), hostHealthy, hostFailed);
+        }
+    }
+    
+    /**
+     * Counts a request against its host's breaker. Only I/O errors say the host is
+     * down; a request cut short by anything else neither passes nor fails its probe.
+     */
+    private static void recordHostOutcome(HostCircuitBreakers breakers, String host, boolean healthy,
+            boolean failed) {
+        if (healthy) {
+            breakers.recordSuccess(host);
+        } else if (failed) {
+            breakers.recordFailure(host);
+        } else {
+            breakers.recordAbandoned(host);
+        }
+    }
+    
+    /**
+     * Checks a URL through the API where possible, otherwise by scraping its page
+     */
+    private PageResult fetchPage(MonitoredUrl url, PhraseSet phrases) throws IOException {
+        Log.d(TAG, "Checking URL: " + url.getUrl());
+        
+        String slug = apiSlug(url);
+        if (slug != null) {
+            PageResult result = fetchFromApi(url, slug);
+            if (result != null) {
+                return result;
+            }
+        }
+        return scrapePage(url, phrases);
+    }
+    
+    /**
+     * Fetches and scans a page, revalidating against the URL's cached copy when possible
+     */
+    private PageResult scrapePage(MonitoredUrl url, PhraseSet phrases) throws IOException {
+        // Compiled once per phrase set and shared by every URL that uses it
+        AvailabilityScanner scanner = new AvailabilityScanner(PhraseMatcher.forPhrases(phrases));
+        
+        // Only send validators while the body they describe is still cached
+        PageCache pageCache = PageCache.getInstance(context);
+        boolean canRevalidate = url.hasValidators() && pageCache.contains(url.getId());
+        
+        // Fail fast while the host is down, letting only the breaker's probe through
+        HostCircuitBreakers breakers = HostCircuitBreakers.getInstance(context);
+        HttpUrl httpUrl = HttpUrl.parse(url.getUrl());
+        String host = httpUrl != null ? httpUrl.host() : url.getUrl();
+        breakers.checkAllowed(host);
+        boolean hostHealthy = false;
+        boolean hostFailed = false;
+        
+        // Fetch the page over the shared, connection-pooled client
+        try (Response response = TixelHttpClient.getInstance().get(url.getUrl(),
+                canRevalidate ? url.getEtag() : null,
+                canRevalidate ? url.getLastModified() : null)) {
+            // Server errors and throttling count against the host; anything else means it is up
+            hostHealthy = response.code() < 500 && response.code() != HTTP_TOO_MANY_REQUESTS;
+            if (response.code() == HTTP_NOT_MODIFIED) {
+                // Page unchanged since the last full response, so the previous result still holds
+                pageCache.touch(url.getId());
+                Log.d(TAG, "Page not modified, skipped parsing for URL ID " + url.getId());
+                return new PageResult(url.hasTicketsFound(), url.getContentFingerprint(), null,
+                        ListingSnapshot.UNKNOWN_PRICE);
+            }
+            if (!response.isSuccessful()) {
+                throw new IOException("Unexpected HTTP status " + response.code() + " for " + url.getUrl());
+            }
+            
+            ResponseBody body = response.body();
+            MediaType contentType = body.contentType();
+            Charset charset = contentType != null ? contentType.charset() : null;
+            String etag = response.header("ETag");
+            String lastModified = response.header("Last-Modified");
+            
+            boolean readState = usesDefaultPhrases(url);
+            // Tixel pages are read for the listings of their own event only
+            String eventKey = readState ? TixelApiClient.eventSlug(url.getUrl()) : null;
+            PageResult result;
+            if (etag != null || lastModified != null) {
+                // Keep the body so later checks can be answered with a 304. The rest of
+                // the page is read even after a match, since a complete copy is what
+                // lets the next check skip the download entirely.
+                try (PageCache.CachingInputStream in = pageCache.storing(url.getId(), body.byteStream())) {
+                    result = evaluate(in, charset, scanner, readState, eventKey);
+                    in.readToEnd();
+                }
+            } else {
+                // Nothing to revalidate against, so stop downloading as soon as we know
+                pageCache.remove(url.getId());
+                result = evaluate(body.byteStream(), charset, scanner, readState, eventKey);
+            }
+            
+            if (!Objects.equals(etag, url.getEtag()) || !Objects.equals(lastModified, url.getLastModified())) {
+                UrlDatabase.getInstance(context).updateValidators(url.getId(), etag, lastModified);
+            }
+            return result;
+        } catch (IOException e) {
+            // Only network errors and bad statuses say the host is down, not parse or programming errors
+            hostFailed = !hostHealthy;
+            throw e;
+        } finally {
+            recordHostOutcome(breakers, host, hostHealthy, hostFailed);
+        }
+    }
+    
+    /**
+     * Reads availability from a page body: from the listing state the page
+     * embeds where it has one, otherwise from its text
+     *
+     * @param eventKey Slug of the page's event in its state, or null to count all listings
+     */
+    private static PageResult evaluate(InputStream in, Charset charset, AvailabilityScanner scanner,
+            boolean readState, String eventKey) throws IOException {
+        Reader reader = new InputStreamReader(in, charset != null ? charset : StandardCharsets.UTF_8);
+        AvailabilityScanner.Result result;
+        if (readState) {
+            // Listing state of this event is exact, so it wins over any phrase seen on the way to it
+            PageStateExtractor extractor = new PageStateExtractor(scanner);
+            PageStateExtractor.State state = extractor.extract(reader, eventKey);
+            if (state != null) {
+                Log.d(TAG, "Page state reports " + state);
+                ListingSnapshot listings = state.getListings();
+                return new PageResult(state.isAvailable(), state.getFingerprint(), listings,
+                        listings != null ? listings.lowestPrice() : ListingSnapshot.UNKNOWN_PRICE);
+            }
+            result = extractor.getTextResult();
+        } else {
+            result = scanner.scan(reader);
+        }
+        
+        if (result.getPhrase() != null) {
+            Log.d(TAG, "Matched " + (result.isAvailable() ? "positive" : "negative") + " phrase \""
+                    + result.getPhrase() + "\" at text offset " + result.getOffset());
+        }
+        return new PageResult(result.isAvailable(), result.getFingerprint(), null, ListingSnapshot.UNKNOWN_PRICE);
+    }
+    
+    /**
+     * Whether a URL is checked for Tixel's own notion of availability. URLs with
+     * their own phrases are always checked against the page text.
+     */
+    private static boolean usesDefaultPhrases(MonitoredUrl url) {
+        return url.getPositivePhrases() == null && url.getNegativePhrases() == null;
+    }
+    
+    /**
+     * Records a check result for one URL and notifies the user if tickets appeared
+     */
+    private void applyResult(MonitoredUrl url, PageResult result) {
+        boolean previousStatus = url.hasTicketsFound();
+        boolean currentStatus = result.available;
+        long fingerprint = result.fingerprint;
+        String statusMessage;
+        
+        // Prices are charted and checked against the target even when nothing else changed;
+        // PriceHistory only writes a steady price once per sampling interval
+        if (result.lowestPrice != ListingSnapshot.UNKNOWN_PRICE) {
+            recordPrice(url, result.lowestPrice);
+        }
+        
+        if (fingerprint != 0 && fingerprint == url.getContentFingerprint()) {
+            // Same visible text as the last evaluated page, so the outcome cannot have changed
+            int unchanged = recordUnchangedCheck(url.getId());
+            Log.d(TAG, "Page content unchanged for URL ID " + url.getId() + " (" + unchanged
+                    + " checks in a row), skipping evaluation");
+            return;
+        }
+        resetUnchangedChecks(url.getId());
+        
+        if (currentStatus) {
+            statusMessage = "Tickets are now available for " + 
+                (url.hasEventDetails() ? url.getEventName() : "your monitored event");
+            Log.d(TAG, "Found tickets available in the page content!");
+        } else {
+            statusMessage = "No tickets available for " + 
+                (url.hasEventDetails() ? url.getEventName() : "your monitored event");
+            Log.d(TAG, "No tickets available text found in the page content.");
+        }
+        
+        Log.d(TAG, "Ticket status for URL " + url.getId() + ": " + statusMessage);
+        
+        // Update last checked timestamp and status
+        CheckResultWriter writer = CheckResultWriter.getInstance(context);
+        long currentTime = System.currentTimeMillis();
+        if (fingerprint != 0) {
+            writer.updateLastChecked(url.getId(), currentTime, currentStatus, fingerprint);
+        } else {
+            writer.updateLastChecked(url.getId(), currentTime, currentStatus);
+        }
+        
+        if (currentStatus != previousStatus) {
+            recordStatusChange(url.getId(), currentTime);
+        }
+        
+        int newListings = 0;
+        String newListingsMessage = null;
+        if (result.listings != null) {
+            ListingSnapshot previous = writer.getListingSnapshot(url.getId());
+            if (previous != null) {
+                int[] newIndices = new int[result.listings.size()];
+                newListings = result.listings.diff(previous, newIndices);
+                if (newListings > 0) {
+                    newListingsMessage = describeNewListings(url, result.listings, newIndices, newListings);
+                }
+            }
+            // Queued, so the listings count as seen only once the history entry is stored with them
+            writer.updateListingSnapshot(url.getId(), result.listings);
+        }
+        
+        // If status changed from unavailable to available, notify user
+        if (currentStatus && !previousStatus) {
+            // Create history entry, stored right away since this is what the user is waiting for
+            writer.addTicketHistory(url.getId(), currentTime, statusMessage);
+            writer.flush();
+            
+            // Send notification, even if the history could not be stored
+            sendTicketAvailableNotification(url, statusMessage);
+        } else if (currentStatus && newListings > 0) {
+            // Still available, but with listings we have not seen before
+            Log.d(TAG, newListings + " new listings for URL ID " + url.getId());
+            writer.addTicketHistory(url.getId(), currentTime, newListingsMessage);
+            writer.flush();
+            sendTicketAvailableNotification(url, newListingsMessage);
+        }
+    }
+    
+    /**
+     * Appends a price to the URL's history and alerts if it just reached the target price
+     */
+    private void recordPrice(MonitoredUrl url, long price) {
+        long now = System.currentTimeMillis();
+        if (PriceHistory.getInstance(context).append(url, now, price)) {
+            String message = "Tickets for " + (url.hasEventDetails() ? url.getEventName() : "your monitored event")
+                    + " now from " + formatPrice(price) + ", at or below your target of "
+                    + formatPrice(url.getTargetPrice());
+            CheckResultWriter writer = CheckResultWriter.getInstance(context);
+            writer.addTicketHistory(url.getId(), now, message);
+            writer.flush();
+            sendTicketAvailableNotification(url, message);
+        }
+    }
+    
+    static String formatPrice(long cents) {
+        return String.format(Locale.getDefault(), "%d.%02d", cents / 100, cents % 100);
+    }
+    
+    /**
+     * Message announcing listings that were not in the previous snapshot
+     */
+    private static String describeNewListings(MonitoredUrl url, ListingSnapshot listings, int[] newIndices,
+            int count) {
+        StringBuilder message = new StringBuilder();
+        message.append(count).append(count == 1 ? " new listing for " : " new listings for ")
+                .append(url.hasEventDetails() ? url.getEventName() : "your monitored event");
+        long lowest = listings.lowestPrice(newIndices, count);
+        if (lowest != ListingSnapshot.UNKNOWN_PRICE) {
+            message.append(" from ").append(formatPrice(lowest));
+        }
+        return message.toString();
+    }
+    
+    /**
+     * Records a failed check without changing the URL's availability status.
+     * Only the first failure in a row gets a history entry, so an outage
+     * does not fill the history with one row per retry.
+     */
+    private void recordError(MonitoredUrl url, String statusMessage) {
+        int failures = RetryBackoff.recordFailure(context, url.getId());
+        
+        // Update last checked timestamp but don't change availability status
+        CheckResultWriter writer = CheckResultWriter.getInstance(context);
+        writer.updateLastChecked(url.getId(), System.currentTimeMillis(), url.hasTicketsFound());
+        writer.recordCheck(url.getId(), System.currentTimeMillis(), true, false, 0);
+        
+        // Add history entry for the error
+        if (failures == 1) {
+            writer.addErrorHistory(url.getId(), System.currentTimeMillis(), statusMessage);
+        }
+    }
+    
+    /**
+     * Counts a check whose page was identical to the last evaluated one
+     * 
+     * @return Number of consecutive unchanged checks for the URL
+     */
+    private static synchronized int recordUnchangedCheck(long urlId) {
+        Integer count = unchangedChecks.get(urlId);
+        int updated = count == null ? 1 : count + 1;
+        unchangedChecks.put(urlId, updated);
+        return updated;
+    }
+    
+    private static synchronized void resetUnchangedChecks(long urlId) {
+        unchangedChecks.remove(urlId);
+    }
+    
+    /**
+     * Number of consecutive checks that found the URL's page unchanged since
+     * it was last evaluated in this process
+     */
+    public static synchronized int getUnchangedCheckCount(long urlId) {
+        Integer count = unchangedChecks.get(urlId);
+        return count == null ? 0 : count;
+    }
+    
+    private static synchronized void recordStatusChange(long urlId, long timestamp) {
+        statusChanges.put(urlId, timestamp);
+    }
+    
+    /**
+     * When the URL's availability status last changed in this process, or 0 if it has not
+     */
+    public static synchronized long getLastStatusChange(long urlId) {
+        Long timestamp = statusChanges.get(urlId);
+        return timestamp == null ? 0 : timestamp;
+    }
+    
+    /**
+     * Send notification to user that tickets are available
+     * 
+     * @param url The URL that has tickets available
+     * @param message The notification message to display
+     */
+    private void sendTicketAvailableNotification(MonitoredUrl url, String message) {
+        // Create intent to open the app when notification is clicked
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, intent, 
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        
+        // Build notification
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, TicketMonitorService.CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.ic_dialog_info)
+                .setContentTitle("Tickets Available!")
+                .setContentText(message)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .setContentIntent(pendingIntent)
+                .setAutoCancel(true);
+        
+        // Show notification
+        NotificationManager notificationManager = 
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        
+        notificationManager.notify((int) url.getId(), builder.build());
+        Log.d(TAG, "Notification sent for URL ID: " + url.getId());
+    }
+
+    /**
+     * A page as checked with one set of phrases; URLs with equal targets share fetches
+     */
+    private static final class Target {
+        final String canonicalUrl;
+        final PhraseSet phrases;
+
+        Target(String canonicalUrl, PhraseSet phrases) {
+            this.canonicalUrl = canonicalUrl;
+            this.phrases = phrases;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Target)) {
+                return false;
+            }
+            Target other = (Target) o;
+            return canonicalUrl.equals(other.canonicalUrl) && phrases.equals(other.phrases);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * canonicalUrl.hashCode() + phrases.hashCode();
+        }
+    }
+
+    /**
+     * Outcome of one fetch, shared by every URL with the same target
+     */
+    private static final class PageResult {
+        final boolean available;
+        final long fingerprint;
+        final ListingSnapshot listings;
+        final long lowestPrice;
+        private final Set<Long> appliedTo = new HashSet<>();
+
+        PageResult(boolean available, long fingerprint, ListingSnapshot listings, long lowestPrice) {
+            this.available = available;
+            this.fingerprint = fingerprint;
+            this.listings = listings;
+            this.lowestPrice = lowestPrice;
+        }
+
+        /**
+         * Claims the result for a URL, returning false if it was already recorded for it
+         */
+        synchronized boolean markApplied(long urlId) {
+            return appliedTo.add(urlId);
+        }
+    }
+}
@@ -1,138 +1,140 @@
 package com.example.tixelcheck;
 
-import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 
+import java.util.List;
+import java.util.Random;
+
 public class TicketCheckerAlarm extends BroadcastReceiver {
     private static final String TAG = "TicketCheckerAlarm";
     
+    // Checks due within this long are rescheduled rather than retried straight away
+    private static final long RETRY_DELAY_MS = 60 * 1000;
+    
+    private static final Random random = new Random();
+    
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.d(TAG, "Alarm received - checking for tickets");
         
-        // Extract URL ID from intent
-        long urlId = intent.getLongExtra("url_id", -1);
+        // The scheduler reads the database, so keep that off the main thread
+        PendingResult pendingResult = goAsync();
+        new Thread(() -> {
+            try {
+                CheckScheduler scheduler = CheckScheduler.getInstance(context);
+                long now = System.currentTimeMillis();
+                long scheduledFor = scheduler.getNextDueTime();
+                EngineStats.recordWakeup(CheckEngine.ALARM, scheduledFor > 0 ? Math.max(0, now - scheduledFor) : -1);
+                List<Long> due = scheduler.pollDue(now + CheckSweep.DUE_WINDOW_MS);
+                if (!due.isEmpty()) {
+                    startSweep(context, scheduler, due);
+                }
+                
+                // Arm the alarm for whatever is due next
+                scheduler.rearm();
+            } finally {
+                pendingResult.finish();
+            }
+        }).start();
+    }
+    
+    /**
+     * Starts the TicketMonitorService to check every due URL in one sweep
+     */
+    private static void startSweep(Context context, CheckScheduler scheduler, List<Long> due) {
+        long[] urlIds = new long[due.size()];
+        for (int i = 0; i < urlIds.length; i++) {
+            urlIds[i] = due.get(i);
+        }
+        Intent serviceIntent = new Intent(context, TicketMonitorService.class);
+        serviceIntent.putExtra(TicketMonitorService.EXTRA_URL_IDS, urlIds);
         
-        if (urlId != -1) {
-            // Start the TicketMonitorService to check for tickets
-            Intent serviceIntent = new Intent(context, TicketMonitorService.class);
-            serviceIntent.putExtra("url_id", urlId);
-            
-            // Start the service to check for tickets
+        try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
                 context.startForegroundService(serviceIntent);
             } else {
                 context.startService(serviceIntent);
             }
-            
-            // Re-schedule the alarm for the next check
-            UrlDatabase database = UrlDatabase.getInstance(context);
-            MonitoredUrl url = database.getUrlById(urlId);
-            
-            if (url != null && url.isActive()) {
-                setAlarm(context, url);
-                Log.d(TAG, "Rescheduled alarm for URL ID: " + urlId);
+            Log.d(TAG, "Started sweep for " + urlIds.length + " due URLs");
+        } catch (IllegalStateException e) {
+            // Service start not allowed right now; put the URLs back for a later wakeup
+            Log.e(TAG, "Could not start sweep, retrying later", e);
+            long retryAt = System.currentTimeMillis() + RETRY_DELAY_MS;
+            for (long urlId : urlIds) {
+                scheduler.scheduleAt(urlId, retryAt);
             }
-        } else {
-            Log.e(TAG, "Received alarm with invalid URL ID");
         }
     }
     
     /**
-     * Sets an alarm to check the given URL at the specified frequency
+     * Schedules the next check of the given URL one polling interval from now,
+     * using whichever CheckEngine is selected
      * 
      * @param context Application context
      * @param url The MonitoredUrl to check
      */
     public static void setAlarm(Context context, MonitoredUrl url) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) return;
-        
-        Intent intent = new Intent(context, TicketCheckerAlarm.class);
-        intent.putExtra("url_id", url.getId());
-        
-        // Generate a unique ID for this alarm based on the URL ID
-        int requestCode = (int) url.getId();
-        
-        // Create a pending intent that will trigger our BroadcastReceiver
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            context, 
-            requestCode, 
-            intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        // Convert frequency from minutes to milliseconds
-        long intervalMillis = url.getFrequency() * 60 * 1000;
-        
-        // Schedule the alarm to trigger
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            alarmManager.setExactAndAllowWhileIdle(
-                AlarmManager.RTC_WAKEUP,
-                System.currentTimeMillis() + intervalMillis,
-                pendingIntent
-            );
+        if (CheckEngine.usesWorkManager(context)) {
+            WorkCheckScheduler.schedule(context, url);
         } else {
-            alarmManager.setExact(
-                AlarmManager.RTC_WAKEUP,
-                System.currentTimeMillis() + intervalMillis,
-                pendingIntent
-            );
+            CheckScheduler.getInstance(context).schedule(url);
         }
+        Log.d(TAG, "Scheduled next check for URL ID: " + url.getId());
+    }
+    
+    /**
+     * Time between checks of the given URL according to the adaptive polling policy,
+     * stretched with jittered backoff after failed checks
+     * 
+     * @param context Application context
+     * @param url The MonitoredUrl to check
+     * @return Interval in milliseconds
+     */
+    public static long getCheckIntervalMillis(Context context, MonitoredUrl url) {
+        return getCheckIntervalMillis(context, url.getId(), url.getFrequency(), url.getEventDate());
+    }
+    
+    /**
+     * Same as getCheckIntervalMillis(Context, MonitoredUrl), from the scheduling columns alone
+     */
+    static long getCheckIntervalMillis(Context context, long urlId, int frequency, String eventDate) {
+        long interval = AdaptivePollingPolicy.intervalMs(frequency,
+                AdaptivePollingPolicy.parseEventDate(eventDate),
+                TicketChecker.getUnchangedCheckCount(urlId),
+                TicketChecker.getLastStatusChange(urlId),
+                System.currentTimeMillis());
         
-        Log.d(TAG, "Alarm set for URL ID: " + url.getId() + " to trigger in " + url.getFrequency() + " minutes");
+        // Back off while checks of this URL keep failing
+        int failures = RetryBackoff.getFailureCount(context, urlId);
+        return failures > 0 ? AdaptivePollingPolicy.retryIntervalMs(interval, failures, random) : interval;
     }
     
     /**
-     * Cancels the alarm for the given URL
+     * Cancels the scheduled checks for the given URL
      * 
      * @param context Application context
      * @param url The MonitoredUrl to cancel
      */
     public static void cancelAlarm(Context context, MonitoredUrl url) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) return;
-        
-        Intent intent = new Intent(context, TicketCheckerAlarm.class);
-        int requestCode = (int) url.getId();
-        
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            context, 
-            requestCode, 
-            intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        alarmManager.cancel(pendingIntent);
-        Log.d(TAG, "Alarm canceled for URL ID: " + url.getId());
+        cancelAlarm(context, url.getId());
     }
     
     /**
-     * Cancels the alarm with the given URL ID
+     * Cancels the scheduled checks for the URL with the given ID
      * 
      * @param context Application context
      * @param urlId The ID of the MonitoredUrl to cancel
      */
     public static void cancelAlarm(Context context, long urlId) {
-        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-        if (alarmManager == null) return;
-        
-        Intent intent = new Intent(context, TicketCheckerAlarm.class);
-        int requestCode = (int) urlId;
-        
-        PendingIntent pendingIntent = PendingIntent.getBroadcast(
-            context, 
-            requestCode, 
-            intent, 
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        alarmManager.cancel(pendingIntent);
-        Log.d(TAG, "Alarm canceled for URL ID: " + urlId);
+        if (CheckEngine.usesWorkManager(context)) {
+            WorkCheckScheduler.cancel(context, urlId);
+        } else {
+            CheckScheduler.getInstance(context).cancel(urlId);
+        }
+        Log.d(TAG, "Canceled checks for URL ID: " + urlId);
     }
-}
\ No newline at end of file
+}
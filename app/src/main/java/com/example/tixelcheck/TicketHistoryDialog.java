@@ -2,6 +2,8 @@ package com.example.tixelcheck;
 
 import android.app.Dialog;
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,16 +11,21 @@ import android.view.Window;
 import android.widget.Button;
 import android.widget.TextView;
 
-import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Dialog to show ticket availability history for a URL
  */
 public class TicketHistoryDialog {
+    // Range of recorded prices summarised above the history
+    private static final long PRICE_RANGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final ExecutorService priceLoader = Executors.newSingleThreadExecutor();
+
     private final Context context;
     private final MonitoredUrl url;
     
@@ -37,6 +44,7 @@ public class TicketHistoryDialog {
         // Initialize UI elements
         TextView titleText = view.findViewById(R.id.text_dialog_title);
         TextView eventDetailsText = view.findViewById(R.id.text_event_details);
+        TextView priceSummaryText = view.findViewById(R.id.text_price_summary);
         RecyclerView recyclerView = view.findViewById(R.id.recycler_view_history);
         Button closeButton = view.findViewById(R.id.button_close);
         
@@ -55,24 +63,23 @@ public class TicketHistoryDialog {
             eventDetailsText.setVisibility(View.GONE);
         }
         
-        // Get history entries from database
-        List<TicketHistoryEntry> historyEntries = UrlDatabase.getInstance(context).getTicketHistory(url.getId());
+        loadPriceSummary(priceSummaryText);
         
-        // Set up recycler view
+        // Set up recycler view, loading history a page at a time
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
-        
-        if (historyEntries.isEmpty()) {
+        UrlDatabase database = UrlDatabase.getInstance(context);
+        HistoryAdapter adapter = new HistoryAdapter(R.layout.item_history_entry,
+                (after, limit) -> database.getTicketHistoryPage(url.getId(), after, limit));
+        adapter.setOnEmpty(() -> {
             // Show message if no history entries
             TextView emptyText = new TextView(context);
             emptyText.setText("No ticket history found. Tickets haven't been detected yet.");
             emptyText.setPadding(16, 16, 16, 16);
             ((ViewGroup) recyclerView.getParent()).addView(emptyText);
             recyclerView.setVisibility(View.GONE);
-        } else {
-            // Set adapter with history entries
-            HistoryAdapter adapter = new HistoryAdapter(historyEntries);
-            recyclerView.setAdapter(adapter);
-        }
+        });
+        recyclerView.setAdapter(adapter);
+        adapter.loadMore();
         
         // Set up close button
         closeButton.setOnClickListener(v -> dialog.dismiss());
@@ -82,44 +89,34 @@ public class TicketHistoryDialog {
     }
     
     /**
-     * Adapter for history entries
+     * Shows the latest and lowest cheapest-listing price of the last week, if any were recorded
      */
-    private class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
-        private final List<TicketHistoryEntry> historyEntries;
-        
-        public HistoryAdapter(List<TicketHistoryEntry> historyEntries) {
-            this.historyEntries = historyEntries;
-        }
-        
-        @NonNull
-        @Override
-        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-            View view = LayoutInflater.from(parent.getContext())
-                    .inflate(R.layout.item_history_entry, parent, false);
-            return new ViewHolder(view);
-        }
-        
-        @Override
-        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-            TicketHistoryEntry entry = historyEntries.get(position);
-            holder.timestampText.setText(entry.getFormattedTimestamp());
-            holder.noteText.setText(entry.getNote());
-        }
-        
-        @Override
-        public int getItemCount() {
-            return historyEntries.size();
-        }
-        
-        public class ViewHolder extends RecyclerView.ViewHolder {
-            public final TextView timestampText;
-            public final TextView noteText;
-            
-            public ViewHolder(View view) {
-                super(view);
-                timestampText = view.findViewById(R.id.text_timestamp);
-                noteText = view.findViewById(R.id.text_note);
+    private void loadPriceSummary(TextView priceSummaryText) {
+        PriceHistory priceHistory = PriceHistory.getInstance(context);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        long urlId = url.getId();
+        priceLoader.execute(() -> {
+            long now = System.currentTimeMillis();
+            PriceSeries.Points points = priceHistory.getRange(urlId, now - PRICE_RANGE_MS, now);
+            String summary = formatPriceSummary(points);
+            if (summary != null) {
+                mainHandler.post(() -> {
+                    priceSummaryText.setText(summary);
+                    priceSummaryText.setVisibility(View.VISIBLE);
+                });
             }
+        });
+    }
+    
+    static String formatPriceSummary(PriceSeries.Points points) {
+        if (points.size() == 0) {
+            return null;
+        }
+        long lowest = Long.MAX_VALUE;
+        for (int i = 0; i < points.size(); i++) {
+            lowest = Math.min(lowest, points.getPrice(i));
         }
+        return "Cheapest now " + TicketChecker.formatPrice(points.getPrice(points.size() - 1))
+                + ", lowest this week " + TicketChecker.formatPrice(lowest);
     }
-}
\ No newline at end of file
+}
@@ -8,16 +8,36 @@ import java.util.Locale;
  * Represents a historical record of when tickets were found
  */
 public class TicketHistoryEntry {
+    public static final int KIND_EVENT = 0;
+    // Failed checks, which HistoryRetention rolls up and expires
+    public static final int KIND_ERROR = 1;
+    
     private long id;
     private long urlId;
     private long timestamp;
     private String note;
+    private int kind;
+    private int repeatCount;
+    private long firstTimestamp;
     
     public TicketHistoryEntry(long id, long urlId, long timestamp, String note) {
+        this(id, urlId, timestamp, note, KIND_EVENT, 1, timestamp);
+    }
+    
+    /**
+     * @param timestamp Time of the latest occurrence
+     * @param repeatCount Number of identical consecutive entries rolled up into this one
+     * @param firstTimestamp Time of the first of them
+     */
+    public TicketHistoryEntry(long id, long urlId, long timestamp, String note, int kind,
+            int repeatCount, long firstTimestamp) {
         this.id = id;
         this.urlId = urlId;
         this.timestamp = timestamp;
         this.note = note;
+        this.kind = kind;
+        this.repeatCount = repeatCount;
+        this.firstTimestamp = firstTimestamp;
     }
     
     public long getId() {
@@ -36,12 +56,32 @@ public class TicketHistoryEntry {
         return note;
     }
     
+    public int getKind() {
+        return kind;
+    }
+    
+    public boolean isError() {
+        return kind == KIND_ERROR;
+    }
+    
+    public int getRepeatCount() {
+        return repeatCount;
+    }
+    
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+    
     /**
      * Gets formatted timestamp string in format "DD/MM/YYYY, HH:MMam/pm"
      */
     public String getFormattedTimestamp() {
+        return format(timestamp);
+    }
+    
+    private static String format(long time) {
         SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy, hh:mma", Locale.getDefault());
-        return sdf.format(new Date(timestamp));
+        return sdf.format(new Date(time));
     }
     
     /**
@@ -52,9 +92,12 @@ public class TicketHistoryEntry {
     }
     
     /**
-     * Alias for getNote() - used by HistoryAdapter
+     * The note, with how often and since when it repeated if it was rolled up
      */
     public String getMessage() {
-        return getNote();
+        if (repeatCount <= 1) {
+            return getNote();
+        }
+        return getNote() + " (" + repeatCount + " times since " + format(firstTimestamp) + ")";
     }
 }
\ No newline at end of file
@@ -0,0 +1,437 @@
+package com.example.tixelcheck;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Typed client for the Tixel availability API at Config.API_BASE_URL.
+ *
+ * An event's availability is a few dozen bytes of JSON instead of a full HTML
+ * page, and responses are parsed with a streaming reader that skips every
+ * field it does not need. Several events can be fetched with one batch
+ * request; if the server does not offer the batch endpoint the client
+ * remembers that and fetches events one at a time. Events the API does not
+ * know are reported as null so the caller can fall back to scraping the page,
+ * and are not asked about again for a while, since an event may be listed later.
+ */
+public class TixelApiClient {
+    private static final String TIXEL_DOMAIN = "tixel.com";
+    private static final String EVENTS_PATH = "v1/events";
+    private static final String AVAILABILITY_SEGMENT = "availability";
+
+    private static final int HTTP_NOT_FOUND = 404;
+    private static final int HTTP_BAD_METHOD = 405;
+    private static final int HTTP_NOT_IMPLEMENTED = 501;
+
+    // Slugs per batch request, keeping the query string well under URL length limits
+    static final int MAX_BATCH_SIZE = 50;
+
+    // Prefetched results are used by checks within this long
+    static final long PREFETCH_REUSE_MS = 60 * 1000;
+
+    // Events the API did not know are scraped for this long before asking again
+    static final long UNKNOWN_SLUG_TTL_MS = 30 * 60 * 1000;
+
+    private static TixelApiClient instance;
+
+    private final OkHttpClient client;
+    private final HttpUrl baseUrl;
+    private final long unknownSlugTtlMs;
+    private volatile boolean batchSupported = true;
+    // Slug to the time until which it counts as unknown
+    private final Map<String, Long> unknownSlugs = new HashMap<>();
+    private final Map<String, Prefetched> prefetched = new HashMap<>();
+
+    public static synchronized TixelApiClient getInstance() {
+        if (instance == null) {
+            instance = new TixelApiClient(TixelHttpClient.getInstance().getClient(),
+                    HttpUrl.get(Config.API_BASE_URL));
+        }
+        return instance;
+    }
+
+    TixelApiClient(OkHttpClient client, HttpUrl baseUrl) {
+        this(client, baseUrl, UNKNOWN_SLUG_TTL_MS);
+    }
+
+    TixelApiClient(OkHttpClient client, HttpUrl baseUrl, long unknownSlugTtlMs) {
+        this.client = client;
+        this.baseUrl = baseUrl;
+        this.unknownSlugTtlMs = unknownSlugTtlMs;
+    }
+
+    /**
+     * Host the API is served from, for circuit breaking
+     */
+    public String getHost() {
+        return baseUrl.host();
+    }
+
+    /**
+     * Event slug of a Tixel event page, i.e. its last path segment, or null if
+     * the URL is not a Tixel page
+     */
+    public static String eventSlug(String pageUrl) {
+        HttpUrl url = HttpUrl.parse(pageUrl);
+        if (url == null) {
+            url = HttpUrl.parse("https://" + pageUrl);
+        }
+        if (url == null) {
+            return null;
+        }
+        String host = url.host();
+        if (!host.equals(TIXEL_DOMAIN) && !host.endsWith("." + TIXEL_DOMAIN)) {
+            return null;
+        }
+        List<String> segments = url.pathSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (!segments.get(i).isEmpty()) {
+                // Bare country or section pages are not events
+                return i > 0 ? segments.get(i) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * False once the server has shown it has no batch endpoint
+     */
+    public boolean isBatchSupported() {
+        return batchSupported;
+    }
+
+    /**
+     * Whether the API has recently answered that it does not know the event
+     */
+    public synchronized boolean isKnownUnknown(String slug) {
+        Long until = unknownSlugs.get(slug);
+        if (until == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() >= until) {
+            unknownSlugs.remove(slug);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Availability of one event, from a recent prefetch if there is one
+     *
+     * @return The availability, or null if the API does not know the event
+     * @throws IOException If the request failed or the response was malformed
+     */
+    public Availability getAvailability(String slug) throws IOException {
+        synchronized (this) {
+            Prefetched entry = prefetched.remove(slug);
+            if (entry != null && System.currentTimeMillis() - entry.fetchedAt < PREFETCH_REUSE_MS) {
+                return entry.availability;
+            }
+            if (isKnownUnknown(slug)) {
+                return null;
+            }
+        }
+
+        HttpUrl url = baseUrl.newBuilder()
+                .addPathSegments(EVENTS_PATH)
+                .addPathSegment(slug)
+                .addPathSegment(AVAILABILITY_SEGMENT)
+                .build();
+        try (Response response = execute(url)) {
+            if (response.code() == HTTP_NOT_FOUND) {
+                markUnknown(slug);
+                return null;
+            }
+            checkStatus(response);
+            return parse(response, TixelApiClient::readAvailability);
+        }
+    }
+
+    /**
+     * Fetches availability of many events ahead of their checks, in as few
+     * requests as the server allows. Results are held briefly for
+     * getAvailability(). Events missing from a batch response are left to
+     * their own request, since only a 404 for the event says the API does not know it.
+     *
+     * @return Number of events whose availability was fetched
+     * @throws IOException If a request failed or a response was malformed
+     */
+    public int prefetch(Collection<String> slugs) throws IOException {
+        List<String> pending = new ArrayList<>();
+        synchronized (this) {
+            for (String slug : new LinkedHashSet<>(slugs)) {
+                if (!isKnownUnknown(slug)) {
+                    pending.add(slug);
+                }
+            }
+        }
+        if (pending.size() < 2 || !batchSupported) {
+            // A batch of one costs the same as the check's own request
+            return 0;
+        }
+
+        int fetched = 0;
+        for (int start = 0; start < pending.size(); start += MAX_BATCH_SIZE) {
+            List<String> batch = pending.subList(start, Math.min(start + MAX_BATCH_SIZE, pending.size()));
+            Map<String, Availability> results = fetchBatch(batch);
+            if (results == null) {
+                return fetched;
+            }
+            long now = System.currentTimeMillis();
+            synchronized (this) {
+                for (String slug : batch) {
+                    Availability availability = results.get(slug);
+                    if (availability != null) {
+                        prefetched.put(slug, new Prefetched(availability, now));
+                        fetched++;
+                    }
+                }
+            }
+        }
+        return fetched;
+    }
+
+    /**
+     * One batch request, or null if the server has no batch endpoint
+     */
+    private Map<String, Availability> fetchBatch(List<String> slugs) throws IOException {
+        StringBuilder joined = new StringBuilder();
+        for (String slug : slugs) {
+            if (joined.length() > 0) {
+                joined.append(',');
+            }
+            joined.append(slug);
+        }
+        HttpUrl url = baseUrl.newBuilder()
+                .addPathSegments(EVENTS_PATH)
+                .addPathSegment(AVAILABILITY_SEGMENT)
+                .addQueryParameter("slugs", joined.toString())
+                .build();
+        try (Response response = execute(url)) {
+            int code = response.code();
+            if (code == HTTP_NOT_FOUND || code == HTTP_BAD_METHOD || code == HTTP_NOT_IMPLEMENTED) {
+                batchSupported = false;
+                return null;
+            }
+            checkStatus(response);
+            return parse(response, TixelApiClient::readBatch);
+        }
+    }
+
+    private Response execute(HttpUrl url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .header("Accept", "application/json")
+                .header("User-Agent", TixelHttpClient.USER_AGENT)
+                .get()
+                .build();
+        return client.newCall(request).execute();
+    }
+
+    private static void checkStatus(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Unexpected HTTP status " + response.code() + " for " + response.request().url());
+        }
+    }
+
+    /**
+     * Reads a response body, reporting one of unexpected shape like any other bad response
+     */
+    private static <T> T parse(Response response, Parser<T> parser) throws IOException {
+        try (JsonReader reader = new JsonReader(response.body().charStream())) {
+            return parser.parse(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            // Thrown by JsonReader for a value of the wrong type, such as a string where a number belongs
+            throw new IOException("Malformed response from " + response.request().url(), e);
+        }
+    }
+
+    private interface Parser<T> {
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    private synchronized void markUnknown(String slug) {
+        unknownSlugs.put(slug, System.currentTimeMillis() + unknownSlugTtlMs);
+    }
+
+    /**
+     * Parses {"events": [ {...}, ... ]}, keyed by slug
+     */
+    static Map<String, Availability> readBatch(JsonReader reader) throws IOException {
+        Map<String, Availability> results = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("events") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Availability availability = readAvailability(reader);
+                    if (availability.getSlug() != null) {
+                        results.put(availability.getSlug(), availability);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return results;
+    }
+
+    /**
+     * Parses {"slug": "...", "available": true, "listing_count": 3, "lowest_price": 12900},
+     * skipping any other fields
+     */
+    static Availability readAvailability(JsonReader reader) throws IOException {
+        String slug = null;
+        Boolean available = null;
+        int listingCount = 0;
+        long lowestPrice = -1;
+        ListingSnapshot.Builder snapshot = null;
+        boolean listingWithoutId = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "slug":
+                    slug = reader.nextString();
+                    break;
+                case "available":
+                    available = reader.nextBoolean();
+                    break;
+                case "listing_count":
+                    listingCount = reader.nextInt();
+                    break;
+                case "lowest_price":
+                    lowestPrice = reader.nextLong();
+                    break;
+                case "listings":
+                    snapshot = new ListingSnapshot.Builder();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            listingWithoutId = true;
+                        } else if (!ListingSnapshot.readListing(reader, snapshot)) {
+                            listingWithoutId = true;
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (available == null) {
+            // An answer without the one field we need is no answer
+            throw new IOException("Availability response without \"available\" field");
+        }
+        ListingSnapshot listings = snapshot != null && !listingWithoutId ? snapshot.build() : null;
+        return new Availability(slug, available, listingCount, lowestPrice, listings);
+    }
+
+    /**
+     * Listing availability of one event as reported by the API
+     */
+    public static final class Availability {
+        private final String slug;
+        private final boolean available;
+        private final int listingCount;
+        private final long lowestPrice;
+        private final ListingSnapshot listings;
+
+        Availability(String slug, boolean available, int listingCount, long lowestPrice,
+                ListingSnapshot listings) {
+            this.slug = slug;
+            this.available = available;
+            this.listingCount = listingCount;
+            this.lowestPrice = lowestPrice;
+            this.listings = listings;
+        }
+
+        public String getSlug() {
+            return slug;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public int getListingCount() {
+            return listingCount;
+        }
+
+        /**
+         * Lowest listed price in cents, or -1 if not reported
+         */
+        public long getLowestPrice() {
+            return lowestPrice;
+        }
+
+        /**
+         * The individual listings, or null if the response did not include them
+         */
+        public ListingSnapshot getListings() {
+            return listings;
+        }
+
+        /**
+         * Fingerprint of everything a check evaluates, so an unchanged answer
+         * is recognised the same way as an unchanged page
+         */
+        public long getFingerprint() {
+            XxHash64 hash = new XxHash64();
+            hash.update((byte) (available ? 1 : 0));
+            for (int shift = 0; shift < 32; shift += 8) {
+                hash.update((byte) (listingCount >>> shift));
+            }
+            for (int shift = 0; shift < 64; shift += 8) {
+                hash.update((byte) (lowestPrice >>> shift));
+            }
+            if (listings != null) {
+                listings.hashInto(hash);
+            }
+            long fingerprint = hash.digest();
+            // 0 means "no fingerprint" in the database
+            return fingerprint != 0 ? fingerprint : 1;
+        }
+
+        @Override
+        public String toString() {
+            return "Availability{slug=" + slug + ", available=" + available
+                    + ", listings=" + listingCount + ", lowestPrice=" + lowestPrice + "}";
+        }
+    }
+
+    private static final class Prefetched {
+        final Availability availability;
+        final long fetchedAt;
+
+        Prefetched(Availability availability, long fetchedAt) {
+            this.availability = availability;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
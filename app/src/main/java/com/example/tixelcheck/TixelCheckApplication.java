@@ -6,6 +6,7 @@ public class TixelCheckApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
-        // Initialize any app-wide components here
+        // Keep ticket history trimmed whichever check engine is in use
+        HistoryRetentionWorker.schedule(this);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package com.example.tixelcheck;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Process-wide HTTP client shared by every ticket check.
+ *
+ * All monitored URLs live on the same Tixel host, so a single client keeps
+ * its connections alive between polls instead of paying for DNS, TCP and a
+ * full TLS handshake on every check. HTTP/2 is negotiated when the server
+ * offers it, letting concurrent checks multiplex over one connection, and
+ * the shared socket factory lets new connections resume earlier TLS sessions.
+ * A HostLimiter caps how many requests go to the host at once and how fast.
+ */
+public class TixelHttpClient {
+    static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/91.0.4472.124 Safari/537.36";
+    static final int CONNECTION_TIMEOUT = 15000; // 15 seconds
+
+    // Idle connections outlive the longest common polling interval (1-2 minutes)
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
+    // Per-host limits; a sweep may run several checks against the same host at once
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final double REQUESTS_PER_SECOND = 2.0;
+    private static final int REQUEST_BURST = 4;
+    private static final long MAX_QUEUE_WAIT_MS = CONNECTION_TIMEOUT;
+
+    private static TixelHttpClient instance;
+
+    private final OkHttpClient client;
+
+    public static synchronized TixelHttpClient getInstance() {
+        if (instance == null) {
+            instance = new TixelHttpClient(newClientBuilder().build());
+        }
+        return instance;
+    }
+
+    TixelHttpClient(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Creates a builder with the pooling, protocol and timeout settings used in production.
+     * Tests start from this builder so they exercise the same configuration.
+     */
+    static OkHttpClient.Builder newClientBuilder() {
+        return new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                .readTimeout(CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                .callTimeout(CONNECTION_TIMEOUT * 2, TimeUnit.MILLISECONDS)
+                .followRedirects(true)
+                .followSslRedirects(true)
+                .retryOnConnectionFailure(true)
+                .addInterceptor(new HostLimiter(MAX_REQUESTS_PER_HOST, REQUESTS_PER_SECOND,
+                        REQUEST_BURST, MAX_QUEUE_WAIT_MS));
+    }
+
+    /**
+     * Performs a GET request for the given URL on a pooled connection.
+     * The caller owns the returned response and must close it.
+     *
+     * @param url The page to fetch
+     * @return The response, which may have a non-2xx status code
+     * @throws IOException If the request could not be executed
+     */
+    public Response get(String url) throws IOException {
+        return get(url, null, null);
+    }
+
+    /**
+     * Performs a conditional GET using the validators from the previous response.
+     * A 304 status means the page is unchanged and the response has no body.
+     *
+     * @param url The page to fetch
+     * @param etag ETag from the last 200 response, or null
+     * @param lastModified Last-Modified from the last 200 response, or null
+     * @return The response, which may have a non-2xx status code
+     * @throws IOException If the request could not be executed
+     */
+    public Response get(String url, String etag, String lastModified) throws IOException {
+        Request.Builder request = new Request.Builder()
+                .url(url)
+                .header("User-Agent", USER_AGENT)
+                .get();
+        if (etag != null && !etag.isEmpty()) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null && !lastModified.isEmpty()) {
+            request.header("If-Modified-Since", lastModified);
+        }
+        return client.newCall(request.build()).execute();
+    }
+
+    /**
+     * Queueing and throttling statistics for requests to a host, or null if none were made
+     */
+    public HostLimiter.Stats getHostStats(String host) {
+        for (Interceptor interceptor : client.interceptors()) {
+            if (interceptor instanceof HostLimiter) {
+                return ((HostLimiter) interceptor).getStats(host);
+            }
+        }
+        return null;
+    }
+
+    OkHttpClient getClient() {
+        return client;
+    }
+}
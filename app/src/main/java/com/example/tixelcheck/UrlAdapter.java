@@ -1,7 +1,6 @@
 package com.example.tixelcheck;
 
 import android.content.Context;
-import android.content.Intent;
 import android.content.res.Resources;
 import android.net.Uri;
 import android.view.LayoutInflater;
@@ -16,10 +15,10 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.core.content.ContextCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.List;
+import java.util.Objects;
 
 public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
     private List<MonitoredUrl> urlList;
@@ -40,6 +39,34 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
         this.urlList.addAll(newUrlList);
         notifyDataSetChanged();
     }
+    
+    /**
+     * Shows the change of a single URL: replaces, adds or removes its row
+     * 
+     * @param url The URL as stored now, or null if it was deleted
+     */
+    public void onUrlChanged(long urlId, MonitoredUrl url) {
+        int position = -1;
+        for (int i = 0; i < urlList.size(); i++) {
+            if (urlList.get(i).getId() == urlId) {
+                position = i;
+                break;
+            }
+        }
+        if (url == null) {
+            if (position != -1) {
+                urlList.remove(position);
+                notifyItemRemoved(position);
+                notifyItemRangeChanged(position, urlList.size());
+            }
+        } else if (position == -1) {
+            urlList.add(url);
+            notifyItemInserted(urlList.size() - 1);
+        } else {
+            urlList.set(position, url);
+            notifyItemChanged(position);
+        }
+    }
 
     @NonNull
     @Override
@@ -63,6 +90,20 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
         // Set last checked text
         holder.textLastChecked.setText("Last checked: " + url.getFormattedLastChecked());
         
+        // Set running statistics, which come with the URL from the registry
+        UrlStats stats = url.getStats();
+        String statsText = stats.getSummary();
+        if (statsText != null) {
+            String lastAvailable = stats.getFormattedLastAvailable();
+            if (lastAvailable != null) {
+                statsText += "\nTickets last seen: " + lastAvailable;
+            }
+            holder.textStats.setText(statsText);
+            holder.textStats.setVisibility(View.VISIBLE);
+        } else {
+            holder.textStats.setVisibility(View.GONE);
+        }
+        
         // Set event type icon
         switch (url.getEventType()) {
             case MonitoredUrl.EVENT_TYPE_CONCERT:
@@ -110,6 +151,7 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
         holder.textUrl.setTextColor(textColor);
         holder.textFrequency.setTextColor(textColor);
         holder.textLastChecked.setTextColor(textColor);
+        holder.textStats.setTextColor(textColor);
         holder.textEventDetails.setTextColor(textColor);
         
         // Set up the active switch
@@ -130,9 +172,6 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
                 Toast.makeText(context, "Monitoring disabled", Toast.LENGTH_SHORT).show();
             }
             
-            // Broadcast URL update using the constant from MainActivity
-            Intent updateIntent = new Intent(MainActivity.ACTION_DATABASE_UPDATED);
-            LocalBroadcastManager.getInstance(context).sendBroadcast(updateIntent);
         });
 
         // Set up delete button
@@ -142,15 +181,14 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
             
             // Delete from database and update UI
             UrlDatabase.getInstance(context).deleteUrl(url.getId());
+            PageCache.getInstance(context).remove(url.getId());
+            PriceHistory.getInstance(context).remove(url.getId());
             urlList.remove(position);
             notifyItemRemoved(position);
             notifyItemRangeChanged(position, urlList.size());
             
             Toast.makeText(context, "URL removed", Toast.LENGTH_SHORT).show();
             
-            // Broadcast URL update using the constant from MainActivity
-            Intent updateIntent = new Intent(MainActivity.ACTION_DATABASE_UPDATED);
-            LocalBroadcastManager.getInstance(context).sendBroadcast(updateIntent);
         });
         
         // Set up URL editing with normal click (opens EditUrlDialog)
@@ -190,7 +228,8 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
     private void showEditUrlDialog(int position) {
         MonitoredUrl url = urlList.get(position);
         
-        EditUrlDialog dialog = new EditUrlDialog(context, url, (originalUrl, newUrl, newFrequency, isActive, eventType) -> {
+        EditUrlDialog dialog = new EditUrlDialog(context, url, (originalUrl, newUrl, newFrequency, isActive, eventType, targetPrice,
+                positivePhrases, negativePhrases) -> {
             // Cancel old alarm if URL or frequency changed
             if (!originalUrl.getUrl().equals(newUrl) || originalUrl.getFrequency() != newFrequency || !isActive) {
                 TicketCheckerAlarm.cancelAlarm(context, originalUrl.getId());
@@ -209,15 +248,36 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
                 originalUrl.hasTicketsFound()
             );
             
+            updatedUrl.setTargetPrice(targetPrice);
+            updatedUrl.setPositivePhrases(positivePhrases);
+            updatedUrl.setNegativePhrases(negativePhrases);
+            boolean phrasesChanged = !Objects.equals(originalUrl.getPositivePhrases(), positivePhrases) ||
+                                     !Objects.equals(originalUrl.getNegativePhrases(), negativePhrases);
+            
             // Check if anything actually changed
             boolean changed = !originalUrl.getUrl().equals(newUrl) ||
                              originalUrl.getFrequency() != newFrequency ||
                              originalUrl.isActive() != isActive ||
-                             !originalUrl.getEventType().equals(eventType);
+                             !originalUrl.getEventType().equals(eventType) ||
+                             originalUrl.getTargetPrice() != targetPrice ||
+                             phrasesChanged;
             
             if (changed) {
                 // Update database and UI
                 UrlDatabase.getInstance(context).updateUrl(updatedUrl);
+                if (originalUrl.getTargetPrice() != targetPrice) {
+                    UrlDatabase.getInstance(context).updateTargetPrice(originalUrl.getId(), targetPrice);
+                }
+                if (phrasesChanged) {
+                    UrlDatabase.getInstance(context).updateDetectionPhrases(originalUrl.getId(),
+                            positivePhrases, negativePhrases);
+                }
+                
+                // Validators and cached body belong to the old address
+                if (!originalUrl.getUrl().equals(newUrl)) {
+                    UrlDatabase.getInstance(context).updateValidators(originalUrl.getId(), null, null);
+                    PageCache.getInstance(context).remove(originalUrl.getId());
+                }
                 urlList.set(position, updatedUrl);
                 notifyItemChanged(position);
                 
@@ -226,10 +286,6 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
                     TicketCheckerAlarm.setAlarm(context, updatedUrl);
                 }
                 
-                // Broadcast URL update using the constant from MainActivity
-                Intent updateIntent = new Intent(MainActivity.ACTION_DATABASE_UPDATED);
-                LocalBroadcastManager.getInstance(context).sendBroadcast(updateIntent);
-                
                 Toast.makeText(context, "URL settings updated", Toast.LENGTH_SHORT).show();
             }
         });
@@ -252,10 +308,6 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
             // Update the database
             UrlDatabase.getInstance(context).updateEventDetails(url.getId(), eventName, eventDate);
             
-            // Send broadcast to notify MainActivity to refresh the URL list
-            Intent refreshIntent = new Intent(MainActivity.ACTION_EVENT_DETAILS_UPDATED);
-            LocalBroadcastManager.getInstance(context).sendBroadcast(refreshIntent);
-            
             // Update the UI
             notifyItemChanged(position);
             
@@ -275,6 +327,7 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
         TextView textFrequency;
         TextView textEventDetails;
         TextView textLastChecked;
+        TextView textStats;
         ImageView imageEventType;
         Switch switchActive;
         Button buttonDelete;
@@ -286,6 +339,7 @@ public class UrlAdapter extends RecyclerView.Adapter<UrlAdapter.UrlViewHolder> {
             textFrequency = itemView.findViewById(R.id.text_frequency);
             textEventDetails = itemView.findViewById(R.id.text_event_details);
             textLastChecked = itemView.findViewById(R.id.text_last_checked);
+            textStats = itemView.findViewById(R.id.text_stats);
             imageEventType = itemView.findViewById(R.id.image_event_type);
             switchActive = itemView.findViewById(R.id.switch_active);
             buttonDelete = itemView.findViewById(R.id.button_delete);
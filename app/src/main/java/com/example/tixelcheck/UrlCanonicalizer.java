@@ -0,0 +1,92 @@
+package com.example.tixelcheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import okhttp3.HttpUrl;
+
+/**
+ * Reduces a monitored URL to a canonical form so that copies of the same event
+ * page differing only in case, trailing slashes, fragments, tracking parameters
+ * or query parameter order are recognised as one target.
+ */
+public final class UrlCanonicalizer {
+    // Query parameters that only track where a link came from
+    private static final String[] TRACKING_PREFIXES = {"utm_"};
+    private static final String[] TRACKING_PARAMETERS = {"fbclid", "gclid", "msclkid", "mc_cid", "mc_eid", "ref", "ref_src"};
+
+    private static final Comparator<String[]> PARAMETER_ORDER = (a, b) -> {
+        int byName = a[0].compareTo(b[0]);
+        if (byName != 0) {
+            return byName;
+        }
+        return a[1] == null ? (b[1] == null ? 0 : -1) : (b[1] == null ? 1 : a[1].compareTo(b[1]));
+    };
+
+    private UrlCanonicalizer() {
+    }
+
+    /**
+     * Returns the canonical form of a URL, or the trimmed input if it cannot be parsed
+     */
+    public static String canonicalize(String url) {
+        if (url == null) {
+            return null;
+        }
+        String trimmed = url.trim();
+        HttpUrl parsed = HttpUrl.parse(trimmed);
+        if (parsed == null) {
+            parsed = HttpUrl.parse("https://" + trimmed);
+            if (parsed == null) {
+                return trimmed;
+            }
+        }
+
+        // HttpUrl already lower-cases the scheme and host and drops default ports
+        HttpUrl.Builder builder = parsed.newBuilder()
+                .fragment(null)
+                .query(null);
+
+        List<String> segments = new ArrayList<>(parsed.pathSegments());
+        while (segments.size() > 1 && segments.get(segments.size() - 1).isEmpty()) {
+            segments.remove(segments.size() - 1);
+        }
+        builder.encodedPath("/");
+        for (String segment : segments) {
+            if (!segment.isEmpty()) {
+                builder.addPathSegment(segment);
+            }
+        }
+
+        List<String[]> parameters = new ArrayList<>();
+        for (int i = 0; i < parsed.querySize(); i++) {
+            String name = parsed.queryParameterName(i);
+            if (!isTrackingParameter(name)) {
+                parameters.add(new String[] {name, parsed.queryParameterValue(i)});
+            }
+        }
+        Collections.sort(parameters, PARAMETER_ORDER);
+        for (String[] parameter : parameters) {
+            builder.addQueryParameter(parameter[0], parameter[1]);
+        }
+        return builder.build().toString();
+    }
+
+    private static boolean isTrackingParameter(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        for (String prefix : TRACKING_PREFIXES) {
+            if (lower.startsWith(prefix)) {
+                return true;
+            }
+        }
+        for (String parameter : TRACKING_PARAMETERS) {
+            if (lower.equals(parameter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -3,8 +3,12 @@ package com.example.tixelcheck;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
 import android.util.Log;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,7 +16,7 @@ import java.util.List;
 public class UrlDatabase extends SQLiteOpenHelper {
     private static final String TAG = "UrlDatabase";
     private static final String DATABASE_NAME = "tixelcheck.db";
-    private static final int DATABASE_VERSION = 3; // Incremented for schema update
+    static final int DATABASE_VERSION = 16; // Incremented for schema update
     private static final String TABLE_URLS = "urls";
     private static final String COLUMN_ID = "id";
     private static final String COLUMN_URL = "url";
@@ -23,6 +27,17 @@ public class UrlDatabase extends SQLiteOpenHelper {
     private static final String COLUMN_EVENT_TYPE = "event_type";
     private static final String COLUMN_LAST_CHECKED = "last_checked";
     private static final String COLUMN_TICKETS_FOUND = "tickets_found";
+    private static final String COLUMN_ETAG = "etag";
+    private static final String COLUMN_LAST_MODIFIED = "last_modified";
+    private static final String COLUMN_POSITIVE_PHRASES = "positive_phrases";
+    private static final String COLUMN_NEGATIVE_PHRASES = "negative_phrases";
+    private static final String COLUMN_CONTENT_FINGERPRINT = "content_fingerprint";
+    private static final String COLUMN_CANONICAL_URL = "canonical_url";
+    private static final String INDEX_CANONICAL_URL = "idx_urls_canonical_url";
+    private static final String COLUMN_NEXT_DUE = "next_due";
+    private static final String COLUMN_LISTING_SNAPSHOT = "listing_snapshot";
+    private static final String COLUMN_TARGET_PRICE = "target_price";
+    private static final String COLUMN_ALERTED_TARGET_PRICE = "alerted_target_price";
     
     // For ticket found history
     private static final String TABLE_HISTORY = "ticket_history";
@@ -30,9 +45,71 @@ public class UrlDatabase extends SQLiteOpenHelper {
     private static final String COLUMN_HISTORY_URL_ID = "url_id";
     private static final String COLUMN_HISTORY_TIMESTAMP = "timestamp";
     private static final String COLUMN_HISTORY_NOTE = "note";
+    private static final String COLUMN_HISTORY_KIND = "kind";
+    private static final String COLUMN_HISTORY_REPEAT_COUNT = "repeat_count";
+    private static final String COLUMN_HISTORY_FIRST_TIMESTAMP = "first_timestamp";
+    private static final String INDEX_HISTORY_URL_TIME = "idx_ticket_history_url_time";
+    private static final String INDEX_HISTORY_TIME = "idx_ticket_history_time";
+    
+    // For price history, stored as encoded PriceSeries blocks
+    private static final String TABLE_PRICE_BLOCKS = "price_blocks";
+    private static final String COLUMN_BLOCK_ID = "id";
+    private static final String COLUMN_BLOCK_URL_ID = "url_id";
+    private static final String COLUMN_BLOCK_START = "start_time";
+    private static final String COLUMN_BLOCK_END = "end_time";
+    private static final String COLUMN_BLOCK_COUNT = "point_count";
+    private static final String COLUMN_BLOCK_DATA = "data";
+    private static final String INDEX_PRICE_BLOCKS = "idx_price_blocks_url_start";
+    
+    // For running check statistics, one row per URL updated in place by every check
+    private static final String TABLE_STATS = "url_stats";
+    private static final String COLUMN_STATS_URL_ID = "url_id";
+    private static final String COLUMN_STATS_TOTAL_CHECKS = "total_checks";
+    private static final String COLUMN_STATS_ERROR_COUNT = "error_count";
+    private static final String COLUMN_STATS_LAST_AVAILABLE = "last_available";
+    private static final String COLUMN_STATS_WINDOW_OPEN = "window_open";
+    private static final String COLUMN_STATS_WINDOW_COUNT = "window_count";
+    private static final String COLUMN_STATS_FIRST_WINDOW_START = "first_window_start";
+    private static final String COLUMN_STATS_LAST_WINDOW_START = "last_window_start";
+    private static final String COLUMN_STATS_LATENCY_PREFIX = "latency_";
+
+    // Everything MonitoredUrl holds; the listing snapshot blob is read only when needed
+    private static final String[] URL_COLUMNS = {
+            COLUMN_ID, COLUMN_URL, COLUMN_FREQUENCY, COLUMN_ACTIVE, COLUMN_EVENT_NAME, COLUMN_EVENT_DATE,
+            COLUMN_EVENT_TYPE, COLUMN_LAST_CHECKED, COLUMN_TICKETS_FOUND, COLUMN_ETAG, COLUMN_LAST_MODIFIED,
+            COLUMN_POSITIVE_PHRASES, COLUMN_NEGATIVE_PHRASES, COLUMN_CONTENT_FINGERPRINT, COLUMN_TARGET_PRICE,
+            COLUMN_ALERTED_TARGET_PRICE};
+    
+    // UrlStats in constructor order, followed by its latency buckets
+    private static final String[] STATS_COLUMNS = statsColumns();
+    
+    // URLs are read along with their statistics, which every URL has a row of
+    private static final String URLS_WITH_STATS = TABLE_URLS + " LEFT JOIN " + TABLE_STATS + " ON " +
+            TABLE_STATS + "." + COLUMN_STATS_URL_ID + " = " + TABLE_URLS + "." + COLUMN_ID;
+    private static final String[] URL_WITH_STATS_COLUMNS = concat(URL_COLUMNS, STATS_COLUMNS);
+    
+    private static final String[] SCHEDULE_COLUMNS = {COLUMN_ID, COLUMN_FREQUENCY, COLUMN_EVENT_DATE, COLUMN_NEXT_DUE};
+    
+    private static final String[] HISTORY_COLUMNS = {
+            COLUMN_HISTORY_ID, COLUMN_HISTORY_TIMESTAMP, COLUMN_HISTORY_NOTE, COLUMN_HISTORY_KIND,
+            COLUMN_HISTORY_REPEAT_COUNT, COLUMN_HISTORY_FIRST_TIMESTAMP, COLUMN_HISTORY_URL_ID};
+    
+    // Newest first; entries with the same timestamp follow the index's own ID order
+    private static final String HISTORY_ORDER = COLUMN_HISTORY_TIMESTAMP + " DESC, " + COLUMN_HISTORY_ID;
 
     private static UrlDatabase instance;
 
+    // URL rows in memory, loaded on first read and written through on every change
+    private final UrlRegistry registry = new UrlRegistry();
+
+    // Writes made after every check, compiled once per open connection
+    private final Object statementLock = new Object();
+    private SQLiteDatabase compiledFor;
+    private SQLiteStatement updateLastCheckedStatement;
+    private SQLiteStatement updateLastCheckedWithFingerprintStatement;
+    private SQLiteStatement insertHistoryStatement;
+    private SQLiteStatement recordCheckStatement;
+
     public static synchronized UrlDatabase getInstance(Context context) {
         if (instance == null) {
             instance = new UrlDatabase(context.getApplicationContext());
@@ -41,7 +118,72 @@ public class UrlDatabase extends SQLiteOpenHelper {
     }
 
     private UrlDatabase(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Opens the database under another file name, for tests
+     */
+    UrlDatabase(Context context, String name) {
+        super(context, name, null, DATABASE_VERSION);
+        // Readers get their own connections and never wait for the checker's writes
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * The connection stays open for the life of the process, so methods use it
+     * and never close it. With WAL, synchronous=NORMAL skips the fsync on every
+     * commit and still leaves a consistent database after a crash; at worst the
+     * last few check results are lost and rewritten by the next checks.
+     */
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.execSQL("PRAGMA synchronous = NORMAL");
+        // Lets HistoryRetention hand freed pages back a few at a time. Only takes effect
+        // on a new file; older ones are converted once by enableIncrementalVacuum().
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        // Needed for ticket_history rows to cascade with their URL
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public synchronized void close() {
+        synchronized (statementLock) {
+            closeStatements();
+        }
+        super.close();
+    }
+
+    /**
+     * Compiles the per-check statements for the given connection, replacing
+     * ones compiled for a connection that has since been closed. Callers hold statementLock.
+     */
+    private void compileStatements(SQLiteDatabase db) {
+        if (compiledFor == db) {
+            return;
+        }
+        closeStatements();
+        updateLastCheckedStatement = db.compileStatement("UPDATE " + TABLE_URLS + " SET " +
+                COLUMN_LAST_CHECKED + " = ?, " + COLUMN_TICKETS_FOUND + " = ? WHERE " + COLUMN_ID + " = ?");
+        updateLastCheckedWithFingerprintStatement = db.compileStatement("UPDATE " + TABLE_URLS + " SET " +
+                COLUMN_LAST_CHECKED + " = ?, " + COLUMN_TICKETS_FOUND + " = ?, " +
+                COLUMN_CONTENT_FINGERPRINT + " = ? WHERE " + COLUMN_ID + " = ?");
+        insertHistoryStatement = db.compileStatement("INSERT INTO " + TABLE_HISTORY + "(" +
+                COLUMN_HISTORY_URL_ID + ", " + COLUMN_HISTORY_TIMESTAMP + ", " + COLUMN_HISTORY_NOTE + ", " +
+                COLUMN_HISTORY_KIND + ", " + COLUMN_HISTORY_FIRST_TIMESTAMP + ") VALUES (?, ?, ?, ?, ?)");
+        recordCheckStatement = db.compileStatement(recordCheckSql());
+        compiledFor = db;
+    }
+
+    private void closeStatements() {
+        if (compiledFor == null) {
+            return;
+        }
+        updateLastCheckedStatement.close();
+        updateLastCheckedWithFingerprintStatement.close();
+        insertHistoryStatement.close();
+        recordCheckStatement.close();
+        compiledFor = null;
     }
 
     @Override
@@ -56,16 +198,142 @@ public class UrlDatabase extends SQLiteOpenHelper {
                 COLUMN_EVENT_DATE + " TEXT, " +
                 COLUMN_EVENT_TYPE + " TEXT, " +
                 COLUMN_LAST_CHECKED + " INTEGER, " +
-                COLUMN_TICKETS_FOUND + " INTEGER)";
+                COLUMN_TICKETS_FOUND + " INTEGER, " +
+                COLUMN_ETAG + " TEXT, " +
+                COLUMN_LAST_MODIFIED + " TEXT, " +
+                COLUMN_POSITIVE_PHRASES + " TEXT, " +
+                COLUMN_NEGATIVE_PHRASES + " TEXT, " +
+                COLUMN_CONTENT_FINGERPRINT + " INTEGER DEFAULT 0, " +
+                COLUMN_CANONICAL_URL + " TEXT, " +
+                COLUMN_NEXT_DUE + " INTEGER DEFAULT 0, " +
+                COLUMN_LISTING_SNAPSHOT + " BLOB, " +
+                COLUMN_TARGET_PRICE + " INTEGER DEFAULT 0, " +
+                COLUMN_ALERTED_TARGET_PRICE + " INTEGER DEFAULT 0)";
         db.execSQL(createTable);
+        db.execSQL("CREATE INDEX " + INDEX_CANONICAL_URL + " ON " + TABLE_URLS + "(" + COLUMN_CANONICAL_URL + ")");
         
         // Create history table
-        String createHistoryTable = "CREATE TABLE " + TABLE_HISTORY + "(" +
+        createHistoryTable(db, TABLE_HISTORY);
+        addHistoryRollUpColumns(db);
+        createHistoryIndex(db);
+        createHistoryTimeIndex(db);
+        
+        createPriceBlocksTable(db);
+        createStatsTable(db);
+    }
+    
+    /**
+     * History rows belong to their URL and are deleted along with it
+     */
+    private void createHistoryTable(SQLiteDatabase db, String name) {
+        db.execSQL("CREATE TABLE " + name + "(" +
                 COLUMN_HISTORY_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
-                COLUMN_HISTORY_URL_ID + " INTEGER, " +
+                COLUMN_HISTORY_URL_ID + " INTEGER NOT NULL REFERENCES " + TABLE_URLS + "(" + COLUMN_ID + ")" +
+                " ON DELETE CASCADE, " +
                 COLUMN_HISTORY_TIMESTAMP + " INTEGER, " +
-                COLUMN_HISTORY_NOTE + " TEXT)";
-        db.execSQL(createHistoryTable);
+                COLUMN_HISTORY_NOTE + " TEXT)");
+    }
+    
+    /**
+     * Kind of entry, and for rolled-up runs of identical errors how many there
+     * were and when the first happened; timestamp is always the latest
+     */
+    private void addHistoryRollUpColumns(SQLiteDatabase db) {
+        db.execSQL("ALTER TABLE " + TABLE_HISTORY + " ADD COLUMN " + COLUMN_HISTORY_KIND +
+                " INTEGER DEFAULT " + TicketHistoryEntry.KIND_EVENT);
+        db.execSQL("ALTER TABLE " + TABLE_HISTORY + " ADD COLUMN " + COLUMN_HISTORY_REPEAT_COUNT + " INTEGER DEFAULT 1");
+        db.execSQL("ALTER TABLE " + TABLE_HISTORY + " ADD COLUMN " + COLUMN_HISTORY_FIRST_TIMESTAMP + " INTEGER");
+    }
+    
+    /**
+     * Serves a URL's history newest first without a scan or sort, and the cascading delete
+     */
+    private void createHistoryIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_HISTORY_URL_TIME + " ON " + TABLE_HISTORY + "(" +
+                COLUMN_HISTORY_URL_ID + ", " + COLUMN_HISTORY_TIMESTAMP + " DESC)");
+    }
+    
+    /**
+     * Serves the history of all URLs newest first, a page at a time
+     */
+    private void createHistoryTimeIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX " + INDEX_HISTORY_TIME + " ON " + TABLE_HISTORY + "(" +
+                COLUMN_HISTORY_TIMESTAMP + " DESC)");
+    }
+    
+    private void createPriceBlocksTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_PRICE_BLOCKS + "(" +
+                COLUMN_BLOCK_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_BLOCK_URL_ID + " INTEGER, " +
+                COLUMN_BLOCK_START + " INTEGER, " +
+                COLUMN_BLOCK_END + " INTEGER, " +
+                COLUMN_BLOCK_COUNT + " INTEGER, " +
+                COLUMN_BLOCK_DATA + " BLOB)");
+        db.execSQL("CREATE INDEX " + INDEX_PRICE_BLOCKS + " ON " + TABLE_PRICE_BLOCKS + "(" +
+                COLUMN_BLOCK_URL_ID + ", " + COLUMN_BLOCK_START + ")");
+    }
+
+    /**
+     * Stats rows go with their URL, like its history
+     */
+    private void createStatsTable(SQLiteDatabase db) {
+        StringBuilder sql = new StringBuilder("CREATE TABLE " + TABLE_STATS + "(" +
+                COLUMN_STATS_URL_ID + " INTEGER PRIMARY KEY REFERENCES " + TABLE_URLS + "(" + COLUMN_ID + ")" +
+                " ON DELETE CASCADE");
+        for (String column : STATS_COLUMNS) {
+            sql.append(", ").append(column).append(" INTEGER NOT NULL DEFAULT 0");
+        }
+        sql.append(", ").append(COLUMN_STATS_WINDOW_OPEN).append(" INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL(sql.toString());
+    }
+    
+    private static String[] statsColumns() {
+        String[] columns = new String[6 + UrlStats.LATENCY_BUCKETS];
+        columns[0] = COLUMN_STATS_TOTAL_CHECKS;
+        columns[1] = COLUMN_STATS_ERROR_COUNT;
+        columns[2] = COLUMN_STATS_LAST_AVAILABLE;
+        columns[3] = COLUMN_STATS_WINDOW_COUNT;
+        columns[4] = COLUMN_STATS_FIRST_WINDOW_START;
+        columns[5] = COLUMN_STATS_LAST_WINDOW_START;
+        for (int i = 0; i < UrlStats.LATENCY_BUCKETS; i++) {
+            columns[6 + i] = COLUMN_STATS_LATENCY_PREFIX + i;
+        }
+        return columns;
+    }
+    
+    private static String[] concat(String[] first, String[] second) {
+        String[] all = new String[first.length + second.length];
+        System.arraycopy(first, 0, all, 0, first.length);
+        System.arraycopy(second, 0, all, first.length, second.length);
+        return all;
+    }
+    
+    /**
+     * Adds one check to a URL's stats row in place. All expressions see the row
+     * as it was before the update. Parameters: ?1 time of the check, ?2 1 if it
+     * failed, ?3 1 if tickets were found, ?4 latency bucket or -1, ?5 URL ID.
+     * A failed check leaves the availability window as it was.
+     */
+    private static String recordCheckSql() {
+        String opens = "(?2 = 0 AND ?3 = 1 AND " + COLUMN_STATS_WINDOW_OPEN + " = 0)";
+        StringBuilder sql = new StringBuilder("UPDATE " + TABLE_STATS + " SET " +
+                COLUMN_STATS_TOTAL_CHECKS + " = " + COLUMN_STATS_TOTAL_CHECKS + " + 1, " +
+                COLUMN_STATS_ERROR_COUNT + " = " + COLUMN_STATS_ERROR_COUNT + " + ?2, " +
+                COLUMN_STATS_LAST_AVAILABLE + " = CASE WHEN ?3 = 1 THEN ?1 ELSE " +
+                COLUMN_STATS_LAST_AVAILABLE + " END, " +
+                COLUMN_STATS_WINDOW_COUNT + " = " + COLUMN_STATS_WINDOW_COUNT + " + " + opens + ", " +
+                COLUMN_STATS_FIRST_WINDOW_START + " = CASE WHEN " + opens + " AND " +
+                COLUMN_STATS_WINDOW_COUNT + " = 0 THEN ?1 ELSE " + COLUMN_STATS_FIRST_WINDOW_START + " END, " +
+                COLUMN_STATS_LAST_WINDOW_START + " = CASE WHEN " + opens + " THEN ?1 ELSE " +
+                COLUMN_STATS_LAST_WINDOW_START + " END, " +
+                COLUMN_STATS_WINDOW_OPEN + " = CASE WHEN ?2 = 1 THEN " + COLUMN_STATS_WINDOW_OPEN +
+                " ELSE ?3 END");
+        for (int i = 0; i < UrlStats.LATENCY_BUCKETS; i++) {
+            String column = COLUMN_STATS_LATENCY_PREFIX + i;
+            sql.append(", ").append(column).append(" = ").append(column).append(" + (?4 = ").append(i).append(")");
+        }
+        sql.append(" WHERE ").append(COLUMN_STATS_URL_ID).append(" = ?5");
+        return sql.toString();
     }
 
     @Override
@@ -101,12 +369,188 @@ public class UrlDatabase extends SQLiteOpenHelper {
                 Log.e(TAG, "Error upgrading database from v2 to v3", e);
             }
         }
+        
+        if (oldVersion < 4) {
+            // Add HTTP validator columns for conditional requests (v3 -> v4)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_ETAG + " TEXT");
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_LAST_MODIFIED + " TEXT");
+                Log.d(TAG, "Database upgraded from version 3 to 4");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v3 to v4", e);
+            }
+        }
+        
+        if (oldVersion < 5) {
+            // Add per-URL detection phrase columns (v4 -> v5)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_POSITIVE_PHRASES + " TEXT");
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_NEGATIVE_PHRASES + " TEXT");
+                Log.d(TAG, "Database upgraded from version 4 to 5");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v4 to v5", e);
+            }
+        }
+        
+        if (oldVersion < 6) {
+            // Add page content fingerprint column (v5 -> v6)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_CONTENT_FINGERPRINT + " INTEGER DEFAULT 0");
+                Log.d(TAG, "Database upgraded from version 5 to 6");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v5 to v6", e);
+            }
+        }
+        
+        if (oldVersion < 7) {
+            // Add indexed canonical URL column and fill it for existing rows (v6 -> v7)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_CANONICAL_URL + " TEXT");
+                db.execSQL("CREATE INDEX " + INDEX_CANONICAL_URL + " ON " + TABLE_URLS + "(" + COLUMN_CANONICAL_URL + ")");
+                Cursor cursor = db.query(TABLE_URLS, new String[]{COLUMN_ID, COLUMN_URL}, null, null, null, null, null);
+                while (cursor.moveToNext()) {
+                    ContentValues values = new ContentValues();
+                    values.put(COLUMN_CANONICAL_URL, UrlCanonicalizer.canonicalize(cursor.getString(1)));
+                    db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(cursor.getLong(0))});
+                }
+                cursor.close();
+                Log.d(TAG, "Database upgraded from version 6 to 7");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v6 to v7", e);
+            }
+        }
+        
+        if (oldVersion < 8) {
+            // Add next due time mirrored from the check scheduler (v7 -> v8)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_NEXT_DUE + " INTEGER DEFAULT 0");
+                Log.d(TAG, "Database upgraded from version 7 to 8");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v7 to v8", e);
+            }
+        }
+        
+        if (oldVersion < 9) {
+            // Add listing snapshot of the last evaluated check (v8 -> v9)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_LISTING_SNAPSHOT + " BLOB");
+                Log.d(TAG, "Database upgraded from version 8 to 9");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v8 to v9", e);
+            }
+        }
+        
+        if (oldVersion < 10) {
+            // Add target price and price history blocks (v9 -> v10)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_TARGET_PRICE + " INTEGER DEFAULT 0");
+                createPriceBlocksTable(db);
+                Log.d(TAG, "Database upgraded from version 9 to 10");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v9 to v10", e);
+            }
+        }
+        
+        if (oldVersion < 11) {
+            // Rebuild history with a foreign key to its URL and a (url_id, timestamp) index (v10 -> v11).
+            // SQLite cannot add a foreign key to an existing table, so rows are copied into a new one,
+            // dropping history of URLs that no longer exist. A failing step is not caught: it rolls
+            // back the whole upgrade and fails the open, so the upgrade is retried on the next one.
+            db.beginTransaction();
+            try {
+                String rebuilt = TABLE_HISTORY + "_new";
+                createHistoryTable(db, rebuilt);
+                db.execSQL("INSERT INTO " + rebuilt + " SELECT " +
+                        COLUMN_HISTORY_ID + ", " + COLUMN_HISTORY_URL_ID + ", " +
+                        COLUMN_HISTORY_TIMESTAMP + ", " + COLUMN_HISTORY_NOTE +
+                        " FROM " + TABLE_HISTORY +
+                        " WHERE " + COLUMN_HISTORY_URL_ID + " IN (SELECT " + COLUMN_ID + " FROM " + TABLE_URLS + ")");
+                db.execSQL("DROP TABLE " + TABLE_HISTORY);
+                db.execSQL("ALTER TABLE " + rebuilt + " RENAME TO " + TABLE_HISTORY);
+                createHistoryIndex(db);
+                db.setTransactionSuccessful();
+                Log.d(TAG, "Database upgraded from version 10 to 11");
+            } finally {
+                db.endTransaction();
+            }
+        }
+        
+        if (oldVersion < 12) {
+            // Detect the event type of rows that have none, which reads used to do for every row (v11 -> v12)
+            try {
+                Cursor cursor = db.query(TABLE_URLS, new String[]{COLUMN_ID, COLUMN_URL, COLUMN_EVENT_NAME},
+                        COLUMN_EVENT_TYPE + " IS NULL OR " + COLUMN_EVENT_TYPE + " = ''",
+                        null, null, null, null);
+                while (cursor.moveToNext()) {
+                    MonitoredUrl url = new MonitoredUrl(cursor.getLong(0), cursor.getString(1), 0, false,
+                            cursor.getString(2), null);
+                    url.detectEventType();
+                    ContentValues values = new ContentValues();
+                    values.put(COLUMN_EVENT_TYPE, url.getEventType());
+                    db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(url.getId())});
+                }
+                cursor.close();
+                Log.d(TAG, "Database upgraded from version 11 to 12");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v11 to v12", e);
+            }
+        }
+        
+        if (oldVersion < 13) {
+            // Mark error entries so HistoryRetention can roll them up and expire them (v12 -> v13).
+            // Until now the checker's error notes were the only ones ending this way.
+            try {
+                addHistoryRollUpColumns(db);
+                db.execSQL("UPDATE " + TABLE_HISTORY + " SET " +
+                        COLUMN_HISTORY_KIND + " = " + TicketHistoryEntry.KIND_ERROR + ", " +
+                        COLUMN_HISTORY_FIRST_TIMESTAMP + " = " + COLUMN_HISTORY_TIMESTAMP +
+                        " WHERE " + COLUMN_HISTORY_NOTE + " LIKE '%Will retry later.'");
+                Log.d(TAG, "Database upgraded from version 12 to 13");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v12 to v13", e);
+            }
+        }
+        
+        if (oldVersion < 14) {
+            // Index for paging through the history of all URLs (v13 -> v14)
+            try {
+                createHistoryTimeIndex(db);
+                Log.d(TAG, "Database upgraded from version 13 to 14");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v13 to v14", e);
+            }
+        }
+        
+        if (oldVersion < 15) {
+            // Running check statistics per URL, counted from now on (v14 -> v15)
+            try {
+                createStatsTable(db);
+                db.execSQL("INSERT INTO " + TABLE_STATS + "(" + COLUMN_STATS_URL_ID + ", " +
+                        COLUMN_STATS_WINDOW_OPEN + ") SELECT " + COLUMN_ID + ", COALESCE(" +
+                        COLUMN_TICKETS_FOUND + ", 0) FROM " + TABLE_URLS);
+                Log.d(TAG, "Database upgraded from version 14 to 15");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v14 to v15", e);
+            }
+        }
+        
+        if (oldVersion < 16) {
+            // Remember the target price last alerted on, so a new target is evaluated afresh (v15 -> v16)
+            try {
+                db.execSQL("ALTER TABLE " + TABLE_URLS + " ADD COLUMN " + COLUMN_ALERTED_TARGET_PRICE +
+                        " INTEGER DEFAULT 0");
+                Log.d(TAG, "Database upgraded from version 15 to 16");
+            } catch (Exception e) {
+                Log.e(TAG, "Error upgrading database from v15 to v16", e);
+            }
+        }
     }
 
     public void addUrl(MonitoredUrl url) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_URL, url.getUrl());
+        values.put(COLUMN_CANONICAL_URL, UrlCanonicalizer.canonicalize(url.getUrl()));
         values.put(COLUMN_FREQUENCY, url.getFrequency());
         values.put(COLUMN_ACTIVE, url.isActive() ? 1 : 0);
         values.put(COLUMN_EVENT_NAME, url.getEventName());
@@ -114,67 +558,34 @@ public class UrlDatabase extends SQLiteOpenHelper {
         values.put(COLUMN_EVENT_TYPE, url.getEventType());
         values.put(COLUMN_LAST_CHECKED, url.getLastCheckedTimestamp());
         values.put(COLUMN_TICKETS_FOUND, url.hasTicketsFound() ? 1 : 0);
-        db.insert(TABLE_URLS, null, values);
-        db.close();
+        long id;
+        db.beginTransaction();
+        try {
+            id = db.insert(TABLE_URLS, null, values);
+            if (id != -1) {
+                ContentValues stats = new ContentValues();
+                stats.put(COLUMN_STATS_URL_ID, id);
+                stats.put(COLUMN_STATS_WINDOW_OPEN, url.hasTicketsFound() ? 1 : 0);
+                db.insert(TABLE_STATS, null, stats);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (id != -1) {
+            refreshRegistry(id);
+        }
     }
 
     public List<MonitoredUrl> getAllUrls() {
-        List<MonitoredUrl> urlList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_URLS;
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID));
-                String url = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_URL));
-                int frequency = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_FREQUENCY));
-                boolean active = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ACTIVE)) == 1;
-                
-                // Get event details
-                String eventName = "";
-                String eventDate = "";
-                String eventType = MonitoredUrl.EVENT_TYPE_OTHER;
-                long lastChecked = 0;
-                boolean ticketsFound = false;
-                
-                try {
-                    eventName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_NAME));
-                    eventDate = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_DATE));
-                    
-                    // Try to get new columns
-                    try {
-                        eventType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_TYPE));
-                        lastChecked = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_CHECKED));
-                        ticketsFound = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TICKETS_FOUND)) == 1;
-                    } catch (Exception e) {
-                        // Use default values if columns don't exist yet
-                        Log.w(TAG, "Could not read new columns, using defaults", e);
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not read event details columns", e);
-                }
-                
-                // Auto-detect event type if not set
-                if (eventType == null || eventType.isEmpty()) {
-                    MonitoredUrl tempUrl = new MonitoredUrl(id, url, frequency, active, eventName, eventDate);
-                    tempUrl.detectEventType();
-                    eventType = tempUrl.getEventType();
-                }
-                
-                urlList.add(new MonitoredUrl(id, url, frequency, active, 
-                    eventName, eventDate, eventType, lastChecked, ticketsFound));
-            } while (cursor.moveToNext());
-        }
-        cursor.close();
-        db.close();
-        return urlList;
+        return getRegistry().getAll(false);
     }
 
     public void updateUrl(MonitoredUrl url) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COLUMN_URL, url.getUrl());
+        values.put(COLUMN_CANONICAL_URL, UrlCanonicalizer.canonicalize(url.getUrl()));
         values.put(COLUMN_FREQUENCY, url.getFrequency());
         values.put(COLUMN_ACTIVE, url.isActive() ? 1 : 0);
         values.put(COLUMN_EVENT_NAME, url.getEventName());
@@ -183,7 +594,7 @@ public class UrlDatabase extends SQLiteOpenHelper {
         values.put(COLUMN_LAST_CHECKED, url.getLastCheckedTimestamp());
         values.put(COLUMN_TICKETS_FOUND, url.hasTicketsFound() ? 1 : 0);
         db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(url.getId())});
-        db.close();
+        refreshRegistry(url.getId());
     }
     
     public void updateEventDetails(long urlId, String eventName, String eventDate) {
@@ -198,148 +609,789 @@ public class UrlDatabase extends SQLiteOpenHelper {
         values.put(COLUMN_EVENT_TYPE, tempUrl.getEventType());
         
         db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
-        db.close();
+        refreshRegistry(urlId);
         Log.d(TAG, "Updated event details for URL ID " + urlId + ": " + eventName + ", " + eventDate);
     }
     
     public void updateLastChecked(long urlId, long timestamp, boolean ticketsFound) {
+        updateLastChecked(urlId, timestamp, ticketsFound, null);
+    }
+    
+    /**
+     * @param registryUpdates Collects the registry update, to be run once the caller's
+     *                        transaction has committed, or null to update the registry now
+     */
+    void updateLastChecked(long urlId, long timestamp, boolean ticketsFound, List<Runnable> registryUpdates) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized (statementLock) {
+            compileStatements(db);
+            SQLiteStatement statement = updateLastCheckedStatement;
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, ticketsFound ? 1 : 0);
+            statement.bindLong(3, urlId);
+            if (statement.executeUpdateDelete() == 0) {
+                return;
+            }
+        }
+        updateRegistry(registryUpdates, () -> registry.update(urlId, url -> {
+            url.setLastCheckedTimestamp(timestamp);
+            url.setHasTicketsFound(ticketsFound);
+        }));
+        Log.d(TAG, "Updated last checked for URL ID " + urlId + ": " + timestamp + ", tickets found: " + ticketsFound);
+    }
+    
+    /**
+     * Records an evaluated check together with the fingerprint of the page it was based on
+     */
+    public void updateLastChecked(long urlId, long timestamp, boolean ticketsFound, long contentFingerprint) {
+        updateLastChecked(urlId, timestamp, ticketsFound, contentFingerprint, null);
+    }
+    
+    /**
+     * @param registryUpdates Collects the registry update, to be run once the caller's
+     *                        transaction has committed, or null to update the registry now
+     */
+    void updateLastChecked(long urlId, long timestamp, boolean ticketsFound, long contentFingerprint,
+            List<Runnable> registryUpdates) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized (statementLock) {
+            compileStatements(db);
+            SQLiteStatement statement = updateLastCheckedWithFingerprintStatement;
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, ticketsFound ? 1 : 0);
+            statement.bindLong(3, contentFingerprint);
+            statement.bindLong(4, urlId);
+            if (statement.executeUpdateDelete() == 0) {
+                return;
+            }
+        }
+        updateRegistry(registryUpdates, () -> registry.update(urlId, url -> {
+            url.setLastCheckedTimestamp(timestamp);
+            url.setHasTicketsFound(ticketsFound);
+            url.setContentFingerprint(contentFingerprint);
+        }));
+        Log.d(TAG, "Updated last checked for URL ID " + urlId + ": " + timestamp + ", tickets found: " + ticketsFound
+                + ", fingerprint: " + Long.toHexString(contentFingerprint));
+    }
+    
+    /**
+     * Stores the HTTP validators from the latest full response so the next
+     * check can send a conditional request. Pass nulls to clear them.
+     */
+    public void updateValidators(long urlId, String etag, String lastModified) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
-        values.put(COLUMN_LAST_CHECKED, timestamp);
-        values.put(COLUMN_TICKETS_FOUND, ticketsFound ? 1 : 0);
+        values.put(COLUMN_ETAG, etag);
+        values.put(COLUMN_LAST_MODIFIED, lastModified);
         db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
-        db.close();
-        Log.d(TAG, "Updated last checked for URL ID " + urlId + ": " + timestamp + ", tickets found: " + ticketsFound);
+        registry.update(urlId, url -> {
+            url.setEtag(etag);
+            url.setLastModified(lastModified);
+        });
+        Log.d(TAG, "Updated validators for URL ID " + urlId + ": etag=" + etag + ", lastModified=" + lastModified);
     }
     
-    public void addTicketHistory(long urlId, long timestamp, String note) {
+    /**
+     * Sets the detection phrases for a URL. Pass null for either list to use the
+     * locale defaults. Validators and the content fingerprint are cleared so the
+     * next check fetches the full page and evaluates it against the new phrases
+     * instead of getting a 304 or being skipped as unchanged.
+     */
+    public void updateDetectionPhrases(long urlId, String positivePhrases, String negativePhrases) {
         SQLiteDatabase db = this.getWritableDatabase();
         ContentValues values = new ContentValues();
-        values.put(COLUMN_HISTORY_URL_ID, urlId);
-        values.put(COLUMN_HISTORY_TIMESTAMP, timestamp);
-        values.put(COLUMN_HISTORY_NOTE, note);
-        db.insert(TABLE_HISTORY, null, values);
-        db.close();
+        values.put(COLUMN_POSITIVE_PHRASES, positivePhrases);
+        values.put(COLUMN_NEGATIVE_PHRASES, negativePhrases);
+        values.putNull(COLUMN_ETAG);
+        values.putNull(COLUMN_LAST_MODIFIED);
+        values.put(COLUMN_CONTENT_FINGERPRINT, 0);
+        db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
+        registry.update(urlId, url -> {
+            url.setPositivePhrases(positivePhrases);
+            url.setNegativePhrases(negativePhrases);
+            url.setEtag(null);
+            url.setLastModified(null);
+            url.setContentFingerprint(0);
+        });
+        Log.d(TAG, "Updated detection phrases for URL ID " + urlId);
+    }
+    
+    /**
+     * Stores when a URL is next due to be checked, or 0 if it is not scheduled
+     */
+    public void updateNextDue(long urlId, long nextDue) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_NEXT_DUE, nextDue);
+        db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
+    }
+    
+    /**
+     * What the check scheduler needs of every active URL, read without the rest of the row
+     */
+    public List<ScheduledUrl> getActiveSchedules() {
+        List<ScheduledUrl> schedules = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_URLS, SCHEDULE_COLUMNS, COLUMN_ACTIVE + " = 1", null, null, null, null);
+        while (cursor.moveToNext()) {
+            schedules.add(new ScheduledUrl(cursor.getLong(0), cursor.getInt(1), cursor.getString(2), cursor.getLong(3)));
+        }
+        cursor.close();
+        return schedules;
+    }
+    
+    /**
+     * Listings seen at the URL's last evaluated check, or null if none were recorded
+     */
+    public ListingSnapshot getListingSnapshot(long urlId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_URLS, new String[]{COLUMN_LISTING_SNAPSHOT},
+                COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)}, null, null, null);
+        ListingSnapshot snapshot = null;
+        if (cursor.moveToFirst() && !cursor.isNull(0)) {
+            snapshot = ListingSnapshot.fromBytes(cursor.getBlob(0));
+        }
+        cursor.close();
+        return snapshot;
+    }
+    
+    public void updateListingSnapshot(long urlId, ListingSnapshot snapshot) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_LISTING_SNAPSHOT, snapshot.toBytes());
+        db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
+    }
+    
+    /**
+     * Sets the price in cents at or below which the user is alerted, or 0 for none.
+     * A new target has not been alerted on, so the next check alerts if the price
+     * is already at or below it.
+     */
+    public void updateTargetPrice(long urlId, long targetPrice) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_TARGET_PRICE, targetPrice);
+        values.put(COLUMN_ALERTED_TARGET_PRICE, 0);
+        db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
+        registry.update(urlId, url -> {
+            url.setTargetPrice(targetPrice);
+            url.setAlertedTargetPrice(0);
+        });
+        Log.d(TAG, "Updated target price for URL ID " + urlId + ": " + targetPrice);
+    }
+    
+    /**
+     * Records the target price an alert was sent for, or 0 once the price has
+     * risen above it again
+     */
+    public void updateAlertedTargetPrice(long urlId, long alertedTargetPrice) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ALERTED_TARGET_PRICE, alertedTargetPrice);
+        db.update(TABLE_URLS, values, COLUMN_ID + " = ?", new String[]{String.valueOf(urlId)});
+        registry.update(urlId, url -> url.setAlertedTargetPrice(alertedTargetPrice));
+    }
+    
+    /**
+     * The URL's most recent price block, or null if it has none or it cannot be decoded
+     */
+    public StoredPriceBlock getLatestPriceBlock(long urlId) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PRICE_BLOCKS, new String[]{COLUMN_BLOCK_ID, COLUMN_BLOCK_DATA},
+                COLUMN_BLOCK_URL_ID + " = ?", new String[]{String.valueOf(urlId)},
+                null, null, COLUMN_BLOCK_START + " DESC", "1");
+        StoredPriceBlock stored = null;
+        if (cursor.moveToFirst()) {
+            try {
+                stored = new StoredPriceBlock(cursor.getLong(0), PriceSeries.Block.fromBytes(cursor.getBlob(1)));
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Discarding corrupt price block for URL ID " + urlId, e);
+            }
+        }
+        cursor.close();
+        return stored;
+    }
+    
+    /**
+     * Stores a new price block
+     *
+     * @return Row ID of the block, for later updates
+     */
+    public long insertPriceBlock(long urlId, PriceSeries.Block block) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        ContentValues values = priceBlockValues(block);
+        values.put(COLUMN_BLOCK_URL_ID, urlId);
+        long rowId = db.insert(TABLE_PRICE_BLOCKS, null, values);
+        return rowId;
+    }
+    
+    /**
+     * Rewrites a block after points were appended to it
+     */
+    public void updatePriceBlock(long rowId, PriceSeries.Block block) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.update(TABLE_PRICE_BLOCKS, priceBlockValues(block), COLUMN_BLOCK_ID + " = ?",
+                new String[]{String.valueOf(rowId)});
+    }
+    
+    private ContentValues priceBlockValues(PriceSeries.Block block) {
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_BLOCK_START, block.getStartTime());
+        values.put(COLUMN_BLOCK_END, block.getEndTime());
+        values.put(COLUMN_BLOCK_COUNT, block.size());
+        values.put(COLUMN_BLOCK_DATA, block.toBytes());
+        return values;
+    }
+    
+    /**
+     * Encoded price blocks of a URL overlapping [from, to], oldest first
+     */
+    public List<byte[]> getPriceBlocks(long urlId, long from, long to) {
+        List<byte[]> blocks = new ArrayList<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_PRICE_BLOCKS, new String[]{COLUMN_BLOCK_DATA},
+                COLUMN_BLOCK_URL_ID + " = ? AND " + COLUMN_BLOCK_START + " <= ? AND " + COLUMN_BLOCK_END + " >= ?",
+                new String[]{String.valueOf(urlId), String.valueOf(to), String.valueOf(from)},
+                null, null, COLUMN_BLOCK_START + " ASC");
+        while (cursor.moveToNext()) {
+            blocks.add(cursor.getBlob(0));
+        }
+        cursor.close();
+        return blocks;
+    }
+    
+    /**
+     * Adds one check to the URL's running statistics, in place and without reading
+     * its history. Called once per check, inside CheckResultWriter's transaction.
+     *
+     * @param failed True if the page could not be fetched
+     * @param latencyMs How long a successful check took
+     */
+    public void recordCheck(long urlId, long timestamp, boolean failed, boolean ticketsFound, long latencyMs) {
+        recordCheck(urlId, timestamp, failed, ticketsFound, latencyMs, null);
+    }
+    
+    /**
+     * @param registryUpdates Collects the registry update, to be run once the caller's
+     *                        transaction has committed, or null to update the registry now
+     */
+    void recordCheck(long urlId, long timestamp, boolean failed, boolean ticketsFound, long latencyMs,
+            List<Runnable> registryUpdates) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized (statementLock) {
+            compileStatements(db);
+            SQLiteStatement statement = recordCheckStatement;
+            statement.bindLong(1, timestamp);
+            statement.bindLong(2, failed ? 1 : 0);
+            statement.bindLong(3, !failed && ticketsFound ? 1 : 0);
+            statement.bindLong(4, failed ? -1 : UrlStats.latencyBucket(latencyMs));
+            statement.bindLong(5, urlId);
+            if (statement.executeUpdateDelete() == 0) {
+                return;
+            }
+        }
+        if (registry.isLoaded()) {
+            // Read back rather than recomputed, so a batch that is rolled back and retried counts once
+            UrlStats stats = readStats(db, urlId);
+            updateRegistry(registryUpdates, () -> registry.update(urlId, url -> url.setStats(stats)));
+        }
+    }
+    
+    private static void updateRegistry(List<Runnable> registryUpdates, Runnable update) {
+        if (registryUpdates != null) {
+            registryUpdates.add(update);
+        } else {
+            update.run();
+        }
+    }
+    
+    /**
+     * Running statistics of a URL, from memory
+     */
+    public UrlStats getUrlStats(long urlId) {
+        MonitoredUrl url = getUrlById(urlId);
+        return url != null ? url.getStats() : UrlStats.EMPTY;
+    }
+    
+    private static UrlStats readStats(SQLiteDatabase db, long urlId) {
+        Cursor cursor = db.query(TABLE_STATS, STATS_COLUMNS, COLUMN_STATS_URL_ID + " = ?",
+                new String[]{String.valueOf(urlId)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? readStats(cursor, 0) : UrlStats.EMPTY;
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Maps STATS_COLUMNS starting at the given column; a missing row reads as no checks
+     */
+    private static UrlStats readStats(Cursor cursor, int first) {
+        long[] latencyCounts = new long[UrlStats.LATENCY_BUCKETS];
+        for (int i = 0; i < latencyCounts.length; i++) {
+            latencyCounts[i] = cursor.getLong(first + 6 + i);
+        }
+        return new UrlStats(cursor.getLong(first), cursor.getLong(first + 1), cursor.getLong(first + 2),
+                cursor.getLong(first + 3), cursor.getLong(first + 4), cursor.getLong(first + 5), latencyCounts);
+    }
+    
+    public void addTicketHistory(long urlId, long timestamp, String note) {
+        addTicketHistory(urlId, timestamp, note, TicketHistoryEntry.KIND_EVENT);
+    }
+    
+    /**
+     * @param kind TicketHistoryEntry.KIND_ERROR for failed checks, which HistoryRetention rolls up and expires
+     */
+    public void addTicketHistory(long urlId, long timestamp, String note, int kind) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        synchronized (statementLock) {
+            compileStatements(db);
+            SQLiteStatement statement = insertHistoryStatement;
+            statement.bindLong(1, urlId);
+            statement.bindLong(2, timestamp);
+            if (note != null) {
+                statement.bindString(3, note);
+            } else {
+                statement.bindNull(3);
+            }
+            statement.bindLong(4, kind);
+            statement.bindLong(5, timestamp);
+            try {
+                statement.executeInsert();
+            } catch (SQLException e) {
+                // Like db.insert(): the URL may have been deleted while it was being checked
+                Log.e(TAG, "Error adding ticket history for URL ID " + urlId, e);
+                return;
+            }
+        }
         Log.d(TAG, "Added ticket history for URL ID " + urlId + ": " + note);
     }
     
     public List<TicketHistoryEntry> getTicketHistory(long urlId) {
-        List<TicketHistoryEntry> historyList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_HISTORY + 
-                         " WHERE " + COLUMN_HISTORY_URL_ID + " = ?" +
-                         " ORDER BY " + COLUMN_HISTORY_TIMESTAMP + " DESC";
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, new String[]{String.valueOf(urlId)});
-
-        if (cursor.moveToFirst()) {
-            do {
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HISTORY_ID));
-                long timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_HISTORY_TIMESTAMP));
-                String note = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_HISTORY_NOTE));
-                
-                historyList.add(new TicketHistoryEntry(id, urlId, timestamp, note));
-            } while (cursor.moveToNext());
+        Cursor cursor = db.query(TABLE_HISTORY, HISTORY_COLUMNS,
+                COLUMN_HISTORY_URL_ID + " = ?", new String[]{String.valueOf(urlId)},
+                null, null, HISTORY_ORDER);
+        return readHistory(cursor);
+    }
+    
+    /**
+     * One page of a URL's history, newest first
+     *
+     * @param after Last entry of the previous page, or null for the first page
+     */
+    public List<TicketHistoryEntry> getTicketHistoryPage(long urlId, TicketHistoryEntry after, int limit) {
+        return getHistoryPage(COLUMN_HISTORY_URL_ID + " = ?", String.valueOf(urlId), after, limit);
+    }
+    
+    /**
+     * One page of the history of all URLs, newest first
+     *
+     * @param after Last entry of the previous page, or null for the first page
+     */
+    public List<TicketHistoryEntry> getAllTicketHistoryPage(TicketHistoryEntry after, int limit) {
+        return getHistoryPage(null, null, after, limit);
+    }
+    
+    /**
+     * Reads the page following the given entry from where it left off in the index,
+     * rather than skipping rows with OFFSET, so a page costs the same however
+     * far down the history it is
+     */
+    private List<TicketHistoryEntry> getHistoryPage(String selection, String selectionArg,
+            TicketHistoryEntry after, int limit) {
+        List<String> where = new ArrayList<>();
+        List<String> args = new ArrayList<>();
+        if (selection != null) {
+            where.add(selection);
+            args.add(selectionArg);
+        }
+        if (after != null) {
+            // Written as a range on timestamp so the index scan starts at the previous page's end
+            where.add(COLUMN_HISTORY_TIMESTAMP + " <= ? AND (" + COLUMN_HISTORY_TIMESTAMP + " < ? OR " +
+                    COLUMN_HISTORY_ID + " > ?)");
+            args.add(String.valueOf(after.getTimestamp()));
+            args.add(String.valueOf(after.getTimestamp()));
+            args.add(String.valueOf(after.getId()));
+        }
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_HISTORY, HISTORY_COLUMNS,
+                where.isEmpty() ? null : TextUtils.join(" AND ", where), args.toArray(new String[0]),
+                null, null, HISTORY_ORDER, String.valueOf(limit));
+        return readHistory(cursor);
+    }
+    
+    /**
+     * Maps every row of a cursor over HISTORY_COLUMNS and closes it
+     */
+    private static List<TicketHistoryEntry> readHistory(Cursor cursor) {
+        List<TicketHistoryEntry> historyList = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            historyList.add(readHistoryEntry(cursor));
         }
         cursor.close();
-        db.close();
         return historyList;
     }
+    
+    /**
+     * Maps a row read with HISTORY_COLUMNS
+     */
+    private static TicketHistoryEntry readHistoryEntry(Cursor cursor) {
+        long timestamp = cursor.getLong(1);
+        return new TicketHistoryEntry(cursor.getLong(0), cursor.getLong(6), timestamp, cursor.getString(2),
+                cursor.getInt(3), Math.max(1, cursor.getInt(4)),
+                cursor.isNull(5) ? timestamp : cursor.getLong(5));
+    }
+    
+    long countTicketHistory(long urlId) {
+        return DatabaseUtils.queryNumEntries(this.getReadableDatabase(), TABLE_HISTORY,
+                COLUMN_HISTORY_URL_ID + " = ?", new String[]{String.valueOf(urlId)});
+    }
+    
+    /**
+     * IDs of the URLs that have any history, for HistoryRetention
+     */
+    List<Long> getHistoryUrlIds() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.query(true, TABLE_HISTORY, new String[]{COLUMN_HISTORY_URL_ID},
+                null, null, null, null, null, null);
+        List<Long> ids = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getLong(0));
+        }
+        cursor.close();
+        return ids;
+    }
+    
+    /**
+     * Rolls runs of consecutive identical errors in one URL's history up into
+     * their first row, looking at up to limit rows from fromId on in one transaction.
+     * The surviving row keeps the latest timestamp and counts the merged entries.
+     *
+     * @return ID to continue from, or -1 once the end of the history was reached
+     */
+    long rollUpErrorHistory(long urlId, long fromId, int limit) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        long next = -1;
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.query(TABLE_HISTORY, HISTORY_COLUMNS,
+                    COLUMN_HISTORY_URL_ID + " = ? AND " + COLUMN_HISTORY_ID + " >= ?",
+                    new String[]{String.valueOf(urlId), String.valueOf(fromId)},
+                    null, null, COLUMN_HISTORY_ID, String.valueOf(limit));
+            int rows = cursor.getCount();
+            TicketHistoryEntry head = null;
+            int merged = 0;
+            long lastTimestamp = 0;
+            List<Long> mergedIds = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                TicketHistoryEntry entry = readHistoryEntry(cursor);
+                if (head != null && entry.isError() && sameNote(head, entry)) {
+                    merged += entry.getRepeatCount();
+                    lastTimestamp = entry.getTimestamp();
+                    mergedIds.add(entry.getId());
+                    continue;
+                }
+                writeRollUp(db, head, merged, lastTimestamp, mergedIds);
+                head = entry.isError() ? entry : null;
+                merged = 0;
+                mergedIds.clear();
+                next = entry.getId() + 1;
+            }
+            writeRollUp(db, head, merged, lastTimestamp, mergedIds);
+            cursor.close();
+            if (rows < limit) {
+                next = -1;
+            } else if (head != null) {
+                // The run may go on past this batch, so the next one starts at its head
+                next = head.getId();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return next;
+    }
+    
+    private static boolean sameNote(TicketHistoryEntry a, TicketHistoryEntry b) {
+        return a.getNote() == null ? b.getNote() == null : a.getNote().equals(b.getNote());
+    }
+    
+    private void writeRollUp(SQLiteDatabase db, TicketHistoryEntry head, int merged, long lastTimestamp,
+            List<Long> mergedIds) {
+        if (head == null || mergedIds.isEmpty()) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_HISTORY_REPEAT_COUNT, head.getRepeatCount() + merged);
+        values.put(COLUMN_HISTORY_TIMESTAMP, lastTimestamp);
+        values.put(COLUMN_HISTORY_FIRST_TIMESTAMP, head.getFirstTimestamp());
+        db.update(TABLE_HISTORY, values, COLUMN_HISTORY_ID + " = ?", new String[]{String.valueOf(head.getId())});
+        for (long id : mergedIds) {
+            db.delete(TABLE_HISTORY, COLUMN_HISTORY_ID + " = ?", new String[]{String.valueOf(id)});
+        }
+    }
+    
+    /**
+     * Deletes up to limit error entries whose latest occurrence is older than cutoff
+     *
+     * @return Number of rows deleted
+     */
+    int deleteErrorHistoryBefore(long cutoff, int limit) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(TABLE_HISTORY, COLUMN_HISTORY_ID + " IN (SELECT " + COLUMN_HISTORY_ID +
+                        " FROM " + TABLE_HISTORY + " WHERE " + COLUMN_HISTORY_KIND + " = ? AND " +
+                        COLUMN_HISTORY_TIMESTAMP + " < ? LIMIT ?)",
+                new String[]{String.valueOf(TicketHistoryEntry.KIND_ERROR), String.valueOf(cutoff),
+                        String.valueOf(limit)});
+    }
+    
+    /**
+     * Deletes up to limit of a URL's oldest entries beyond the newest keep
+     *
+     * @return Number of rows deleted
+     */
+    int trimHistory(long urlId, int keep, int limit) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        return db.delete(TABLE_HISTORY, COLUMN_HISTORY_ID + " IN (SELECT " + COLUMN_HISTORY_ID +
+                        " FROM " + TABLE_HISTORY + " WHERE " + COLUMN_HISTORY_URL_ID + " = ?" +
+                        " ORDER BY " + COLUMN_HISTORY_TIMESTAMP + " DESC LIMIT ? OFFSET ?)",
+                new String[]{String.valueOf(urlId), String.valueOf(limit), String.valueOf(keep)});
+    }
+    
+    /**
+     * Switches a file created before auto_vacuum was set to incremental mode.
+     * That takes one full VACUUM, which rewrites the whole file and holds the
+     * write lock throughout, so it is only done from idle maintenance.
+     *
+     * @return true if the file had to be rewritten
+     */
+    boolean enableIncrementalVacuum() {
+        SQLiteDatabase db = this.getWritableDatabase();
+        if (pragmaLong(db, "auto_vacuum") == 2) {
+            return false;
+        }
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        db.execSQL("VACUUM");
+        Log.d(TAG, "Database vacuumed into incremental auto_vacuum mode");
+        return true;
+    }
+    
+    /**
+     * Returns up to pages free pages to the file system
+     *
+     * @return Number of free pages left in the file
+     */
+    long incrementalVacuum(int pages) {
+        SQLiteDatabase db = this.getWritableDatabase();
+        db.execSQL("PRAGMA incremental_vacuum(" + pages + ")");
+        return pragmaLong(db, "freelist_count");
+    }
+    
+    private static long pragmaLong(SQLiteDatabase db, String pragma) {
+        Cursor cursor = db.rawQuery("PRAGMA " + pragma, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
 
     public void deleteUrl(long id) {
         SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_URLS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
-        
-        // Also delete history entries for this URL
-        db.delete(TABLE_HISTORY, COLUMN_HISTORY_URL_ID + " = ?", new String[]{String.valueOf(id)});
-        
-        db.close();
+        db.beginTransaction();
+        try {
+            // History entries go with the URL through ON DELETE CASCADE
+            db.delete(TABLE_URLS, COLUMN_ID + " = ?", new String[]{String.valueOf(id)});
+            db.delete(TABLE_PRICE_BLOCKS, COLUMN_BLOCK_URL_ID + " = ?", new String[]{String.valueOf(id)});
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        registry.remove(id);
     }
 
     public List<MonitoredUrl> getActiveUrls() {
-        List<MonitoredUrl> urlList = new ArrayList<>();
-        String selectQuery = "SELECT * FROM " + TABLE_URLS + " WHERE " + COLUMN_ACTIVE + " = 1";
+        return getRegistry().getAll(true);
+    }
+    
+    /**
+     * Active URLs whose address canonicalises to the given URL, i.e. duplicates of one page
+     */
+    public List<MonitoredUrl> getActiveUrlsByCanonicalUrl(String canonicalUrl) {
+        return getRegistry().getActiveByCanonicalUrl(canonicalUrl);
+    }
+    
+    /**
+     * A copy of the URL with the given ID, or null if there is none
+     */
+    public MonitoredUrl getUrlById(long id) {
+        return getRegistry().get(id);
+    }
+    
+    /**
+     * The in-memory URLs behind the read methods, loaded from disk on first use;
+     * add a listener to hear about changes of single rows
+     */
+    public UrlRegistry getRegistry() {
+        synchronized (registry) {
+            if (!registry.isLoaded()) {
+                SQLiteDatabase db = this.getReadableDatabase();
+                registry.load(readUrls(db.query(URLS_WITH_STATS, URL_WITH_STATS_COLUMNS,
+                        null, null, null, null, null)));
+                Log.d(TAG, "Loaded URL registry");
+            }
+        }
+        return registry;
+    }
+    
+    /**
+     * Reads a changed URL row back into the registry
+     */
+    private void refreshRegistry(long id) {
+        if (!registry.isLoaded()) {
+            return;
+        }
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
-
-        if (cursor.moveToFirst()) {
-            do {
-                long id = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_ID));
-                String url = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_URL));
-                int frequency = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_FREQUENCY));
-                
-                // Get event details
-                String eventName = "";
-                String eventDate = "";
-                String eventType = MonitoredUrl.EVENT_TYPE_OTHER;
-                long lastChecked = 0;
-                boolean ticketsFound = false;
-                
-                try {
-                    eventName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_NAME));
-                    eventDate = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_DATE));
-                    
-                    // Try to get new columns
-                    try {
-                        eventType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_TYPE));
-                        lastChecked = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_CHECKED));
-                        ticketsFound = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TICKETS_FOUND)) == 1;
-                    } catch (Exception e) {
-                        // Use default values if columns don't exist yet
-                        Log.w(TAG, "Could not read new columns for active URLs, using defaults");
-                    }
-                } catch (Exception e) {
-                    Log.w(TAG, "Could not read event details columns", e);
-                }
-                
-                urlList.add(new MonitoredUrl(id, url, frequency, true, 
-                    eventName, eventDate, eventType, lastChecked, ticketsFound));
-            } while (cursor.moveToNext());
+        List<MonitoredUrl> urls = readUrls(db.query(URLS_WITH_STATS, URL_WITH_STATS_COLUMNS,
+                TABLE_URLS + "." + COLUMN_ID + " = ?",
+                new String[]{String.valueOf(id)}, null, null, null));
+        if (urls.isEmpty()) {
+            registry.remove(id);
+        } else {
+            registry.put(urls.get(0));
+        }
+    }
+    
+    /**
+     * Maps every row of a URL cursor and closes it
+     */
+    private static List<MonitoredUrl> readUrls(Cursor cursor) {
+        List<MonitoredUrl> urlList = new ArrayList<>(cursor.getCount());
+        try {
+            UrlRowMapper mapper = new UrlRowMapper(cursor);
+            while (cursor.moveToNext()) {
+                urlList.add(mapper.map(cursor));
+            }
+        } finally {
+            cursor.close();
         }
-        cursor.close();
-        db.close();
         return urlList;
     }
     
-    public MonitoredUrl getUrlById(long id) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.query(TABLE_URLS, null, COLUMN_ID + "=?", 
-                new String[]{String.valueOf(id)}, null, null, null);
+    /**
+     * Reads URL rows into MonitoredUrls. Column indices are looked up once per
+     * cursor; columns left out of its projection keep MonitoredUrl's defaults.
+     */
+    private static final class UrlRowMapper {
+        private final int id;
+        private final int url;
+        private final int frequency;
+        private final int active;
+        private final int eventName;
+        private final int eventDate;
+        private final int eventType;
+        private final int lastChecked;
+        private final int ticketsFound;
+        private final int etag;
+        private final int lastModified;
+        private final int positivePhrases;
+        private final int negativePhrases;
+        private final int contentFingerprint;
+        private final int targetPrice;
+        private final int alertedTargetPrice;
+        // First of the STATS_COLUMNS, which follow each other
+        private final int stats;
         
-        MonitoredUrl url = null;
-        if (cursor.moveToFirst()) {
-            String urlStr = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_URL));
-            int frequency = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_FREQUENCY));
-            boolean active = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_ACTIVE)) == 1;
-            
-            // Get event details
-            String eventName = "";
-            String eventDate = "";
-            String eventType = MonitoredUrl.EVENT_TYPE_OTHER;
-            long lastChecked = 0;
-            boolean ticketsFound = false;
-            
-            try {
-                eventName = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_NAME));
-                eventDate = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_DATE));
-                
-                // Try to get new columns
-                try {
-                    eventType = cursor.getString(cursor.getColumnIndexOrThrow(COLUMN_EVENT_TYPE));
-                    lastChecked = cursor.getLong(cursor.getColumnIndexOrThrow(COLUMN_LAST_CHECKED));
-                    ticketsFound = cursor.getInt(cursor.getColumnIndexOrThrow(COLUMN_TICKETS_FOUND)) == 1;
-                } catch (Exception e) {
-                    // Use default values if columns don't exist yet
-                    Log.w(TAG, "Could not read new columns for URL ID " + id + ", using defaults");
-                }
-            } catch (Exception e) {
-                Log.w(TAG, "Could not read event details columns", e);
+        UrlRowMapper(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+            url = cursor.getColumnIndex(COLUMN_URL);
+            frequency = cursor.getColumnIndex(COLUMN_FREQUENCY);
+            active = cursor.getColumnIndex(COLUMN_ACTIVE);
+            eventName = cursor.getColumnIndex(COLUMN_EVENT_NAME);
+            eventDate = cursor.getColumnIndex(COLUMN_EVENT_DATE);
+            eventType = cursor.getColumnIndex(COLUMN_EVENT_TYPE);
+            lastChecked = cursor.getColumnIndex(COLUMN_LAST_CHECKED);
+            ticketsFound = cursor.getColumnIndex(COLUMN_TICKETS_FOUND);
+            etag = cursor.getColumnIndex(COLUMN_ETAG);
+            lastModified = cursor.getColumnIndex(COLUMN_LAST_MODIFIED);
+            positivePhrases = cursor.getColumnIndex(COLUMN_POSITIVE_PHRASES);
+            negativePhrases = cursor.getColumnIndex(COLUMN_NEGATIVE_PHRASES);
+            contentFingerprint = cursor.getColumnIndex(COLUMN_CONTENT_FINGERPRINT);
+            targetPrice = cursor.getColumnIndex(COLUMN_TARGET_PRICE);
+            alertedTargetPrice = cursor.getColumnIndex(COLUMN_ALERTED_TARGET_PRICE);
+            stats = cursor.getColumnIndex(COLUMN_STATS_TOTAL_CHECKS);
+        }
+        
+        MonitoredUrl map(Cursor cursor) {
+            // Event types are backfilled by the v12 migration and always written since
+            String type = eventType != -1 ? cursor.getString(eventType) : null;
+            MonitoredUrl monitoredUrl = new MonitoredUrl(
+                    cursor.getLong(id),
+                    url != -1 ? cursor.getString(url) : null,
+                    frequency != -1 ? cursor.getInt(frequency) : 0,
+                    active != -1 && cursor.getInt(active) == 1,
+                    eventName != -1 ? cursor.getString(eventName) : "",
+                    eventDate != -1 ? cursor.getString(eventDate) : "",
+                    type != null ? type : MonitoredUrl.EVENT_TYPE_OTHER,
+                    lastChecked != -1 ? cursor.getLong(lastChecked) : 0,
+                    ticketsFound != -1 && cursor.getInt(ticketsFound) == 1);
+            if (etag != -1) {
+                monitoredUrl.setEtag(cursor.getString(etag));
+            }
+            if (lastModified != -1) {
+                monitoredUrl.setLastModified(cursor.getString(lastModified));
+            }
+            if (positivePhrases != -1) {
+                monitoredUrl.setPositivePhrases(cursor.getString(positivePhrases));
+            }
+            if (negativePhrases != -1) {
+                monitoredUrl.setNegativePhrases(cursor.getString(negativePhrases));
+            }
+            if (contentFingerprint != -1) {
+                monitoredUrl.setContentFingerprint(cursor.getLong(contentFingerprint));
+            }
+            if (targetPrice != -1) {
+                monitoredUrl.setTargetPrice(cursor.getLong(targetPrice));
+            }
+            if (alertedTargetPrice != -1) {
+                monitoredUrl.setAlertedTargetPrice(cursor.getLong(alertedTargetPrice));
             }
-            
-            url = new MonitoredUrl(id, urlStr, frequency, active, 
-                eventName, eventDate, eventType, lastChecked, ticketsFound);
+            if (stats != -1) {
+                monitoredUrl.setStats(readStats(cursor, stats));
+            }
+            return monitoredUrl;
+        }
+    }
+    
+    /**
+     * Scheduling columns of one URL
+     */
+    public static class ScheduledUrl {
+        public final long id;
+        public final int frequency;
+        public final String eventDate;
+        // 0 if the URL has no stored due time
+        public final long nextDue;
+        
+        ScheduledUrl(long id, int frequency, String eventDate, long nextDue) {
+            this.id = id;
+            this.frequency = frequency;
+            this.eventDate = eventDate;
+            this.nextDue = nextDue;
+        }
+    }
+    
+    /**
+     * A price block together with the row it is stored in
+     */
+    public static class StoredPriceBlock {
+        public final long rowId;
+        public final PriceSeries.Block block;
+        
+        StoredPriceBlock(long rowId, PriceSeries.Block block) {
+            this.rowId = rowId;
+            this.block = block;
         }
-        cursor.close();
-        db.close();
-        return url;
     }
-}
\ No newline at end of file
+}
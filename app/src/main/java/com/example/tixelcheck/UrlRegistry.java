@@ -0,0 +1,151 @@
+package com.example.tixelcheck;
+
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * In-memory copy of every monitored URL, keyed by URL ID.
+ *
+ * UrlDatabase loads it once and writes every change of a URL row through to
+ * it, so reads of URLs never touch the disk. Entries are handed out as copies
+ * and listeners hear about each changed row rather than reloading the table.
+ */
+public class UrlRegistry {
+
+    /**
+     * Told about every added, changed or deleted URL, on the thread that changed it
+     */
+    public interface Listener {
+        /**
+         * @param url Copy of the URL as stored now, or null if it was deleted
+         */
+        void onUrlChanged(long urlId, MonitoredUrl url);
+    }
+
+    /**
+     * Change applied to the registry's own instance of a URL
+     */
+    interface Change {
+        void apply(MonitoredUrl url);
+    }
+
+    private final LongSparseArray<MonitoredUrl> urls = new LongSparseArray<>();
+    // Canonical form of each URL's address, for finding duplicates
+    private final LongSparseArray<String> canonicalUrls = new LongSparseArray<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private boolean loaded;
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Fills the registry with every URL row. Changes made before it is loaded are dropped.
+     */
+    synchronized void load(List<MonitoredUrl> all) {
+        urls.clear();
+        canonicalUrls.clear();
+        for (MonitoredUrl url : all) {
+            store(url);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Copy of a URL, or null if there is no URL with that ID
+     */
+    public synchronized MonitoredUrl get(long urlId) {
+        MonitoredUrl url = urls.get(urlId);
+        return url != null ? new MonitoredUrl(url) : null;
+    }
+
+    /**
+     * Copies of all URLs, or of the active ones only, in ID order
+     */
+    public synchronized List<MonitoredUrl> getAll(boolean activeOnly) {
+        List<MonitoredUrl> result = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            MonitoredUrl url = urls.valueAt(i);
+            if (!activeOnly || url.isActive()) {
+                result.add(new MonitoredUrl(url));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Copies of the active URLs whose address canonicalises to the given URL
+     */
+    public synchronized List<MonitoredUrl> getActiveByCanonicalUrl(String canonicalUrl) {
+        List<MonitoredUrl> result = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            MonitoredUrl url = urls.valueAt(i);
+            if (url.isActive() && canonicalUrl.equals(canonicalUrls.valueAt(i))) {
+                result.add(new MonitoredUrl(url));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Stores a URL as just read from its row
+     */
+    void put(MonitoredUrl url) {
+        synchronized (this) {
+            if (!loaded) {
+                return;
+            }
+            store(new MonitoredUrl(url));
+        }
+        notifyListeners(url.getId(), new MonitoredUrl(url));
+    }
+
+    /**
+     * Applies a change made to a URL's row without reading the row back
+     */
+    void update(long urlId, Change change) {
+        MonitoredUrl changed;
+        synchronized (this) {
+            MonitoredUrl url = urls.get(urlId);
+            if (url == null) {
+                return;
+            }
+            change.apply(url);
+            changed = new MonitoredUrl(url);
+        }
+        notifyListeners(urlId, changed);
+    }
+
+    void remove(long urlId) {
+        synchronized (this) {
+            if (urls.get(urlId) == null) {
+                return;
+            }
+            urls.remove(urlId);
+            canonicalUrls.remove(urlId);
+        }
+        notifyListeners(urlId, null);
+    }
+
+    private void store(MonitoredUrl url) {
+        urls.put(url.getId(), url);
+        canonicalUrls.put(url.getId(), url.getUrl() != null ? UrlCanonicalizer.canonicalize(url.getUrl()) : null);
+    }
+
+    private void notifyListeners(long urlId, MonitoredUrl url) {
+        for (Listener listener : listeners) {
+            listener.onUrlChanged(urlId, url);
+        }
+    }
+}
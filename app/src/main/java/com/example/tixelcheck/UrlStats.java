@@ -0,0 +1,152 @@
+package com.example.tixelcheck;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Running check statistics of one URL, as kept in its url_stats row.
+ *
+ * UrlDatabase adds every check to the row in place, so nothing here is ever
+ * recomputed from history. Check latencies are counted in a histogram of
+ * power-of-two buckets, which gives the median to within a factor of two
+ * from a fixed number of counters.
+ */
+public class UrlStats {
+    public static final int LATENCY_BUCKETS = 12;
+    // Upper bound of the first bucket; each further bucket is twice as wide
+    private static final long FIRST_BUCKET_MS = 64;
+
+    static final UrlStats EMPTY = new UrlStats(0, 0, 0, 0, 0, 0, new long[LATENCY_BUCKETS]);
+
+    private final long totalChecks;
+    private final long errorCount;
+    private final long lastAvailable;
+    private final long windowCount;
+    private final long firstWindowStart;
+    private final long lastWindowStart;
+    private final long[] latencyCounts;
+
+    /**
+     * @param lastAvailable Time of the last check that found tickets, 0 if none
+     * @param windowCount Number of times tickets appeared after a check without them
+     * @param latencyCounts Successful checks per latency bucket
+     */
+    public UrlStats(long totalChecks, long errorCount, long lastAvailable, long windowCount,
+            long firstWindowStart, long lastWindowStart, long[] latencyCounts) {
+        this.totalChecks = totalChecks;
+        this.errorCount = errorCount;
+        this.lastAvailable = lastAvailable;
+        this.windowCount = windowCount;
+        this.firstWindowStart = firstWindowStart;
+        this.lastWindowStart = lastWindowStart;
+        this.latencyCounts = Arrays.copyOf(latencyCounts, LATENCY_BUCKETS);
+    }
+
+    /**
+     * Histogram bucket of a check that took the given time
+     */
+    public static int latencyBucket(long latencyMs) {
+        if (latencyMs < FIRST_BUCKET_MS) {
+            return 0;
+        }
+        int bucket = 64 - Long.numberOfLeadingZeros(latencyMs / FIRST_BUCKET_MS);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    public long getTotalChecks() {
+        return totalChecks;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Fraction of checks whose page could not be fetched, 0 if none ran
+     */
+    public double getErrorRate() {
+        return totalChecks == 0 ? 0 : (double) errorCount / totalChecks;
+    }
+
+    public long getLastAvailable() {
+        return lastAvailable;
+    }
+
+    /**
+     * Time tickets were last seen, or null if they never were
+     */
+    public String getFormattedLastAvailable() {
+        if (lastAvailable == 0) {
+            return null;
+        }
+        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy, hh:mma", Locale.getDefault());
+        return sdf.format(new Date(lastAvailable));
+    }
+
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * Mean time from one appearance of tickets to the next, or -1 until they have appeared twice
+     */
+    public long getMeanTimeBetweenWindowsMs() {
+        return windowCount < 2 ? -1 : (lastWindowStart - firstWindowStart) / (windowCount - 1);
+    }
+
+    /**
+     * Middle of the latency bucket holding the median successful check, or -1 if there were none
+     */
+    public long getMedianLatencyMs() {
+        long samples = 0;
+        for (long count : latencyCounts) {
+            samples += count;
+        }
+        if (samples == 0) {
+            return -1;
+        }
+        long middle = (samples - 1) / 2;
+        long seen = 0;
+        int bucket = 0;
+        while (seen + latencyCounts[bucket] <= middle) {
+            seen += latencyCounts[bucket];
+            bucket++;
+        }
+        long lower = bucket == 0 ? 0 : FIRST_BUCKET_MS << (bucket - 1);
+        long upper = FIRST_BUCKET_MS << bucket;
+        return (lower + upper) / 2;
+    }
+
+    /**
+     * One-line summary for a URL's card, or null before its first check
+     */
+    public String getSummary() {
+        if (totalChecks == 0) {
+            return null;
+        }
+        StringBuilder summary = new StringBuilder(String.format(Locale.US, "%d checks, %.1f%% errors",
+                totalChecks, getErrorRate() * 100));
+        long median = getMedianLatencyMs();
+        if (median >= 0) {
+            summary.append(String.format(Locale.US, ", ~%d ms typical", median));
+        }
+        long meanGap = getMeanTimeBetweenWindowsMs();
+        if (meanGap >= 0) {
+            summary.append(", tickets every ").append(formatDuration(meanGap));
+        }
+        return summary.toString();
+    }
+
+    private static String formatDuration(long ms) {
+        long minutes = ms / (60 * 1000);
+        if (minutes < 60) {
+            return minutes + " min";
+        }
+        if (minutes < 48 * 60) {
+            return (minutes / 60) + " h";
+        }
+        return (minutes / (24 * 60)) + " days";
+    }
+}
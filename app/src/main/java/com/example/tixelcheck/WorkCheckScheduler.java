@@ -0,0 +1,141 @@
+package com.example.tixelcheck;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.OutOfQuotaPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules checks with WorkManager instead of alarms.
+ *
+ * URLs polled less often than WorkManager's 15 minute periodic minimum get
+ * periodic work. Hot URLs, polled more often than that, get a chain of one-time
+ * requests, each scheduling the next when it finishes; a hot URL that is already
+ * overdue runs as expedited work. Work is unique per canonical URL, so duplicate
+ * rows share one schedule, and only runs with a network connection.
+ */
+public class WorkCheckScheduler {
+    private static final String TAG = "WorkCheckScheduler";
+    static final String PERIODIC_WORK_PREFIX = "check-periodic:";
+    static final String ONE_TIME_WORK_PREFIX = "check-once:";
+    static final String WORK_TAG = "ticket-check";
+
+    /**
+     * Schedules the next check of a URL one polling interval from now
+     */
+    public static void schedule(Context context, MonitoredUrl url) {
+        enqueue(context, url, false);
+    }
+
+    /**
+     * Schedules the follow-up check from inside a running TicketCheckWorker. One-time
+     * work is appended to the running chain rather than replacing (and so cancelling) it.
+     */
+    static void scheduleFromWorker(Context context, MonitoredUrl url) {
+        enqueue(context, url, true);
+    }
+
+    /**
+     * Runs a check of the URL right away as expedited work
+     */
+    public static void checkNow(Context context, MonitoredUrl url) {
+        String canonicalUrl = UrlCanonicalizer.canonicalize(url.getUrl());
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(TicketCheckWorker.class)
+                .setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+                .setConstraints(networkConstraints())
+                .setInputData(TicketCheckWorker.inputData(url.getId(), canonicalUrl, System.currentTimeMillis()))
+                .addTag(WORK_TAG)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(ONE_TIME_WORK_PREFIX + canonicalUrl, ExistingWorkPolicy.REPLACE, request);
+        Log.d(TAG, "Enqueued expedited check for URL ID " + url.getId());
+    }
+
+    /**
+     * Stops the checks of a URL. Work shared with still-active duplicates is
+     * handed over to one of them instead of being cancelled.
+     */
+    public static void cancel(Context context, long urlId) {
+        UrlDatabase database = UrlDatabase.getInstance(context);
+        MonitoredUrl url = database.getUrlById(urlId);
+        if (url == null) {
+            return;
+        }
+        String canonicalUrl = UrlCanonicalizer.canonicalize(url.getUrl());
+        List<MonitoredUrl> duplicates = database.getActiveUrlsByCanonicalUrl(canonicalUrl);
+        for (MonitoredUrl duplicate : duplicates) {
+            if (duplicate.getId() != urlId) {
+                schedule(context, duplicate);
+                return;
+            }
+        }
+        cancelCanonical(context, canonicalUrl);
+    }
+
+    /**
+     * Cancels all work for a canonical URL
+     */
+    static void cancelCanonical(Context context, String canonicalUrl) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        workManager.cancelUniqueWork(PERIODIC_WORK_PREFIX + canonicalUrl);
+        workManager.cancelUniqueWork(ONE_TIME_WORK_PREFIX + canonicalUrl);
+        Log.d(TAG, "Canceled work for " + canonicalUrl);
+    }
+
+    private static void enqueue(Context context, MonitoredUrl url, boolean fromWorker) {
+        WorkManager workManager = WorkManager.getInstance(context);
+        String canonicalUrl = UrlCanonicalizer.canonicalize(url.getUrl());
+        long interval = TicketCheckerAlarm.getCheckIntervalMillis(context, url);
+        long now = System.currentTimeMillis();
+
+        if (interval >= PeriodicWorkRequest.MIN_PERIODIC_INTERVAL_MILLIS) {
+            PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                    TicketCheckWorker.class, interval, TimeUnit.MILLISECONDS)
+                    .setInitialDelay(interval, TimeUnit.MILLISECONDS)
+                    .setConstraints(networkConstraints())
+                    .setInputData(TicketCheckWorker.inputData(url.getId(), canonicalUrl, 0))
+                    .addTag(WORK_TAG)
+                    .build();
+            workManager.cancelUniqueWork(ONE_TIME_WORK_PREFIX + canonicalUrl);
+            workManager.enqueueUniquePeriodicWork(PERIODIC_WORK_PREFIX + canonicalUrl,
+                    ExistingPeriodicWorkPolicy.UPDATE, request);
+            Log.d(TAG, "Periodic work for URL ID " + url.getId() + " every " + interval / 1000 + " seconds");
+            return;
+        }
+
+        // Hot URL: chain one-time work, running straight away if the check is already overdue
+        long lastChecked = url.getLastCheckedTimestamp();
+        boolean overdue = !fromWorker && (lastChecked == 0 || now - lastChecked >= interval);
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(TicketCheckWorker.class)
+                .setConstraints(networkConstraints())
+                .addTag(WORK_TAG);
+        if (overdue) {
+            builder.setExpedited(OutOfQuotaPolicy.RUN_AS_NON_EXPEDITED_WORK_REQUEST)
+                    .setInputData(TicketCheckWorker.inputData(url.getId(), canonicalUrl, now));
+        } else {
+            builder.setInitialDelay(interval, TimeUnit.MILLISECONDS)
+                    .setInputData(TicketCheckWorker.inputData(url.getId(), canonicalUrl, now + interval));
+        }
+        workManager.cancelUniqueWork(PERIODIC_WORK_PREFIX + canonicalUrl);
+        workManager.enqueueUniqueWork(ONE_TIME_WORK_PREFIX + canonicalUrl,
+                fromWorker ? ExistingWorkPolicy.APPEND_OR_REPLACE : ExistingWorkPolicy.REPLACE, builder.build());
+        Log.d(TAG, "One-time work for URL ID " + url.getId()
+                + (overdue ? " now (expedited)" : " in " + interval / 1000 + " seconds"));
+    }
+
+    private static Constraints networkConstraints() {
+        return new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+    }
+}
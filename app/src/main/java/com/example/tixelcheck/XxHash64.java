@@ -0,0 +1,136 @@
+package com.example.tixelcheck;
+
+/**
+ * Streaming implementation of the 64-bit xxHash algorithm.
+ *
+ * Input is fed one byte or char at a time (chars as UTF-16LE) and buffered in
+ * 32-byte stripes, so a page can be fingerprinted while it is being scanned
+ * without holding any of it in memory.
+ */
+public class XxHash64 {
+    private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME64_3 = 0x165667B19E3779F9L;
+    private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+    private final long seed;
+    private final byte[] buffer = new byte[32];
+    private int bufferLength;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    public XxHash64() {
+        this(0);
+    }
+
+    public XxHash64(long seed) {
+        this.seed = seed;
+        reset();
+    }
+
+    public void reset() {
+        v1 = seed + PRIME64_1 + PRIME64_2;
+        v2 = seed + PRIME64_2;
+        v3 = seed;
+        v4 = seed - PRIME64_1;
+        bufferLength = 0;
+        totalLength = 0;
+    }
+
+    public void update(byte b) {
+        buffer[bufferLength++] = b;
+        totalLength++;
+        if (bufferLength == 32) {
+            v1 = round(v1, readLong(buffer, 0));
+            v2 = round(v2, readLong(buffer, 8));
+            v3 = round(v3, readLong(buffer, 16));
+            v4 = round(v4, readLong(buffer, 24));
+            bufferLength = 0;
+        }
+    }
+
+    public void update(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            update(bytes[i]);
+        }
+    }
+
+    public void update(char c) {
+        update((byte) c);
+        update((byte) (c >>> 8));
+    }
+
+    /**
+     * Returns the hash of everything fed since the last reset. Does not change
+     * the state, so more input may follow.
+     */
+    public long digest() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = seed + PRIME64_5;
+        }
+        hash += totalLength;
+
+        int i = 0;
+        for (; i + 8 <= bufferLength; i += 8) {
+            hash ^= round(0, readLong(buffer, i));
+            hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+        }
+        if (i + 4 <= bufferLength) {
+            hash ^= (readInt(buffer, i) & 0xFFFFFFFFL) * PRIME64_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+            i += 4;
+        }
+        for (; i < bufferLength; i++) {
+            hash ^= (buffer[i] & 0xFF) * PRIME64_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME64_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME64_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * PRIME64_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * PRIME64_1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * PRIME64_1 + PRIME64_4;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFFL)
+                | (bytes[offset + 1] & 0xFFL) << 8
+                | (bytes[offset + 2] & 0xFFL) << 16
+                | (bytes[offset + 3] & 0xFFL) << 24
+                | (bytes[offset + 4] & 0xFFL) << 32
+                | (bytes[offset + 5] & 0xFFL) << 40
+                | (bytes[offset + 6] & 0xFFL) << 48
+                | (bytes[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptivePollingPolicyTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void usesUserFrequencyWithoutOtherSignals() {
+        assertEquals(10 * MINUTE, AdaptivePollingPolicy.intervalMs(10, -1, 0, 0, NOW));
+    }
+
+    @Test
+    public void pollsFasterAsEventApproaches() {
+        long tonight = AdaptivePollingPolicy.intervalMs(20, NOW + DAY / 2, 0, 0, NOW);
+        long nextWeek = AdaptivePollingPolicy.intervalMs(20, NOW + 5 * DAY, 0, 0, NOW);
+        long nextMonth = AdaptivePollingPolicy.intervalMs(20, NOW + 20 * DAY, 0, 0, NOW);
+        long sixMonths = AdaptivePollingPolicy.intervalMs(20, NOW + 180 * DAY, 0, 0, NOW);
+
+        assertEquals(5 * MINUTE, tonight);
+        assertEquals(10 * MINUTE, nextWeek);
+        assertEquals(20 * MINUTE, nextMonth);
+        assertEquals(80 * MINUTE, sixMonths);
+    }
+
+    @Test
+    public void backsOffExponentiallyWhileUnchanged() {
+        assertEquals(10 * MINUTE, AdaptivePollingPolicy.intervalMs(10, -1, 1, 0, NOW));
+        assertEquals(20 * MINUTE, AdaptivePollingPolicy.intervalMs(10, -1, 2, 0, NOW));
+        assertEquals(40 * MINUTE, AdaptivePollingPolicy.intervalMs(10, -1, 4, 0, NOW));
+        assertEquals(80 * MINUTE, AdaptivePollingPolicy.intervalMs(10, -1, 6, 0, NOW));
+        assertEquals(80 * MINUTE, AdaptivePollingPolicy.intervalMs(10, -1, 50, 0, NOW));
+    }
+
+    @Test
+    public void staysWithinBoundsOfUserFrequency() {
+        // Far-away event and a long-unchanged page would be 32x, capped at 8x
+        assertEquals(80 * MINUTE, AdaptivePollingPolicy.intervalMs(10, NOW + 365 * DAY, 10, 0, NOW));
+        // Never faster than once a minute
+        assertEquals(MINUTE, AdaptivePollingPolicy.intervalMs(1, NOW + DAY / 2, 0, 0, NOW));
+        // Never slower than once a day
+        assertEquals(DAY, AdaptivePollingPolicy.intervalMs(600, -1, 10, 0, NOW));
+    }
+
+    @Test
+    public void pollsFastRightAfterStatusFlip() {
+        assertEquals(15 * MINUTE, AdaptivePollingPolicy.intervalMs(60, NOW + 180 * DAY, 10, NOW - 10 * MINUTE, NOW));
+        assertEquals(4 * 60 * MINUTE, AdaptivePollingPolicy.intervalMs(60, NOW + 180 * DAY, 0, NOW - 2 * 60 * MINUTE, NOW));
+    }
+
+    @Test
+    public void retryBackoffGrowsWithJitterAndStaysBounded() {
+        Random random = new Random(42);
+        long interval = 10 * MINUTE;
+        for (int failures = 1; failures <= 6; failures++) {
+            long ceiling = interval << failures;
+            long total = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = AdaptivePollingPolicy.retryIntervalMs(interval, failures, random);
+                assertTrue(delay >= MINUTE && delay <= ceiling);
+                total += delay;
+            }
+            // Full jitter averages half the ceiling
+            long average = total / 1000;
+            assertTrue("failures=" + failures + " average=" + average,
+                    average > ceiling * 0.4 && average < ceiling * 0.6);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(AdaptivePollingPolicy.retryIntervalMs(interval, 40, random) <= DAY);
+        }
+    }
+
+    @Test
+    public void detectsPassedEvents() {
+        assertTrue(AdaptivePollingPolicy.isEventOver(NOW - 2 * DAY, NOW));
+        assertFalse(AdaptivePollingPolicy.isEventOver(NOW - DAY / 2, NOW));
+        assertFalse(AdaptivePollingPolicy.isEventOver(NOW + DAY, NOW));
+        assertFalse(AdaptivePollingPolicy.isEventOver(-1, NOW));
+    }
+
+    @Test
+    public void parsesCommonDateFormats() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2024, Calendar.MARCH, 9);
+        long expected = calendar.getTimeInMillis();
+
+        assertEquals(expected, AdaptivePollingPolicy.parseEventDate("09/03/2024"));
+        assertEquals(expected, AdaptivePollingPolicy.parseEventDate("9/3/2024"));
+        assertEquals(expected, AdaptivePollingPolicy.parseEventDate("2024-03-09"));
+        assertEquals(expected, AdaptivePollingPolicy.parseEventDate("9 March 2024"));
+        assertEquals(expected, AdaptivePollingPolicy.parseEventDate("Mar 9, 2024"));
+        assertEquals(expected, AdaptivePollingPolicy.parseEventDate(" Sat 9 Mar 2024 "));
+        assertEquals(-1, AdaptivePollingPolicy.parseEventDate("next Saturday"));
+        assertEquals(-1, AdaptivePollingPolicy.parseEventDate(""));
+        assertEquals(-1, AdaptivePollingPolicy.parseEventDate(null));
+    }
+
+    @Test
+    public void twoDigitYearIsReadAsThisCentury() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2025, Calendar.MAY, 12);
+
+        assertEquals(calendar.getTimeInMillis(), AdaptivePollingPolicy.parseEventDate("12/05/25"));
+    }
+
+    @Test
+    public void ambiguousDateNeverCountsAsOver() {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2026, Calendar.JUNE, 1);
+        long now = calendar.getTimeInMillis();
+
+        // 12 May read day first, but could be meant as 5 Dec
+        assertTrue(AdaptivePollingPolicy.isAmbiguousDate("12/05/2026"));
+        assertFalse(AdaptivePollingPolicy.isEventOver("12/05/2026", now));
+        // Only one way to read these
+        assertTrue(AdaptivePollingPolicy.isEventOver("13/05/2026", now));
+        assertTrue(AdaptivePollingPolicy.isEventOver("05/05/2026", now));
+        assertTrue(AdaptivePollingPolicy.isEventOver("2026-05-12", now));
+        assertTrue(AdaptivePollingPolicy.isEventOver("12 May 2026", now));
+        assertFalse(AdaptivePollingPolicy.isEventOver("not a date", now));
+    }
+}
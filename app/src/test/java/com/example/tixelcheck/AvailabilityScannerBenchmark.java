@@ -0,0 +1,106 @@
+package com.example.tixelcheck;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * JVM benchmark comparing the streaming scanner with the old
+ * Document.text().toLowerCase() detection on a large synthetic event page.
+ * Prints time and allocation per check; asserts only that both paths agree.
+ */
+public class AvailabilityScannerBenchmark {
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+
+    private interface Detector {
+        boolean detect(InputStream in) throws IOException;
+    }
+
+    private static final Detector DOCUMENT_TEXT = in -> {
+        Document doc = Jsoup.parse(in, "UTF-8", "https://tixel.com/");
+        String text = doc.text().toLowerCase();
+        return text.contains("ticket available") || text.contains("tickets available");
+    };
+
+    private static final Detector STREAMING = in ->
+            new AvailabilityScanner().scan(in, StandardCharsets.UTF_8).isAvailable();
+
+    /**
+     * Builds a page shaped like a Tixel event page: a large head full of
+     * scripts, many listing cards, and the availability phrase at the given position
+     */
+    private static byte[] buildPage(int listings, int phraseAt) {
+        char[] scriptPayload = new char[2000];
+        Arrays.fill(scriptPayload, 'x');
+
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><head><title>Event</title>");
+        for (int i = 0; i < 20; i++) {
+            html.append("<script>window.chunk").append(i).append(" = function () { return \"")
+                    .append(scriptPayload).append("\"; };</script>");
+        }
+        html.append("<style>.card { display: flex; }</style></head><body>");
+        for (int i = 0; i < listings; i++) {
+            if (i == phraseAt) {
+                html.append("<h2>").append(listings).append(" Tickets available</h2>");
+            }
+            html.append("<div class=\"card\" data-listing-id=\"").append(i).append("\">")
+                    .append("<span class=\"price\">$").append(50 + i % 200).append(".00</span>")
+                    .append("<p>General Admission &middot; Section ").append(i % 12)
+                    .append(" &mdash; Row ").append(i % 30).append("</p></div>");
+        }
+        html.append("</body></html>");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void run(String label, byte[] page, Detector detector, boolean expected) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            assertEquals(label, expected, detector.detect(new ByteArrayInputStream(page)));
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            assertEquals(label, expected, detector.detect(new ByteArrayInputStream(page)));
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("%-40s %8.2f ms/check %10d KB allocated/check%n", label,
+                elapsed / 1e6 / MEASURED_ITERATIONS,
+                allocatedBefore < 0 ? -1 : allocated / 1024 / MEASURED_ITERATIONS);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    @Test
+    public void compareWithDocumentText() throws IOException {
+        int listings = 3000;
+        byte[] early = buildPage(listings, 10);
+        byte[] late = buildPage(listings, listings - 1);
+        byte[] absent = buildPage(listings, -1);
+        System.out.println("Page size: " + early.length / 1024 + " KB");
+
+        run("Document.text(), phrase near top", early, DOCUMENT_TEXT, true);
+        run("Streaming scanner, phrase near top", early, STREAMING, true);
+        run("Document.text(), phrase at bottom", late, DOCUMENT_TEXT, true);
+        run("Streaming scanner, phrase at bottom", late, STREAMING, true);
+        run("Document.text(), no phrase", absent, DOCUMENT_TEXT, false);
+        run("Streaming scanner, no phrase", absent, STREAMING, false);
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.tixelcheck;
+
+import org.jsoup.Jsoup;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class AvailabilityScannerTest {
+
+    private static AvailabilityScanner.Result scan(String html) throws IOException {
+        return new AvailabilityScanner().scan(new StringReader(html));
+    }
+
+    @Test
+    public void matchesPhraseCaseInsensitively() throws IOException {
+        AvailabilityScanner.Result result = scan("<html><body><p>2 TICKETS Available now</p></body></html>");
+
+        assertTrue(result.isAvailable());
+        assertEquals("tickets available", result.getPhrase());
+        assertEquals(2, result.getOffset());
+    }
+
+    @Test
+    public void matchesSingularPhrase() throws IOException {
+        assertTrue(scan("<div>1 ticket available</div>").isAvailable());
+    }
+
+    @Test
+    public void reportsNoMatch() throws IOException {
+        AvailabilityScanner.Result result = scan("<div>Resale opens soon</div><div>Check back later</div>");
+
+        assertFalse(result.isAvailable());
+        assertNull(result.getPhrase());
+        assertEquals(-1, result.getOffset());
+    }
+
+    @Test
+    public void matchesAcrossInlineTagsEntitiesAndWhitespace() throws IOException {
+        assertTrue(scan("<span>Tick</span><b>ets</b>\n\t&nbsp; <i>avail</i>able").isAvailable());
+        assertTrue(scan("tickets&#32;available").isAvailable());
+        assertTrue(scan("tickets&#x20;available").isAvailable());
+    }
+
+    @Test
+    public void blockTagsSeparateWords() throws IOException {
+        // Document.text() puts a space between block elements, which a phrase may span
+        assertTrue(scan("<div>tickets</div><div>available</div>").isAvailable());
+        assertFalse(scan("<div>ticketsavailable</div>").isAvailable());
+    }
+
+    @Test
+    public void ignoresMarkupScriptsStylesAndComments() throws IOException {
+        String html = "<html><head>"
+                + "<title>Event</title>"
+                + "<style>.tickets-available { color: red }</style>"
+                + "<script>var label = '</div>tickets available';</script>"
+                + "</head><body>"
+                + "<!-- tickets available -->"
+                + "<a title=\"tickets available\" data-x='>tickets available'>Sold out</a>"
+                + "</body></html>";
+
+        assertFalse(scan(html).isAvailable());
+    }
+
+    @Test
+    public void agreesWithDocumentText() throws IOException {
+        String[] pages = {
+                "<p>Tickets <em>available</em> from $50</p>",
+                "<p>Tickets</p><script>tickets available</script><p>available</p>",
+                "<ul><li>ticket</li><li>available</li></ul>",
+                "<p>ticket &amp; available</p>",
+                "<p>a < b tickets available</p>",
+        };
+        for (String page : pages) {
+            boolean expected = Jsoup.parse(page).text().toLowerCase().contains("tickets available")
+                    || Jsoup.parse(page).text().toLowerCase().contains("ticket available");
+            assertEquals(page, expected, scan(page).isAvailable());
+        }
+    }
+
+    @Test
+    public void stopsReadingOnceDecided() throws IOException {
+        StringBuilder html = new StringBuilder("<p>Tickets available</p>");
+        for (int i = 0; i < 10000; i++) {
+            html.append("<div class=\"listing\">Listing ").append(i).append("</div>");
+        }
+        byte[] bytes = html.toString().getBytes(StandardCharsets.UTF_8);
+        CountingInputStream in = new CountingInputStream(bytes);
+
+        assertTrue(new AvailabilityScanner().scan(in, StandardCharsets.UTF_8).isAvailable());
+        assertTrue("read " + in.count + " of " + bytes.length, in.count < bytes.length / 10);
+    }
+
+    @Test
+    public void negativePhraseContainingPositiveDoesNotCount() throws IOException {
+        AvailabilityScanner.Result result = scan("<p>No tickets available right now</p>");
+
+        assertFalse(result.isAvailable());
+        assertTrue(result.isSoldOut());
+        assertEquals("no tickets", result.getPhrase());
+        assertEquals(0, result.getOffset());
+    }
+
+    @Test
+    public void positivePhraseAfterNegativeWins() throws IOException {
+        AvailabilityScanner.Result result = scan("<h1>Sold out</h1><p>3 listings from $80</p>");
+
+        assertTrue(result.isAvailable());
+        assertEquals("listings from", result.getPhrase());
+        assertEquals(11, result.getOffset());
+    }
+
+    @Test
+    public void usesPerUrlPhrases() throws IOException {
+        PhraseSet phrases = PhraseSet.of(Arrays.asList("Billets disponibles"), Arrays.asList("Complet"));
+        AvailabilityScanner scanner = new AvailabilityScanner(PhraseMatcher.forPhrases(phrases));
+
+        assertTrue(scanner.scan(new StringReader("<p>2 billets   disponibles</p>")).isAvailable());
+        assertTrue(scanner.scan(new StringReader("<p>COMPLET</p><p>tickets available</p>")).isSoldOut());
+    }
+
+    @Test
+    public void fingerprintCoversVisibleTextOnly() throws IOException {
+        long base = scan("<p>Sold out</p><script>var nonce = 'a1';</script>").getFingerprint();
+        long scriptChanged = scan("<p  class=\"x\">Sold out</p><script>var nonce = 'b2';</script>").getFingerprint();
+        long textChanged = scan("<p>Sold out</p><p>1 listing</p>").getFingerprint();
+
+        assertEquals(base, scriptChanged);
+        assertNotEquals(base, textChanged);
+    }
+
+    @Test
+    public void scannerCanBeReused() throws IOException {
+        AvailabilityScanner scanner = new AvailabilityScanner();
+
+        assertTrue(scanner.scan(new StringReader("<p>tickets available")).isAvailable());
+        assertFalse(scanner.scan(new StringReader("<p>available")).isAvailable());
+    }
+
+    private static class CountingInputStream extends InputStream {
+        private final InputStream delegate;
+        private long count;
+
+        CountingInputStream(byte[] bytes) {
+            this.delegate = new ByteArrayInputStream(bytes);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = delegate.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = delegate.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CheckCoalescerTest {
+
+    @Test
+    public void concurrentCallersShareOneFetch() throws Exception {
+        CheckCoalescer<String, Integer> coalescer = new CheckCoalescer<>(0);
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            results.add(pool.submit(() -> coalescer.get("page", () -> {
+                fetches.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return 42;
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<Integer> result : results) {
+            assertEquals(42, (int) result.get());
+        }
+        pool.shutdown();
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void reusesResultWithinWindowOnly() throws Exception {
+        CheckCoalescer<String, Integer> coalescer = new CheckCoalescer<>(100);
+        AtomicInteger fetches = new AtomicInteger();
+
+        assertEquals(1, (int) coalescer.get("page", fetches::incrementAndGet));
+        assertEquals(1, (int) coalescer.get("page", fetches::incrementAndGet));
+        assertEquals(2, (int) coalescer.get("other", fetches::incrementAndGet));
+
+        Thread.sleep(150);
+        assertEquals(3, (int) coalescer.get("page", fetches::incrementAndGet));
+    }
+
+    @Test
+    public void failuresAreNotReused() throws Exception {
+        CheckCoalescer<String, Integer> coalescer = new CheckCoalescer<>(60000);
+        try {
+            coalescer.get("page", () -> {
+                throw new IOException("offline");
+            });
+            fail("Expected the fetch error");
+        } catch (IOException e) {
+            assertEquals("offline", e.getMessage());
+        }
+
+        assertEquals(7, (int) coalescer.get("page", () -> 7));
+    }
+}
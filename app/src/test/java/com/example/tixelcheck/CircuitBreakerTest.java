@@ -0,0 +1,118 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+    private static final long NOW = 1_700_000_000_000L;
+
+    private CircuitBreaker openBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertTrue(breaker.allowRequest(NOW));
+            breaker.onFailure(NOW);
+        }
+        return breaker;
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            breaker.onFailure(NOW);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure(NOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(NOW + 1000));
+        assertEquals(CircuitBreaker.BASE_OPEN_MS - 1000, breaker.getRetryDelay(NOW + 1000));
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker();
+        for (int i = 0; i < CircuitBreaker.FAILURE_THRESHOLD - 1; i++) {
+            breaker.onFailure(NOW);
+        }
+        breaker.onSuccess();
+        breaker.onFailure(NOW);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void letsOneProbeThroughWhenHalfOpen() {
+        CircuitBreaker breaker = openBreaker();
+        long later = NOW + CircuitBreaker.BASE_OPEN_MS;
+
+        assertTrue(breaker.allowRequest(later));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse("Only one probe at a time", breaker.allowRequest(later));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(later));
+    }
+
+    @Test
+    public void failedProbeDoublesOpenPeriod() {
+        CircuitBreaker breaker = openBreaker();
+        long probeAt = NOW + CircuitBreaker.BASE_OPEN_MS;
+        assertTrue(breaker.allowRequest(probeAt));
+
+        breaker.onFailure(probeAt);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2 * CircuitBreaker.BASE_OPEN_MS, breaker.getRetryDelay(probeAt));
+
+        // Keeps doubling up to the maximum
+        long now = probeAt;
+        for (int i = 0; i < 10; i++) {
+            now += breaker.getRetryDelay(now);
+            assertTrue(breaker.allowRequest(now));
+            breaker.onFailure(now);
+        }
+        assertEquals(CircuitBreaker.MAX_OPEN_MS, breaker.getRetryDelay(now));
+    }
+
+    @Test
+    public void survivesSerialization() {
+        CircuitBreaker breaker = openBreaker();
+        CircuitBreaker restored = CircuitBreaker.deserialize(breaker.serialize());
+
+        assertEquals(CircuitBreaker.State.OPEN, restored.getState());
+        assertFalse(restored.allowRequest(NOW + 1000));
+        assertTrue(restored.allowRequest(NOW + CircuitBreaker.BASE_OPEN_MS));
+    }
+
+    @Test
+    public void restoredHalfOpenBreakerAllowsNewProbe() {
+        CircuitBreaker breaker = openBreaker();
+        breaker.allowRequest(NOW + CircuitBreaker.BASE_OPEN_MS);
+
+        // The probe in flight was lost with the process
+        CircuitBreaker restored = CircuitBreaker.deserialize(breaker.serialize());
+        assertTrue(restored.allowRequest(NOW + CircuitBreaker.BASE_OPEN_MS + 1));
+    }
+
+    @Test
+    public void abandonedProbeLetsNextOneThrough() {
+        CircuitBreaker breaker = openBreaker();
+        long probeAt = NOW + CircuitBreaker.BASE_OPEN_MS;
+        assertTrue(breaker.allowRequest(probeAt));
+
+        breaker.onAbandoned();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest(probeAt + 1));
+    }
+
+    @Test
+    public void invalidStateDeserializesClosed() {
+        assertEquals(CircuitBreaker.State.CLOSED, CircuitBreaker.deserialize(null).getState());
+        assertEquals(CircuitBreaker.State.CLOSED, CircuitBreaker.deserialize("BROKEN:x").getState());
+        assertEquals(CircuitBreaker.State.CLOSED, CircuitBreaker.deserialize("NOPE:1:2:3").getState());
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.tixelcheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HostLimiterTest {
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private OkHttpClient client(HostLimiter limiter) {
+        return new OkHttpClient.Builder().addInterceptor(limiter).build();
+    }
+
+    private int fetch(OkHttpClient client) throws Exception {
+        Request request = new Request.Builder().url(server.url("/event")).build();
+        try (Response response = client.newCall(request).execute()) {
+            response.body().string();
+            return response.code();
+        }
+    }
+
+    @Test
+    public void limitsConcurrentRequestsPerHost() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int current = inFlight.incrementAndGet();
+                maxSeen.accumulateAndGet(current, Math::max);
+                Thread.sleep(100);
+                inFlight.decrementAndGet();
+                return new MockResponse().setBody("ok");
+            }
+        });
+        OkHttpClient client = client(new HostLimiter(2, 1000, 1000, 10000));
+
+        ExecutorService pool = Executors.newFixedThreadPool(6);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(pool.submit(() -> fetch(client)));
+        }
+        for (Future<Integer> result : results) {
+            assertEquals(200, (int) result.get());
+        }
+        pool.shutdown();
+
+        assertTrue("At most 2 requests should run at once, saw " + maxSeen.get(), maxSeen.get() <= 2);
+    }
+
+    @Test
+    public void spacesRequestsAtConfiguredRate() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+        HostLimiter limiter = new HostLimiter(4, 10, 1, 10000);
+        OkHttpClient client = client(limiter);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            fetch(client);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        // One request from the burst, then three more at 100 ms intervals
+        assertTrue("Expected at least 300 ms, took " + elapsed, elapsed >= 280);
+        HostLimiter.Stats stats = limiter.getStats(server.getHostName());
+        assertEquals(4, stats.getRequests());
+        assertTrue(stats.getQueuedRequests() >= 3);
+        assertTrue(stats.getMaxQueueDelayMs() >= 80);
+    }
+
+    @Test
+    public void honoursRetryAfterFromThrottledResponse() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        HostLimiter limiter = new HostLimiter(4, 1000, 1000, 10000);
+        OkHttpClient client = client(limiter);
+
+        assertEquals(429, fetch(client));
+        long start = System.currentTimeMillis();
+        assertEquals(200, fetch(client));
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue("Expected the retry to wait about a second, took " + elapsed, elapsed >= 900);
+        assertEquals(1, limiter.getStats(server.getHostName()).getThrottledResponses());
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void failsInsteadOfWaitingPastMaximum() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "120"));
+        OkHttpClient client = client(new HostLimiter(4, 1000, 1000, 500));
+
+        assertEquals(503, fetch(client));
+        fetch(client);
+    }
+
+    @Test
+    public void rejectedRequestsDoNotUseTokens() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+        // One token a second, and no request may wait more than 600 ms for one
+        OkHttpClient client = client(new HostLimiter(4, 1, 1, 600));
+
+        assertEquals(200, fetch(client));
+        for (int i = 0; i < 5; i++) {
+            try {
+                fetch(client);
+                fail("Expected the request to be rejected");
+            } catch (java.io.IOException expected) {
+                // Would have waited about a second
+            }
+        }
+        Thread.sleep(500);
+
+        // Had the rejected requests taken tokens, this one would wait seconds and fail too
+        assertEquals(200, fetch(client));
+    }
+
+    @Test
+    public void releasesSlotWhenBodyIsClosed() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody("ok"));
+        }
+        // A single slot: each request only proceeds if the previous response gave it back
+        OkHttpClient client = client(new HostLimiter(1, 1000, 1000, 500));
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, fetch(client));
+        }
+    }
+
+    @Test
+    public void parsesRetryAfterSecondsAndDates() {
+        long now = 1_700_000_000_000L;
+        assertEquals(5000, HostLimiter.parseRetryAfter("5", now));
+        assertEquals(0, HostLimiter.parseRetryAfter(null, now));
+        assertEquals(0, HostLimiter.parseRetryAfter("soon", now));
+        // 1700000030000 is Tue, 14 Nov 2023 22:13:50 GMT
+        assertEquals(30000, HostLimiter.parseRetryAfter("Tue, 14 Nov 2023 22:13:50 GMT", now));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.tixelcheck;
+
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ListingSnapshotTest {
+
+    private static ListingSnapshot snapshot(long... ids) {
+        ListingSnapshot.Builder builder = new ListingSnapshot.Builder();
+        for (long id : ids) {
+            builder.add(id, id * 100);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void buildSortsByIdAndKeepsPricesAligned() {
+        ListingSnapshot snapshot = new ListingSnapshot.Builder()
+                .add(30, 3000)
+                .add(10, 1000)
+                .add(20, ListingSnapshot.UNKNOWN_PRICE)
+                .build();
+
+        assertEquals(3, snapshot.size());
+        assertEquals(10, snapshot.getId(0));
+        assertEquals(1000, snapshot.getPrice(0));
+        assertEquals(20, snapshot.getId(1));
+        assertEquals(ListingSnapshot.UNKNOWN_PRICE, snapshot.getPrice(1));
+        assertEquals(30, snapshot.getId(2));
+        assertEquals(3000, snapshot.getPrice(2));
+    }
+
+    @Test
+    public void duplicateListingsKeepLowestPrice() {
+        ListingSnapshot snapshot = new ListingSnapshot.Builder()
+                .add(5, 900)
+                .add(5, ListingSnapshot.UNKNOWN_PRICE)
+                .add(5, 700)
+                .add(6, 100)
+                .build();
+
+        assertEquals(2, snapshot.size());
+        assertEquals(700, snapshot.getPrice(0));
+    }
+
+    @Test
+    public void sortsLargeShuffledInput() {
+        Random random = new Random(7);
+        ListingSnapshot.Builder builder = new ListingSnapshot.Builder();
+        for (int i = 0; i < 1000; i++) {
+            long id = random.nextInt(5000);
+            builder.add(id, id + 1);
+        }
+        ListingSnapshot snapshot = builder.build();
+
+        for (int i = 0; i < snapshot.size(); i++) {
+            assertEquals(snapshot.getId(i) + 1, snapshot.getPrice(i));
+            if (i > 0) {
+                assertTrue(snapshot.getId(i) > snapshot.getId(i - 1));
+            }
+        }
+    }
+
+    @Test
+    public void diffReportsOnlyListingsNotSeenBefore() {
+        ListingSnapshot previous = snapshot(1, 3, 5, 7);
+        ListingSnapshot current = snapshot(2, 3, 7, 8, 9);
+
+        int[] newIndices = new int[current.size()];
+        int count = current.diff(previous, newIndices);
+
+        assertEquals(3, count);
+        assertEquals(2, current.getId(newIndices[0]));
+        assertEquals(8, current.getId(newIndices[1]));
+        assertEquals(9, current.getId(newIndices[2]));
+        assertEquals(200, current.lowestPrice(newIndices, count));
+        assertEquals(count, current.diff(previous, null));
+    }
+
+    @Test
+    public void removedListingsAreNotNew() {
+        assertEquals(0, snapshot(2, 4).diff(snapshot(1, 2, 3, 4, 5), null));
+        assertEquals(0, snapshot().diff(snapshot(1), null));
+        assertEquals(2, snapshot(1, 2).diff(snapshot(), null));
+    }
+
+    @Test
+    public void roundTripsThroughBytes() {
+        ListingSnapshot snapshot = snapshot(-4, 0, 12, Long.MAX_VALUE);
+
+        assertEquals(snapshot, ListingSnapshot.fromBytes(snapshot.toBytes()));
+        assertEquals(0, ListingSnapshot.fromBytes(new byte[0]).size());
+        assertNull(ListingSnapshot.fromBytes(null));
+        assertNull(ListingSnapshot.fromBytes(new byte[15]));
+    }
+
+    @Test
+    public void readsListingObjects() throws Exception {
+        ListingSnapshot.Builder builder = new ListingSnapshot.Builder();
+        JsonReader json = new JsonReader(new StringReader("["
+                + "{\"id\":42,\"price\":129.5,\"section\":{\"name\":\"GA\"}},"
+                + "{\"listing_id\":\"abc\",\"price_cents\":9900},"
+                + "{\"seller\":\"x\"}]"));
+        json.beginArray();
+        assertTrue(ListingSnapshot.readListing(json, builder));
+        assertTrue(ListingSnapshot.readListing(json, builder));
+        assertFalse(ListingSnapshot.readListing(json, builder));
+        json.endArray();
+
+        ListingSnapshot snapshot = builder.build();
+        assertEquals(2, snapshot.size());
+        int numeric = snapshot.getId(0) == 42 ? 0 : 1;
+        assertEquals(12950, snapshot.getPrice(numeric));
+        assertEquals(9900, snapshot.getPrice(1 - numeric));
+    }
+}
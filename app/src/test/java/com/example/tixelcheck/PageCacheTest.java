@@ -0,0 +1,130 @@
+package com.example.tixelcheck;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class PageCacheTest {
+    private static final long MINUTE = 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+    private PageCache cache;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "pages");
+        cache = new PageCache(directory, 250);
+    }
+
+    private static byte[] body(int size, int fill) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) fill);
+        return bytes;
+    }
+
+    private void store(long urlId, byte[] bytes) throws IOException {
+        try (PageCache.CachingInputStream in = cache.storing(urlId, new ByteArrayInputStream(bytes))) {
+            in.readToEnd();
+        }
+    }
+
+    private File entry(long urlId) {
+        return new File(directory, urlId + ".html");
+    }
+
+    private String[] tempFiles() {
+        return directory.list((dir, name) -> name.endsWith(".tmp"));
+    }
+
+    @Test
+    public void renamesCompleteBodyIntoPlace() throws IOException {
+        byte[] bytes = body(100, 'a');
+        try (PageCache.CachingInputStream in = cache.storing(1, new ByteArrayInputStream(bytes))) {
+            assertFalse(cache.contains(1));
+            // Skipped bytes are cached as well
+            in.read(new byte[10]);
+            in.skip(40);
+            in.readToEnd();
+        }
+
+        assertTrue(cache.contains(1));
+        assertArrayEquals(bytes, Files.readAllBytes(entry(1).toPath()));
+        assertEquals(0, tempFiles().length);
+    }
+
+    @Test
+    public void dropsPartialBodyAndKeepsPreviousEntry() throws IOException {
+        store(1, body(100, 'a'));
+
+        try (PageCache.CachingInputStream in = cache.storing(1, new ByteArrayInputStream(body(100, 'b')))) {
+            in.read(new byte[50]);
+        }
+
+        assertArrayEquals(body(100, 'a'), Files.readAllBytes(entry(1).toPath()));
+        assertEquals(0, tempFiles().length);
+    }
+
+    @Test
+    public void replacingEntryCountsItOnce() throws IOException {
+        store(1, body(100, 'a'));
+        store(2, body(100, 'b'));
+        store(1, body(100, 'c'));
+        store(1, body(100, 'd'));
+
+        assertTrue(cache.contains(1));
+        assertTrue(cache.contains(2));
+        assertArrayEquals(body(100, 'd'), Files.readAllBytes(entry(1).toPath()));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() throws IOException {
+        long now = System.currentTimeMillis();
+        store(1, body(100, 'a'));
+        store(2, body(100, 'b'));
+        entry(1).setLastModified(now - 3 * MINUTE);
+        entry(2).setLastModified(now - 2 * MINUTE);
+        // Revalidating entry 1 makes entry 2 the least recently used
+        cache.touch(1);
+
+        store(3, body(100, 'c'));
+
+        assertTrue(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+    }
+
+    @Test
+    public void evictsUntilUnderLimit() throws IOException {
+        long now = System.currentTimeMillis();
+        store(1, body(100, 'a'));
+        store(2, body(100, 'b'));
+        entry(1).setLastModified(now - 3 * MINUTE);
+        entry(2).setLastModified(now - 2 * MINUTE);
+
+        store(3, body(200, 'c'));
+
+        assertFalse(cache.contains(1));
+        assertFalse(cache.contains(2));
+        assertTrue(cache.contains(3));
+    }
+
+    @Test
+    public void removeDropsEntry() throws IOException {
+        store(1, body(100, 'a'));
+        cache.remove(1);
+
+        assertFalse(cache.contains(1));
+    }
+}
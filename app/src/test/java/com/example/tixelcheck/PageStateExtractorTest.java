@@ -0,0 +1,236 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class PageStateExtractorTest {
+
+    private static PageStateExtractor.State extract(String html) throws IOException {
+        return new PageStateExtractor(null).extract(new StringReader(html));
+    }
+
+    @Test
+    public void sumsListingCountsFromStateScript() throws Exception {
+        String html = "<html><head><script>var x = '<script>';</script>"
+                + "<script id=\"__NEXT_DATA__\" type=\"application/json\">"
+                + "{\"props\":{\"event\":{\"name\":\"Show\",\"ticketTypes\":["
+                + "{\"name\":\"GA\",\"listingCount\":2},{\"name\":\"VIP\",\"listingCount\":3}]}}}"
+                + "</script></head><body>Sold out</body></html>";
+
+        PageStateExtractor.State state = extract(html);
+
+        assertNotNull(state);
+        assertTrue(state.isAvailable());
+        assertEquals(5, state.getListingCount());
+        assertTrue(state.isCounted());
+    }
+
+    @Test
+    public void countsListingArraysWithoutCountFields() throws Exception {
+        String html = "<script type='application/json' id='__NUXT_DATA__'>"
+                + "{\"event\":{\"listings\":[{\"id\":1},{\"id\":2},{\"id\":3}]}}</script>";
+
+        PageStateExtractor.State state = extract(html);
+
+        assertEquals(3, state.getListingCount());
+        assertFalse(state.isCounted());
+    }
+
+    @Test
+    public void collectsListingSnapshot() throws Exception {
+        PageStateExtractor.State state = extract("<script id=\"__NEXT_DATA__\">"
+                + "{\"event\":{\"listings\":[{\"id\":9,\"price\":80},{\"id\":4,\"price\":95.5}]}}</script>");
+
+        ListingSnapshot listings = state.getListings();
+        assertEquals(2, listings.size());
+        assertEquals(4, listings.getId(0));
+        assertEquals(9550, listings.getPrice(0));
+        assertEquals(9, listings.getId(1));
+    }
+
+    @Test
+    public void listingsWithoutIdsGiveNoSnapshot() throws Exception {
+        PageStateExtractor.State state = extract("<script id=\"__NEXT_DATA__\">"
+                + "{\"listings\":[{\"id\":1},{\"price\":80}]}</script>");
+
+        assertEquals(2, state.getListingCount());
+        assertNull(state.getListings());
+    }
+
+    @Test
+    public void newListingChangesFingerprint() throws Exception {
+        long before = extract("<script id=__NEXT_DATA__>{\"listingCount\":1,\"listings\":[{\"id\":1}]}</script>")
+                .getFingerprint();
+        long after = extract("<script id=__NEXT_DATA__>{\"listingCount\":1,\"listings\":[{\"id\":2}]}</script>")
+                .getFingerprint();
+
+        assertNotEquals(before, after);
+    }
+
+    @Test
+    public void zeroListingsMeansUnavailable() throws Exception {
+        PageStateExtractor.State state = extract(
+                "<SCRIPT ID=__NEXT_DATA__>{\"event\":{\"listings\":[],\"listing_count\":0}}</SCRIPT>");
+
+        assertFalse(state.isAvailable());
+        assertEquals(0, state.getListingCount());
+    }
+
+    @Test
+    public void stopsReadingWhenStateIsComplete() throws Exception {
+        StringBuilder html = new StringBuilder("<script id=\"__NEXT_DATA__\">{\"listingCount\":1}</script>");
+        for (int i = 0; i < 10000; i++) {
+            html.append("<p>rest of the page</p>");
+        }
+        CountingReader reader = new CountingReader(html.toString());
+
+        assertEquals(1, new PageStateExtractor(null).extract(reader).getListingCount());
+        assertTrue("Read " + reader.read + " chars", reader.read < 16 * 1024);
+    }
+
+    @Test
+    public void pageWithoutStateFallsBackToText() throws Exception {
+        PageStateExtractor extractor = new PageStateExtractor(new AvailabilityScanner());
+
+        assertNull(extractor.extract(new StringReader(
+                "<script id=\"other\">{\"listingCount\":4}</script><p>Tickets available</p>")));
+        assertTrue(extractor.getTextResult().isAvailable());
+    }
+
+    @Test
+    public void stopsReadingWhenUnusableStateIsFollowedByPhrase() throws Exception {
+        StringBuilder html = new StringBuilder("<script id=\"__NEXT_DATA__\">"
+                + "{\"related\":[{\"slug\":\"other-show\",\"listingCount\":12}]}</script>"
+                + "<p>Tickets available</p>");
+        for (int i = 0; i < 10000; i++) {
+            html.append("<p>rest of the page</p>");
+        }
+        CountingReader reader = new CountingReader(html.toString());
+        PageStateExtractor extractor = new PageStateExtractor(new AvailabilityScanner());
+
+        assertNull(extractor.extract(reader, "the-show"));
+        assertTrue(extractor.getTextResult().isAvailable());
+        assertTrue("Read " + reader.read + " chars", reader.read < 16 * 1024);
+    }
+
+    @Test
+    public void phraseBeforeStateDoesNotEndRead() throws Exception {
+        PageStateExtractor extractor = new PageStateExtractor(new AvailabilityScanner());
+        StringBuilder html = new StringBuilder("<p>Tickets available</p>");
+        for (int i = 0; i < 1000; i++) {
+            html.append("<p>related events</p>");
+        }
+        html.append("<script id=\"__NEXT_DATA__\">{\"event\":{\"slug\":\"the-show\",\"listingCount\":0}}</script>");
+
+        // The state further down still decides
+        assertFalse(extractor.extract(new StringReader(html.toString()), "the-show").isAvailable());
+    }
+
+    @Test
+    public void stateWithoutListingsFallsBackToText() throws Exception {
+        PageStateExtractor extractor = new PageStateExtractor(new AvailabilityScanner());
+
+        assertNull(extractor.extract(new StringReader(
+                "<script id=\"__NEXT_DATA__\">{\"page\":\"/event\"}</script>"
+                        + "<script>var a = 1;</script><p>Sold out</p>")));
+        assertTrue(extractor.getTextResult().isSoldOut());
+    }
+
+    @Test
+    public void malformedStateFallsBackToText() throws Exception {
+        PageStateExtractor extractor = new PageStateExtractor(new AvailabilityScanner());
+
+        assertNull(extractor.extract(new StringReader(
+                "<script id=\"__NEXT_DATA__\">{\"listingCount\": </script><p>No tickets</p>")));
+        assertTrue(extractor.getTextResult().isSoldOut());
+    }
+
+    @Test
+    public void closingTagInsideStringEndsScriptLikeBrowsers() throws Exception {
+        // Browsers end the script at the first "</script", so the blob is cut short
+        assertNull(extract("<script id=\"__NEXT_DATA__\">{\"a\":\"</script>\",\"listingCount\":1}</script>"));
+    }
+
+    @Test
+    public void fingerprintFollowsListingCount() throws Exception {
+        long one = extract("<script id=__NEXT_DATA__>{\"listingCount\":1,\"nonce\":\"a\"}</script>").getFingerprint();
+        long same = extract("<script id=__NEXT_DATA__>{\"listingCount\":1,\"nonce\":\"b\"}</script>").getFingerprint();
+        long two = extract("<script id=__NEXT_DATA__>{\"listingCount\":2,\"nonce\":\"a\"}</script>").getFingerprint();
+
+        assertEquals(one, same);
+        assertNotEquals(one, two);
+    }
+
+    @Test
+    public void countsOnlyThePagesEvent() throws Exception {
+        String html = "<script id=\"__NEXT_DATA__\">{\"props\":{\"pageProps\":{"
+                + "\"relatedEvents\":[{\"slug\":\"other-show\",\"listingCount\":12,"
+                + "\"listings\":[{\"id\":1},{\"id\":2}]}],"
+                + "\"event\":{\"slug\":\"the-show\",\"ticketTypes\":["
+                + "{\"id\":7,\"listingCount\":0},{\"id\":8,\"listingCount\":0}],\"listings\":[]},"
+                + "\"recommended\":{\"slug\":\"third-show\",\"listingCount\":3}}}}</script>";
+
+        PageStateExtractor.State state = new PageStateExtractor(null).extract(new StringReader(html), "the-show");
+
+        assertNotNull(state);
+        assertFalse(state.isAvailable());
+        assertEquals(0, state.getListings().size());
+    }
+
+    @Test
+    public void otherEventsAreLeftOutWithoutMatch() throws Exception {
+        String html = "<script id=\"__NEXT_DATA__\">{\"listingCount\":2,"
+                + "\"related\":[{\"slug\":\"other-show\",\"listingCount\":12}]}</script>";
+
+        // State that cannot be tied to the page's event is not used
+        assertNull(new PageStateExtractor(null).extract(new StringReader(html), "the-show"));
+        // Without an event key everything counts, as before
+        assertEquals(14, extract(html).getListingCount());
+    }
+
+    @Test
+    public void stateWithoutOtherEventsCountsWithoutMatch() throws Exception {
+        PageStateExtractor.State state = new PageStateExtractor(null).extract(new StringReader(
+                "<script id=\"__NEXT_DATA__\">{\"event\":{\"name\":\"Show\",\"listingCount\":2}}</script>"),
+                "the-show");
+
+        assertEquals(2, state.getListingCount());
+    }
+
+    @Test
+    public void matchesEventById() throws Exception {
+        PageStateExtractor.State state = new PageStateExtractor(null).extract(new StringReader(
+                "<script id=\"__NEXT_DATA__\">{\"events\":[{\"id\":41,\"slug\":\"a\",\"listingCount\":5},"
+                        + "{\"id\":42,\"slug\":\"b\",\"listingCount\":1}]}</script>"), "42");
+
+        assertEquals(1, state.getListingCount());
+    }
+
+    private static class CountingReader extends Reader {
+        private final StringReader delegate;
+        int read;
+
+        CountingReader(String content) {
+            delegate = new StringReader(content);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = delegate.read(buffer, offset, length);
+            if (count > 0) {
+                read += count;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PhraseMatcherTest {
+
+    /**
+     * Runs the matcher over text and returns "phrase@start" for every match in order
+     */
+    private static List<String> matches(PhraseMatcher matcher, String text) {
+        List<String> found = new ArrayList<>();
+        int state = matcher.initialState();
+        for (int i = 0; i < text.length(); i++) {
+            state = matcher.step(state, text.charAt(i));
+            for (int match = matcher.firstMatch(state); match != -1; match = matcher.nextMatch(match)) {
+                int phrase = matcher.phraseAt(match);
+                found.add(matcher.getPhrase(phrase) + "@" + (i + 1 - matcher.getPhraseLength(phrase)));
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void findsOverlappingAndNestedPhrasesInOnePass() {
+        PhraseMatcher matcher = new PhraseMatcher(PhraseSet.of(
+                Arrays.asList("he", "she", "hers"), Arrays.asList("his")));
+
+        assertEquals(Arrays.asList("she@1", "he@2", "hers@2"), matches(matcher, "ushers"));
+        assertEquals(Arrays.asList("his@0", "she@2", "he@3"), matches(matcher, "hishe"));
+    }
+
+    @Test
+    public void recoversAfterPartialMatch() {
+        PhraseMatcher matcher = new PhraseMatcher(PhraseSet.of(
+                Arrays.asList("tickets available"), Arrays.asList("no tickets")));
+
+        assertEquals(Arrays.asList("tickets available@12"), matches(matcher, "ticket tick tickets available"));
+        assertEquals(Arrays.asList("no tickets@0", "tickets available@3"), matches(matcher, "no tickets available"));
+    }
+
+    @Test
+    public void reportsPolarity() {
+        PhraseMatcher matcher = new PhraseMatcher(PhraseSet.of(
+                Arrays.asList("listings from"), Arrays.asList("sold out")));
+
+        int state = matcher.initialState();
+        for (char c : "sold out".toCharArray()) {
+            state = matcher.step(state, c);
+        }
+        int phrase = matcher.phraseAt(matcher.firstMatch(state));
+        assertEquals("sold out", matcher.getPhrase(phrase));
+        assertTrue(matcher.isNegative(phrase));
+    }
+
+    @Test
+    public void handlesNonAsciiPhrases() {
+        PhraseMatcher matcher = new PhraseMatcher(PhraseSet.of(
+                Arrays.asList("entradas disponibles", "billets \u00e9puis\u00e9s"), Arrays.asList("ausverkauft")));
+
+        assertEquals(Arrays.asList("billets \u00e9puis\u00e9s@4"), matches(matcher, "les billets \u00e9puis\u00e9s"));
+        assertEquals(Arrays.asList("ausverkauft@0"), matches(matcher, "ausverkauft \u00fc"));
+    }
+
+    @Test
+    public void normalizesPhrases() {
+        PhraseSet phrases = PhraseSet.of(Arrays.asList("  Tickets \t AVAILABLE ", "", "tickets available"),
+                Arrays.asList("Sold Out"));
+
+        assertEquals(Arrays.asList("tickets available"), phrases.getPositive());
+        assertEquals(Arrays.asList("sold out"), phrases.getNegative());
+    }
+
+    @Test
+    public void cachesMatcherUntilPhraseSetChanges() {
+        PhraseMatcher first = PhraseMatcher.forPhrases(PhraseSet.of(
+                Arrays.asList("tickets available"), Arrays.asList("sold out")));
+        PhraseMatcher same = PhraseMatcher.forPhrases(PhraseSet.of(
+                Arrays.asList("Tickets Available"), Arrays.asList("sold  out")));
+        PhraseMatcher changed = PhraseMatcher.forPhrases(PhraseSet.of(
+                Arrays.asList("tickets available", "listings from"), Arrays.asList("sold out")));
+
+        assertSame(first, same);
+        assertNotSame(first, changed);
+    }
+
+    @Test
+    public void urlPhrasesOverrideLocaleDefaults() {
+        MonitoredUrl url = new MonitoredUrl(1, "https://tixel.com/au/event", 5, true);
+        assertEquals(PhraseSet.forLocale(java.util.Locale.ENGLISH), PhraseSet.forUrl(url));
+
+        url.setPositivePhrases("resale open\nlistings from");
+        PhraseSet phrases = PhraseSet.forUrl(url);
+        assertEquals(Arrays.asList("resale open", "listings from"), phrases.getPositive());
+        assertEquals(PhraseSet.forLocale(java.util.Locale.ENGLISH).getNegative(), phrases.getNegative());
+    }
+
+    @Test
+    public void phraseInBothListsIsOnlyNegative() {
+        PhraseSet phrases = PhraseSet.of(Arrays.asList("Resale Open", "listings from"),
+                Arrays.asList("resale open", "sold out"));
+        assertEquals(Arrays.asList("listings from"), phrases.getPositive());
+        assertEquals(Arrays.asList("resale open", "sold out"), phrases.getNegative());
+
+        PhraseMatcher matcher = new PhraseMatcher(phrases);
+        int state = matcher.initialState();
+        for (char c : "resale open".toCharArray()) {
+            state = matcher.step(state, c);
+        }
+        int match = matcher.firstMatch(state);
+        assertTrue(matcher.isNegative(matcher.phraseAt(match)));
+        assertEquals(-1, matcher.nextMatch(match));
+    }
+
+    @Test
+    public void findsPhrasesGivenInBothLists() {
+        assertEquals("resale open", PhraseSet.findConflict("listings from\nResale  Open", "resale open\nsold out"));
+        assertNull(PhraseSet.findConflict("listings from", "sold out"));
+        assertNull(PhraseSet.findConflict(null, "sold out"));
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PriceSeriesTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void roundTripsPoints() {
+        PriceSeries.Block block = new PriceSeries.Block();
+        long[] prices = {12900, 12900, 11500, 11500, 15000, 0, 99999999};
+        for (int i = 0; i < prices.length; i++) {
+            block.append(START + i * MINUTE + (i % 2) * 1500, prices[i]);
+        }
+
+        PriceSeries.Points points = new PriceSeries.Points();
+        points.addBlock(block.toBytes(), 0, Long.MAX_VALUE);
+
+        assertEquals(prices.length, points.size());
+        for (int i = 0; i < prices.length; i++) {
+            assertEquals(prices[i], points.getPrice(i));
+            // Stored at second precision
+            assertEquals((START + i * MINUTE + (i % 2) * 1500) / 1000 * 1000, points.getTime(i));
+        }
+    }
+
+    @Test
+    public void steadyPollingCostsTwoBytesPerPoint() {
+        PriceSeries.Block block = new PriceSeries.Block();
+        for (int i = 0; i < PriceSeries.MAX_POINTS_PER_BLOCK; i++) {
+            block.append(START + i * MINUTE, 12900);
+        }
+
+        assertTrue(block.isFull());
+        assertTrue(block.toBytes().length <= 2 * PriceSeries.MAX_POINTS_PER_BLOCK + 16);
+    }
+
+    @Test
+    public void rangeQueryReturnsOnlyPointsInRange() {
+        PriceSeries.Block block = new PriceSeries.Block();
+        for (int i = 0; i < 10; i++) {
+            block.append(START + i * MINUTE, 1000 + i);
+        }
+
+        PriceSeries.Points points = new PriceSeries.Points();
+        points.addBlock(block.toBytes(), START + 3 * MINUTE, START + 5 * MINUTE);
+
+        assertEquals(3, points.size());
+        assertEquals(1003, points.getPrice(0));
+        assertEquals(1005, points.getPrice(2));
+    }
+
+    @Test
+    public void restoredBlockContinuesEncoding() {
+        PriceSeries.Block block = new PriceSeries.Block();
+        block.append(START, 500);
+        block.append(START + MINUTE, 450);
+        block.append(START + 2 * MINUTE, 450);
+
+        PriceSeries.Block restored = PriceSeries.Block.fromBytes(block.toBytes());
+        assertEquals(3, restored.size());
+        assertEquals(450, restored.getLastPrice());
+        assertEquals(START / 1000 * 1000, restored.getStartTime());
+
+        block.append(START + 4 * MINUTE, 400);
+        restored.append(START + 4 * MINUTE, 400);
+        assertArrayEquals(block.toBytes(), restored.toBytes());
+    }
+
+    @Test
+    public void pointsBackInTimeAreClamped() {
+        PriceSeries.Block block = new PriceSeries.Block();
+        block.append(START, 1);
+        block.append(START - MINUTE, 2);
+
+        PriceSeries.Points points = new PriceSeries.Points();
+        points.addBlock(block.toBytes(), 0, Long.MAX_VALUE);
+        assertEquals(points.getTime(0), points.getTime(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedBlockIsRejected() {
+        PriceSeries.Block block = new PriceSeries.Block();
+        block.append(START, 12900);
+        byte[] bytes = block.toBytes();
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        new PriceSeries.Points().addBlock(truncated, 0, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void targetRuleFiresOncePerTarget() {
+        assertTrue(PriceSeries.reachesTarget(9000, 10000, 0));
+        assertTrue("At target", PriceSeries.reachesTarget(10000, 10000, 0));
+        assertFalse("Already alerted", PriceSeries.reachesTarget(9000, 10000, 10000));
+        assertFalse("Above target", PriceSeries.reachesTarget(11000, 10000, 0));
+        assertFalse("No target", PriceSeries.reachesTarget(100, 0, 0));
+    }
+
+    @Test
+    public void newTargetIsEvaluatedAfresh() {
+        // Price already below both the old and the new target
+        assertTrue(PriceSeries.reachesTarget(9000, 9500, 10000));
+        assertTrue(PriceSeries.reachesTarget(9000, 12000, 10000));
+    }
+}
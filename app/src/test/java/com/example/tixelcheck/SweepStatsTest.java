@@ -0,0 +1,47 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SweepStatsTest {
+
+    @Test
+    public void computesLatencyPercentiles() {
+        long[] latencies = new long[20];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = (20 - i) * 10;
+        }
+        SweepStats.Sweep sweep = new SweepStats.Sweep(20, 0, 0, 1000, latencies);
+
+        assertEquals(100, sweep.getMedianLatencyMs());
+        assertEquals(190, sweep.getP95LatencyMs());
+        assertEquals(200, sweep.getMaxLatencyMs());
+    }
+
+    @Test
+    public void throughputExcludesTimedOutChecks() {
+        SweepStats.Sweep sweep = new SweepStats.Sweep(10, 2, 0, 4000, new long[] {100, 200});
+
+        assertEquals(2.0, sweep.getThroughput(), 0.001);
+        assertEquals(2, sweep.getTimedOut());
+    }
+
+    @Test
+    public void handlesEmptySweep() {
+        SweepStats.Sweep sweep = new SweepStats.Sweep(0, 0, 0, 0, new long[0]);
+
+        assertEquals(0, sweep.getMedianLatencyMs());
+        assertEquals(0, sweep.getP95LatencyMs());
+        assertEquals(0.0, sweep.getThroughput(), 0.001);
+    }
+
+    @Test
+    public void reportsFailedChecks() {
+        SweepStats.Sweep sweep = new SweepStats.Sweep(5, 1, 2, 1000, new long[] {100, 200, 300});
+
+        assertEquals(2, sweep.getFailed());
+        assertTrue(sweep.toString().endsWith("1 timed out, 2 failed"));
+    }
+}
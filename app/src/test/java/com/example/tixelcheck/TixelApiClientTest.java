@@ -0,0 +1,192 @@
+package com.example.tixelcheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+public class TixelApiClientTest {
+    private MockWebServer server;
+    private TixelApiClient api;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        api = new TixelApiClient(new OkHttpClient(), server.url("/"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+    }
+
+    @Test
+    public void extractsEventSlugFromTixelUrls() {
+        assertEquals("artist-venue-2024",
+                TixelApiClient.eventSlug("https://tixel.com/au/music-tickets/2024/05/01/artist-venue-2024"));
+        assertEquals("artist-venue-2024",
+                TixelApiClient.eventSlug("https://www.tixel.com/au/music-tickets/artist-venue-2024/?utm_source=x"));
+        assertEquals("artist-venue-2024", TixelApiClient.eventSlug("tixel.com/au/artist-venue-2024"));
+        assertNull(TixelApiClient.eventSlug("https://tixel.com/au"));
+        assertNull(TixelApiClient.eventSlug("https://example.com/au/artist-venue-2024"));
+        assertNull(TixelApiClient.eventSlug("https://nottixel.com/au/artist-venue-2024"));
+    }
+
+    @Test
+    public void parsesAvailabilityAndSkipsUnknownFields() throws Exception {
+        server.enqueue(json("{\"slug\":\"some-event\",\"venue\":{\"name\":\"Hall\",\"tags\":[1,2]},"
+                + "\"available\":true,\"listing_count\":3,\"lowest_price\":12900,\"currency\":null}"));
+
+        TixelApiClient.Availability availability = api.getAvailability("some-event");
+
+        assertTrue(availability.isAvailable());
+        assertEquals(3, availability.getListingCount());
+        assertEquals(12900, availability.getLowestPrice());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/v1/events/some-event/availability", request.getPath());
+        assertEquals("application/json", request.getHeader("Accept"));
+    }
+
+    @Test
+    public void parsesListings() throws Exception {
+        server.enqueue(json("{\"available\":true,\"listing_count\":2,"
+                + "\"listings\":[{\"id\":7,\"price_cents\":5000},{\"id\":3,\"price_cents\":6000}]}"));
+
+        ListingSnapshot listings = api.getAvailability("some-event").getListings();
+
+        assertEquals(2, listings.size());
+        assertEquals(3, listings.getId(0));
+        assertEquals(6000, listings.getPrice(0));
+    }
+
+    @Test
+    public void unknownEventIsNullAndNotRequestedAgain() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+
+        assertNull(api.getAvailability("missing"));
+        assertNull(api.getAvailability("missing"));
+        assertTrue(api.isKnownUnknown("missing"));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void serverErrorIsReported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        api.getAvailability("some-event");
+    }
+
+    @Test(expected = IOException.class)
+    public void responseWithoutAvailabilityIsRejected() throws Exception {
+        server.enqueue(json("{\"slug\":\"some-event\",\"listing_count\":3}"));
+        api.getAvailability("some-event");
+    }
+
+    @Test(expected = IOException.class)
+    public void fieldOfWrongTypeIsRejected() throws Exception {
+        server.enqueue(json("{\"slug\":\"some-event\",\"available\":\"yes\"}"));
+        api.getAvailability("some-event");
+    }
+
+    @Test(expected = IOException.class)
+    public void nonNumericCountIsRejected() throws Exception {
+        server.enqueue(json("{\"slug\":\"some-event\",\"available\":true,\"listing_count\":\"many\"}"));
+        api.getAvailability("some-event");
+    }
+
+    @Test(expected = IOException.class)
+    public void batchOfWrongShapeIsRejected() throws Exception {
+        server.enqueue(json("{\"events\":[1,2]}"));
+        api.prefetch(Arrays.asList("a", "b"));
+    }
+
+    @Test
+    public void prefetchFetchesManyEventsInOneRequest() throws Exception {
+        server.enqueue(json("{\"events\":["
+                + "{\"slug\":\"a\",\"available\":true,\"listing_count\":2},"
+                + "{\"slug\":\"b\",\"available\":false,\"listing_count\":0}],\"next\":null}"));
+
+        assertEquals(2, api.prefetch(Arrays.asList("a", "b", "c", "a")));
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/v1/events/availability?slugs=a%2Cb%2Cc", request.getPath());
+
+        // Checks are answered from the batch without further requests
+        assertTrue(api.getAvailability("a").isAvailable());
+        assertFalse(api.getAvailability("b").isAvailable());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void eventMissingFromBatchIsAskedForOnItsOwn() throws Exception {
+        server.enqueue(json("{\"events\":[{\"slug\":\"a\",\"available\":true}]}"));
+        server.enqueue(json("{\"slug\":\"b\",\"available\":true}"));
+
+        assertEquals(1, api.prefetch(Arrays.asList("a", "b")));
+
+        assertFalse(api.isKnownUnknown("b"));
+        assertTrue(api.getAvailability("b").isAvailable());
+        server.takeRequest();
+        assertEquals("/v1/events/b/availability", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void unknownEventIsAskedForAgainAfterExpiry() throws Exception {
+        api = new TixelApiClient(new OkHttpClient(), server.url("/"), 100);
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(json("{\"slug\":\"new-event\",\"available\":true}"));
+
+        assertNull(api.getAvailability("new-event"));
+        assertTrue(api.isKnownUnknown("new-event"));
+        Thread.sleep(150);
+
+        assertFalse(api.isKnownUnknown("new-event"));
+        assertTrue(api.getAvailability("new-event").isAvailable());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void fallsBackToSingleRequestsWithoutBatchEndpoint() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(json("{\"slug\":\"a\",\"available\":true}"));
+
+        assertEquals(0, api.prefetch(Arrays.asList("a", "b")));
+        assertEquals(0, api.prefetch(Arrays.asList("a", "b")));
+        assertTrue(api.getAvailability("a").isAvailable());
+
+        assertEquals(2, server.getRequestCount());
+        server.takeRequest();
+        assertEquals("/v1/events/a/availability", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void singleEventIsNotBatched() throws Exception {
+        assertEquals(0, api.prefetch(Collections.singletonList("a")));
+        assertEquals(0, server.getRequestCount());
+    }
+
+    @Test
+    public void fingerprintTracksEvaluatedFields() {
+        TixelApiClient.Availability base = new TixelApiClient.Availability("a", true, 3, 12900, null);
+
+        assertEquals(base.getFingerprint(), new TixelApiClient.Availability("a", true, 3, 12900, null).getFingerprint());
+        assertNotEquals(base.getFingerprint(), new TixelApiClient.Availability("a", false, 3, 12900, null).getFingerprint());
+        assertNotEquals(base.getFingerprint(), new TixelApiClient.Availability("a", true, 4, 12900, null).getFingerprint());
+        assertNotEquals(base.getFingerprint(), new TixelApiClient.Availability("a", true, 3, 9900, null).getFingerprint());
+        assertNotEquals(0, base.getFingerprint());
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.tixelcheck;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+import static org.junit.Assert.*;
+
+public class TixelHttpClientTest {
+    private MockWebServer server;
+    private TixelHttpClient httpClient;
+
+    @Before
+    public void setUp() throws Exception {
+        // Local HTTPS stand-in for the Tixel host
+        HeldCertificate localhost = new HeldCertificate.Builder()
+                .addSubjectAlternativeName("localhost")
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(localhost)
+                .build();
+        HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(localhost.certificate())
+                .build();
+
+        server = new MockWebServer();
+        server.useHttps(serverCertificates.sslSocketFactory(), false);
+        server.setProtocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        server.start();
+
+        OkHttpClient client = TixelHttpClient.newClientBuilder()
+                .sslSocketFactory(clientCertificates.sslSocketFactory(), clientCertificates.trustManager())
+                .build();
+        httpClient = new TixelHttpClient(client);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void repeatedChecksReuseOneConnection() throws Exception {
+        int checks = 5;
+        for (int i = 0; i < checks; i++) {
+            server.enqueue(new MockResponse().setBody("<html><body>check " + i + "</body></html>"));
+        }
+
+        String url = server.url("/au/event").toString();
+        for (int i = 0; i < checks; i++) {
+            try (Response response = httpClient.get(url)) {
+                assertTrue(response.isSuccessful());
+                assertEquals("<html><body>check " + i + "</body></html>", response.body().string());
+            }
+        }
+
+        // Sequence numbers count requests per connection, so 0..n-1 means a single handshake
+        for (int i = 0; i < checks; i++) {
+            assertEquals(i, server.takeRequest().getSequenceNumber());
+        }
+        assertEquals(1, httpClient.getClient().connectionPool().connectionCount());
+    }
+
+    @Test
+    public void negotiatesHttp2WhenServerSupportsIt() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        try (Response response = httpClient.get(server.url("/").toString())) {
+            assertEquals(Protocol.HTTP_2, response.protocol());
+        }
+    }
+
+    @Test
+    public void sendsBrowserUserAgent() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        httpClient.get(server.url("/").toString()).close();
+
+        assertEquals(TixelHttpClient.USER_AGENT, server.takeRequest().getHeader("User-Agent"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class UrlCanonicalizerTest {
+    private static final String EVENT = "https://tixel.com/au/music-tickets/2024/03/01/some-festival";
+
+    @Test
+    public void ignoresCaseTrailingSlashAndFragment() {
+        assertEquals(EVENT, UrlCanonicalizer.canonicalize("HTTPS://Tixel.com/au/music-tickets/2024/03/01/some-festival/"));
+        assertEquals(EVENT, UrlCanonicalizer.canonicalize(EVENT + "#listings"));
+        assertEquals(EVENT, UrlCanonicalizer.canonicalize("  " + EVENT + "//  "));
+    }
+
+    @Test
+    public void dropsDefaultPortAndAddsMissingScheme() {
+        assertEquals(EVENT, UrlCanonicalizer.canonicalize("https://tixel.com:443/au/music-tickets/2024/03/01/some-festival"));
+        assertEquals(EVENT, UrlCanonicalizer.canonicalize("tixel.com/au/music-tickets/2024/03/01/some-festival"));
+    }
+
+    @Test
+    public void dropsTrackingParametersAndSortsTheRest() {
+        assertEquals(EVENT + "?a=1&b=2",
+                UrlCanonicalizer.canonicalize(EVENT + "?utm_source=mail&b=2&fbclid=xyz&a=1"));
+        assertEquals(EVENT, UrlCanonicalizer.canonicalize(EVENT + "?utm_campaign=spring&ref=home"));
+        assertEquals(UrlCanonicalizer.canonicalize(EVENT + "?tier=ga&day=1"),
+                UrlCanonicalizer.canonicalize(EVENT + "/?day=1&tier=ga"));
+    }
+
+    @Test
+    public void keepsMeaningfulDifferences() {
+        assertNotEquals(UrlCanonicalizer.canonicalize(EVENT + "?day=1"), UrlCanonicalizer.canonicalize(EVENT + "?day=2"));
+        assertNotEquals(UrlCanonicalizer.canonicalize(EVENT), UrlCanonicalizer.canonicalize(EVENT + "-2"));
+        assertEquals("https://tixel.com/", UrlCanonicalizer.canonicalize("https://tixel.com"));
+    }
+
+    @Test
+    public void returnsUnparseableInputTrimmed() {
+        assertEquals("not a url", UrlCanonicalizer.canonicalize(" not a url "));
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UrlStatsTest {
+
+    @Test
+    public void bucketsDoubleInWidth() {
+        assertEquals(0, UrlStats.latencyBucket(0));
+        assertEquals(0, UrlStats.latencyBucket(63));
+        assertEquals(1, UrlStats.latencyBucket(64));
+        assertEquals(1, UrlStats.latencyBucket(127));
+        assertEquals(2, UrlStats.latencyBucket(128));
+        assertEquals(UrlStats.LATENCY_BUCKETS - 1, UrlStats.latencyBucket(10 * 60 * 1000));
+    }
+
+    @Test
+    public void medianComesFromTheMiddleBucket() {
+        long[] counts = new long[UrlStats.LATENCY_BUCKETS];
+        counts[UrlStats.latencyBucket(100)] = 2;
+        counts[UrlStats.latencyBucket(300)] = 3;
+        counts[UrlStats.latencyBucket(5000)] = 1;
+        UrlStats stats = new UrlStats(6, 0, 0, 0, 0, 0, counts);
+
+        // 300 ms falls in [256, 512)
+        assertEquals(384, stats.getMedianLatencyMs());
+    }
+
+    @Test
+    public void derivesRatesAndWindowGaps() {
+        UrlStats stats = new UrlStats(200, 10, 9000, 3, 1000, 7 * 60 * 1000 + 1000, new long[0]);
+
+        assertEquals(0.05, stats.getErrorRate(), 0.0001);
+        assertEquals(210 * 1000, stats.getMeanTimeBetweenWindowsMs());
+        assertEquals(-1, stats.getMedianLatencyMs());
+        assertTrue(stats.getSummary().contains("200 checks, 5.0% errors"));
+        assertTrue(stats.getSummary().contains("tickets every 3 min"));
+    }
+
+    @Test
+    public void emptyStatsHaveNothingToShow() {
+        assertNull(UrlStats.EMPTY.getSummary());
+        assertNull(UrlStats.EMPTY.getFormattedLastAvailable());
+        assertEquals(-1, UrlStats.EMPTY.getMeanTimeBetweenWindowsMs());
+        assertEquals(0.0, UrlStats.EMPTY.getErrorRate(), 0.0);
+    }
+}
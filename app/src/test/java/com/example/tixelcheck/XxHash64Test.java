@@ -0,0 +1,46 @@
+package com.example.tixelcheck;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class XxHash64Test {
+
+    private static long hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        XxHash64 hasher = new XxHash64();
+        hasher.update(bytes, 0, bytes.length);
+        return hasher.digest();
+    }
+
+    @Test
+    public void matchesReferenceVectors() {
+        assertEquals(0xef46db3751d8e999L, hash(""));
+        assertEquals(0x44bc2cf5ad770999L, hash("abc"));
+        assertEquals(0xfbcea83c8a378bf1L, hash("Nobody inspects the spammish repetition"));
+        assertEquals(0x90e187cbd40f140eL, hash("Tickets available from $120. Sold out in section B; "
+                + "42 listings from $95 across the venue."));
+    }
+
+    @Test
+    public void digestDoesNotConsumeState() {
+        XxHash64 hasher = new XxHash64();
+        byte[] bytes = "Nobody inspects the spammish repetition".getBytes(StandardCharsets.UTF_8);
+        hasher.update(bytes, 0, 10);
+        hasher.digest();
+        hasher.update(bytes, 10, bytes.length - 10);
+
+        assertEquals(0xfbcea83c8a378bf1L, hasher.digest());
+    }
+
+    @Test
+    public void resetStartsOver() {
+        XxHash64 hasher = new XxHash64();
+        hasher.update((byte) 1);
+        hasher.reset();
+
+        assertEquals(0xef46db3751d8e999L, hasher.digest());
+    }
+}